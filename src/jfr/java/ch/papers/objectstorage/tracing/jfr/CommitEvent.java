@@ -0,0 +1,18 @@
+package ch.papers.objectstorage.tracing.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ch.papers.objectstorage.Commit")
+@Label("Commit")
+@Description("The entries of a class are persisted to its class file")
+class CommitEvent extends StorageJfrEvent {
+    @Label("Entries")
+    int entries;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,72 @@
+package ch.papers.objectstorage.tracing.jfr;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.tracing.StorageEvent;
+import ch.papers.objectstorage.tracing.StorageTracer;
+import jdk.jfr.Event;
+
+/**
+ * Emits storage activity as Flight Recorder events in the "Simple Object Storage" category. An event is only
+ * created while a recording has it enabled, otherwise tracing costs a disabled check per operation.
+ */
+public class JfrStorageTracer implements StorageTracer {
+
+    @Override
+    public Object begin(StorageEvent event) {
+        final Event jfrEvent;
+        switch (event) {
+            case LOAD:
+                jfrEvent = new LoadEvent();
+                break;
+            case COMMIT:
+                jfrEvent = new CommitEvent();
+                break;
+            case SCAN:
+                jfrEvent = new ScanEvent();
+                break;
+            default:
+                jfrEvent = new LockWaitEvent();
+                break;
+        }
+        if (!jfrEvent.isEnabled()) {
+            return null;
+        }
+        jfrEvent.begin();
+        return jfrEvent;
+    }
+
+    @Override
+    public void endLoad(Object handle, Class<? extends AbstractUuidObject> clazz, int entries, long bytes) {
+        final LoadEvent event = (LoadEvent) handle;
+        event.storedClass = clazz.getSimpleName();
+        event.entries = entries;
+        event.bytes = bytes;
+        event.commit();
+    }
+
+    @Override
+    public void endCommit(Object handle, Class<? extends AbstractUuidObject> clazz, int entries, long bytes) {
+        final CommitEvent event = (CommitEvent) handle;
+        event.storedClass = clazz.getSimpleName();
+        event.entries = entries;
+        event.bytes = bytes;
+        event.commit();
+    }
+
+    @Override
+    public void endScan(Object handle, Class<? extends AbstractUuidObject> clazz, int scanned, int matched) {
+        final ScanEvent event = (ScanEvent) handle;
+        event.storedClass = clazz.getSimpleName();
+        event.scanned = scanned;
+        event.matched = matched;
+        event.commit();
+    }
+
+    @Override
+    public void endLockWait(Object handle, Class<? extends AbstractUuidObject> clazz, String lock) {
+        final LockWaitEvent event = (LockWaitEvent) handle;
+        event.storedClass = clazz.getSimpleName();
+        event.lock = lock;
+        event.commit();
+    }
+}
@@ -0,0 +1,18 @@
+package ch.papers.objectstorage.tracing.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ch.papers.objectstorage.Load")
+@Label("Class Load")
+@Description("A class is loaded into memory from its class file")
+class LoadEvent extends StorageJfrEvent {
+    @Label("Entries")
+    int entries;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytes;
+}
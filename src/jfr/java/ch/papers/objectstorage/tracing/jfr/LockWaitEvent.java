@@ -0,0 +1,13 @@
+package ch.papers.objectstorage.tracing.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ch.papers.objectstorage.LockWait")
+@Label("Lock Wait")
+@Description("A thread waits for a storage lock or for another thread loading a class")
+class LockWaitEvent extends StorageJfrEvent {
+    @Label("Lock")
+    String lock;
+}
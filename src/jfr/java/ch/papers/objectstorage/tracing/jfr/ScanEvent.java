@@ -0,0 +1,16 @@
+package ch.papers.objectstorage.tracing.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ch.papers.objectstorage.Scan")
+@Label("Filter Scan")
+@Description("The entries of a class are matched against a filter")
+class ScanEvent extends StorageJfrEvent {
+    @Label("Scanned")
+    int scanned;
+
+    @Label("Matched")
+    int matched;
+}
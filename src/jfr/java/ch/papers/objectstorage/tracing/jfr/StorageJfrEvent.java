@@ -0,0 +1,14 @@
+package ch.papers.objectstorage.tracing.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Base of all storage events, the class is the simple name of the stored class.
+ */
+@Category("Simple Object Storage")
+abstract class StorageJfrEvent extends Event {
+    @Label("Class")
+    String storedClass;
+}
@@ -0,0 +1,69 @@
+package ch.papers.objectstorage;
+
+import ch.papers.objectstorage.filters.MatchAllFilter;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.tracing.StorageTracers;
+import ch.papers.objectstorage.tracing.jfr.JfrStorageTracer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JfrTracingTest {
+
+    public static class TracedModel extends AbstractUuidObject {
+        private String name;
+
+        public TracedModel(String name) {
+            this.name = name;
+        }
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        Assert.assertTrue(StorageTracers.createDefault() instanceof JfrStorageTracer);
+
+        final File storageRoot = File.createTempFile("objectstorage", "");
+        Assert.assertTrue(storageRoot.delete() && storageRoot.mkdir());
+        final File recordingFile = new File(storageRoot, "storage.jfr");
+
+        final Recording recording = new Recording();
+        recording.enable("ch.papers.objectstorage.Load").withoutThreshold();
+        recording.enable("ch.papers.objectstorage.Commit").withoutThreshold();
+        recording.enable("ch.papers.objectstorage.Scan").withoutThreshold();
+        recording.start();
+
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(storageRoot, new UuidObjectStorageConfig());
+        for (int i = 0; i < 10; i++) {
+            storage.addEntry(new TracedModel("traced" + i), TracedModel.class);
+        }
+        storage.commit(TracedModel.class);
+        storage.getEntries(new MatchAllFilter(), TracedModel.class);
+
+        final UuidObjectStorage reopenedStorage = new UuidObjectStorage();
+        reopenedStorage.init(storageRoot, new UuidObjectStorageConfig());
+        Assert.assertEquals(10, reopenedStorage.getEntries(TracedModel.class).size());
+
+        recording.stop();
+        recording.dump(recordingFile.toPath());
+        recording.close();
+
+        final Map<String, RecordedEvent> lastEvents = new HashMap<>();
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile.toPath());
+        for (RecordedEvent event : events) {
+            Assert.assertEquals("TracedModel", event.getString("storedClass"));
+            lastEvents.put(event.getEventType().getName(), event);
+        }
+        Assert.assertEquals(10, lastEvents.get("ch.papers.objectstorage.Load").getInt("entries"));
+        Assert.assertEquals(10, lastEvents.get("ch.papers.objectstorage.Commit").getInt("entries"));
+        Assert.assertEquals(new File(storageRoot, "TracedModel.json").length() + new File(storageRoot, "TracedModel.json.idx").length(), lastEvents.get("ch.papers.objectstorage.Commit").getLong("bytes"));
+        Assert.assertEquals(10, lastEvents.get("ch.papers.objectstorage.Scan").getInt("scanned"));
+    }
+}
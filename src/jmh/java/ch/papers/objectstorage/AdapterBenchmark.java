@@ -0,0 +1,62 @@
+package ch.papers.objectstorage;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and deserialization of single models with the generated adapter the storage uses and with
+ * Gson's reflective adapter, selected by the adapter parameter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AdapterBenchmark {
+    private static final int MODELS = 1024;
+
+    @Param({"generated", "reflective"})
+    public String adapter;
+
+    private TypeAdapter<BenchmarkModel> typeAdapter;
+    private BenchmarkModel[] models;
+    private String[] json;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final Gson gson = "generated".equals(this.adapter) ? Constants.GSON : new Gson();
+        this.typeAdapter = gson.getAdapter(BenchmarkModel.class);
+        this.models = new BenchmarkModel[MODELS];
+        this.json = new String[MODELS];
+        final BenchmarkData data = new BenchmarkData(BenchmarkData.SEED);
+        for (int i = 0; i < MODELS; i++) {
+            this.models[i] = data.nextModel(i);
+            this.json[i] = this.typeAdapter.toJson(this.models[i]);
+        }
+    }
+
+    @Benchmark
+    public String serialize() {
+        return this.typeAdapter.toJson(this.models[this.next++ & (MODELS - 1)]);
+    }
+
+    @Benchmark
+    public BenchmarkModel deserialize() throws Exception {
+        return this.typeAdapter.fromJson(this.json[this.next++ & (MODELS - 1)]);
+    }
+}
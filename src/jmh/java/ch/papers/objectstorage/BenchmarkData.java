@@ -0,0 +1,57 @@
+package ch.papers.objectstorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates the same models for the same seed, so results of different versions are comparable.
+ */
+public class BenchmarkData {
+    public static final long SEED = 0x5eedL;
+    public static final int CATEGORIES = 100;
+
+    private final Random random;
+
+    public BenchmarkData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public BenchmarkModel nextModel(int index) {
+        final BenchmarkModel model = new BenchmarkModel(new UUID(this.random.nextLong(), this.random.nextLong()), "model" + index, "description of model " + index + " " + Long.toHexString(this.random.nextLong()), index % CATEGORIES);
+        if (index % 10 == 0) {
+            model.setNestedChild(new BenchmarkModel(new UUID(this.random.nextLong(), this.random.nextLong()), "child" + index, "nested", index % CATEGORIES));
+        }
+        return model;
+    }
+
+    public Map<UUID, BenchmarkModel> nextModels(int count) {
+        final Map<UUID, BenchmarkModel> models = new LinkedHashMap<UUID, BenchmarkModel>(count * 2);
+        for (int i = 0; i < count; i++) {
+            final BenchmarkModel model = this.nextModel(i);
+            models.put(model.getUuid(), model);
+        }
+        return models;
+    }
+
+    public static File createStorageRoot() throws IOException {
+        final File storageRoot = File.createTempFile("objectstorage-benchmark", "");
+        if (!storageRoot.delete() || !storageRoot.mkdir()) {
+            throw new IOException("could not create " + storageRoot);
+        }
+        return storageRoot;
+    }
+
+    public static void deleteStorageRoot(File storageRoot) {
+        final File[] files = storageRoot.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        storageRoot.delete();
+    }
+}
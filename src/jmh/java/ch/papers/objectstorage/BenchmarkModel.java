@@ -0,0 +1,40 @@
+package ch.papers.objectstorage;
+
+import ch.papers.objectstorage.adapters.GenerateAdapter;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+import java.util.UUID;
+
+/**
+ * A model shaped like the test model of the unit tests, with a category to filter on.
+ */
+@GenerateAdapter
+public class BenchmarkModel extends AbstractUuidObject {
+    private String name;
+    private String description;
+    private int category;
+    private BenchmarkModel nestedChild;
+
+    public BenchmarkModel(UUID uuid, String name, String description, int category) {
+        this.uuid = uuid;
+        this.name = name;
+        this.description = description;
+        this.category = category;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCategory() {
+        return category;
+    }
+
+    public BenchmarkModel getNestedChild() {
+        return nestedChild;
+    }
+
+    public void setNestedChild(BenchmarkModel nestedChild) {
+        this.nestedChild = nestedChild;
+    }
+}
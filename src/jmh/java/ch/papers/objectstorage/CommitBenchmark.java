@@ -0,0 +1,56 @@
+package ch.papers.objectstorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Committing a large class with a growing number of serialization threads.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommitBenchmark {
+    @Param({"1000000"})
+    public int entries;
+
+    @Param({"1", "2", "4", "8"})
+    public int persistThreads;
+
+    private File storageRoot;
+    private UuidObjectStorage storage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.storageRoot = BenchmarkData.createStorageRoot();
+        this.storage = new UuidObjectStorage();
+        this.storage.init(this.storageRoot, new UuidObjectStorageConfig().setPersistThreads(this.persistThreads));
+        this.storage.addEntries(new BenchmarkData(BenchmarkData.SEED).nextModels(this.entries), BenchmarkModel.class);
+    }
+
+    @Benchmark
+    public void commit() throws UuidObjectStorageException {
+        this.storage.commit(BenchmarkModel.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.deleteStorageRoot(this.storageRoot);
+    }
+}
@@ -0,0 +1,133 @@
+package ch.papers.objectstorage;
+
+import ch.papers.objectstorage.caches.UuidHashMap;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the heap retained by a loaded class of {@link RecordModel}s without string deduplication, with the
+ * fields holding repeated values deduplicated and with all strings deduplicated, and the heap retained by the
+ * {@link UuidHashMap} backing the class caches compared to a ConcurrentHashMap. Heap footprint can't be
+ * measured per operation, so this runs outside of JMH: "gradle footprint", optionally with
+ * -Pfootprint.entries=&lt;n&gt;.
+ */
+public class FootprintBenchmark {
+    private static final String[] STATUSES = {"NEW", "PENDING", "PAID", "SHIPPED", "DELIVERED", "CANCELLED"};
+    private static final String[] COUNTRIES = {"CH", "DE", "AT", "FR", "IT", "ES", "PT", "NL", "BE", "LU", "DK", "SE", "NO", "FI",
+            "PL", "CZ", "SK", "HU", "SI", "HR", "RO", "BG", "GR", "IE", "GB", "US", "CA", "MX", "BR", "AR", "JP", "KR", "CN", "IN",
+            "AU", "NZ", "ZA", "EG", "TR", "IL"};
+    private static final String[] CURRENCIES = {"CHF", "EUR", "USD", "GBP", "JPY", "CAD", "AUD", "SEK", "NOK", "PLN"};
+    private static final int TAGS = 50;
+    private static final int MEASUREMENTS = 5;
+
+    public static void main(String[] args) throws Exception {
+        final int entries = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        final File storageRoot = BenchmarkData.createStorageRoot();
+        try {
+            final UuidObjectStorage writer = new UuidObjectStorage();
+            writer.init(storageRoot);
+            final Map<UUID, RecordModel> records = generate(entries, new Random(BenchmarkData.SEED));
+            final UUID probe = records.keySet().iterator().next();
+            writer.addEntries(records, RecordModel.class);
+            writer.commit(RecordModel.class);
+
+            System.out.println(entries + " records, " + new File(storageRoot, "RecordModel" + Constants.DATA_FILE_EXTENSION).length() / 1024 + " KiB on disk");
+            System.out.println(String.format("%-14s %14s %12s %14s", "deduplication", "retained KiB", "load ms", "deduplicated"));
+            measure("none", storageRoot, probe, new UuidObjectStorageConfig());
+            measure("fields", storageRoot, probe, new UuidObjectStorageConfig().setStringDeduplication(RecordModel.class, "status", "country", "currency", "tags"));
+            measure("all", storageRoot, probe, new UuidObjectStorageConfig().setStringDeduplication(RecordModel.class));
+            measureMaps(records.keySet().toArray(new UUID[entries]));
+        } finally {
+            BenchmarkData.deleteStorageRoot(storageRoot);
+        }
+    }
+
+    /**
+     * Reports the median of several loads, each into a fresh storage that is kept reachable while the heap is
+     * measured.
+     */
+    private static void measure(String name, File storageRoot, UUID probe, UuidObjectStorageConfig config) throws Exception {
+        final long[] retainedBytes = new long[MEASUREMENTS];
+        final long[] loadNanos = new long[MEASUREMENTS];
+        long deduplicated = 0;
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            final long before = usedHeap();
+            final long startNanos = System.nanoTime();
+            final UuidObjectStorage storage = new UuidObjectStorage();
+            storage.init(storageRoot, config);
+            storage.getEntry(probe, RecordModel.class);
+            loadNanos[i] = System.nanoTime() - startNanos;
+            retainedBytes[i] = usedHeap() - before;
+            deduplicated = storage.getDeduplicatedStrings();
+        }
+        Arrays.sort(retainedBytes);
+        Arrays.sort(loadNanos);
+        System.out.println(String.format("%-14s %14d %12d %14d", name, retainedBytes[MEASUREMENTS / 2] / 1024, loadNanos[MEASUREMENTS / 2] / 1000000, deduplicated));
+    }
+
+    /**
+     * Reports the median heap retained by each map holding the same entries. The maps own their keys, like a
+     * map filled by the json parser.
+     */
+    private static void measureMaps(UUID[] uuids) {
+        final Object value = new Object();
+        final long[] concurrentHashMapBytes = new long[MEASUREMENTS];
+        final long[] uuidHashMapBytes = new long[MEASUREMENTS];
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            long before = usedHeap();
+            final Map<UUID, Object> concurrentHashMap = new ConcurrentHashMap<UUID, Object>();
+            for (UUID uuid : uuids) {
+                concurrentHashMap.put(new UUID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()), value);
+            }
+            concurrentHashMapBytes[i] = usedHeap() - before;
+
+            before = usedHeap();
+            final UuidHashMap<Object> uuidHashMap = new UuidHashMap<Object>();
+            for (UUID uuid : uuids) {
+                uuidHashMap.put(new UUID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()), value);
+            }
+            uuidHashMapBytes[i] = usedHeap() - before;
+            if (concurrentHashMap.size() != uuidHashMap.size()) {
+                throw new IllegalStateException("The maps hold " + concurrentHashMap.size() + " and " + uuidHashMap.size() + " entries");
+            }
+        }
+        Arrays.sort(concurrentHashMapBytes);
+        Arrays.sort(uuidHashMapBytes);
+        System.out.println(String.format("%-18s %14s %12s", "map", "retained KiB", "bytes/entry"));
+        System.out.println(String.format("%-18s %14d %12d", "ConcurrentHashMap", concurrentHashMapBytes[MEASUREMENTS / 2] / 1024, concurrentHashMapBytes[MEASUREMENTS / 2] / uuids.length));
+        System.out.println(String.format("%-18s %14d %12d", "UuidHashMap", uuidHashMapBytes[MEASUREMENTS / 2] / 1024, uuidHashMapBytes[MEASUREMENTS / 2] / uuids.length));
+    }
+
+    private static Map<UUID, RecordModel> generate(int entries, Random random) {
+        final Map<UUID, RecordModel> records = new LinkedHashMap<UUID, RecordModel>(entries * 2);
+        for (int i = 0; i < entries; i++) {
+            final List<String> tags = new ArrayList<String>(3);
+            for (int j = 0; j < 3; j++) {
+                tags.add("tag-" + random.nextInt(TAGS));
+            }
+            final RecordModel record = new RecordModel(new UUID(random.nextLong(), random.nextLong()), "ORD-" + i + "-" + Integer.toHexString(random.nextInt()),
+                    STATUSES[random.nextInt(STATUSES.length)], COUNTRIES[random.nextInt(COUNTRIES.length)],
+                    CURRENCIES[random.nextInt(CURRENCIES.length)], tags, random.nextInt(1000000));
+            records.put(record.getUuid(), record);
+        }
+        return records;
+    }
+
+    private static long usedHeap() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,41 @@
+package ch.papers.objectstorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a committed class in a fresh storage until its first entry is available.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LoadBenchmark {
+
+    @State(Scope.Thread)
+    public static class ColdStorageState {
+        public UuidObjectStorage storage;
+
+        @Setup(Level.Invocation)
+        public void setUp(StorageState storageState) {
+            this.storage = storageState.openStorage();
+        }
+    }
+
+    @Benchmark
+    public BenchmarkModel loadEntries(StorageState storageState, ColdStorageState coldStorageState) throws UuidObjectStorageException {
+        return coldStorageState.storage.getEntry(storageState.uuids[storageState.uuids.length / 2], BenchmarkModel.class);
+    }
+}
@@ -0,0 +1,62 @@
+package ch.papers.objectstorage;
+
+import ch.papers.objectstorage.filters.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point reads and filtered scans on a loaded class. Run with -t to measure concurrent readers and with
+ * -prof gc to check that point reads do not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark {
+
+    @State(Scope.Thread)
+    public static class ReaderState {
+        private final Random random = new Random(BenchmarkData.SEED);
+
+        public UUID nextUuid(StorageState storageState) {
+            return storageState.uuids[this.random.nextInt(storageState.uuids.length)];
+        }
+    }
+
+    private static final Filter<BenchmarkModel> CATEGORY_FILTER = new Filter<BenchmarkModel>() {
+        @Override
+        public boolean matches(BenchmarkModel object) {
+            return object.getCategory() == 7;
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void load(StorageState storageState) throws UuidObjectStorageException {
+        storageState.storage.getEntry(storageState.uuids[0], BenchmarkModel.class);
+    }
+
+    @Benchmark
+    public BenchmarkModel getEntry(StorageState storageState, ReaderState readerState) throws UuidObjectStorageException {
+        return storageState.storage.getEntry(readerState.nextUuid(storageState), BenchmarkModel.class);
+    }
+
+    @Benchmark
+    public Map<UUID, BenchmarkModel> getFilteredEntries(StorageState storageState) throws UuidObjectStorageException {
+        return storageState.storage.getEntries(CATEGORY_FILTER, BenchmarkModel.class);
+    }
+}
@@ -0,0 +1,37 @@
+package ch.papers.objectstorage;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A business record with a unique reference and repeated values: few statuses, countries and currencies, and
+ * tags out of a small vocabulary.
+ */
+public class RecordModel extends AbstractUuidObject {
+    private final String reference;
+    private final String status;
+    private final String country;
+    private final String currency;
+    private final List<String> tags;
+    private final long amountCents;
+
+    public RecordModel(UUID uuid, String reference, String status, String country, String currency, List<String> tags, long amountCents) {
+        this.uuid = uuid;
+        this.reference = reference;
+        this.status = status;
+        this.country = country;
+        this.currency = currency;
+        this.tags = tags;
+        this.amountCents = amountCents;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+}
@@ -0,0 +1,53 @@
+package ch.papers.objectstorage;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A committed storage with one class of generated models, shared by all benchmark threads.
+ */
+@State(Scope.Benchmark)
+public class StorageState {
+    @Param({"1000", "100000", "1000000"})
+    public int entries;
+
+    @Param({"false", "true"})
+    public boolean lazyLoading;
+
+    public File storageRoot;
+    public UuidObjectStorage storage;
+    public UUID[] uuids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.storageRoot = BenchmarkData.createStorageRoot();
+        final Map<UUID, BenchmarkModel> models = new BenchmarkData(BenchmarkData.SEED).nextModels(this.entries);
+        this.uuids = models.keySet().toArray(new UUID[models.size()]);
+
+        final UuidObjectStorage writer = new UuidObjectStorage();
+        writer.init(this.storageRoot);
+        writer.addEntries(models, BenchmarkModel.class);
+        writer.commit(BenchmarkModel.class);
+
+        this.storage = this.openStorage();
+    }
+
+    public UuidObjectStorage openStorage() {
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(this.storageRoot, new UuidObjectStorageConfig().setLazyLoading(this.lazyLoading));
+        return storage;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.deleteStorageRoot(this.storageRoot);
+    }
+}
@@ -0,0 +1,54 @@
+package ch.papers.objectstorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding entries and committing a class. Added entries replace existing ones, so the class keeps its size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    @State(Scope.Thread)
+    public static class BatchState {
+        public Map<UUID, BenchmarkModel> batch;
+
+        @Setup(Level.Trial)
+        public void setUp(StorageState storageState) {
+            final BenchmarkData data = new BenchmarkData(BenchmarkData.SEED);
+            final Map<UUID, BenchmarkModel> models = data.nextModels(Math.min(BATCH_SIZE, storageState.entries));
+            this.batch = new LinkedHashMap<UUID, BenchmarkModel>(models);
+        }
+    }
+
+    @Benchmark
+    public void addEntries(StorageState storageState, BatchState batchState) throws UuidObjectStorageException {
+        storageState.storage.addEntries(batchState.batch, BenchmarkModel.class);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    public void commit(StorageState storageState) throws UuidObjectStorageException {
+        storageState.storage.commit(BenchmarkModel.class);
+    }
+}
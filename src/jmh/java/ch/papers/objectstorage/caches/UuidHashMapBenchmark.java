@@ -0,0 +1,84 @@
+package ch.papers.objectstorage.caches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the map backing the class caches with the ConcurrentHashMap it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UuidHashMapBenchmark {
+    @Param({"1000", "1000000"})
+    public int entries;
+
+    private UUID[] uuids;
+    private UuidHashMap<Object> uuidHashMap;
+    private Map<UUID, Object> concurrentHashMap;
+
+    @State(Scope.Thread)
+    public static class KeyState {
+        // xorshift, cheaper than Random compared to a map lookup
+        private int seed = (int) System.nanoTime() | 1;
+
+        public UUID nextKey(UuidHashMapBenchmark benchmark) {
+            this.seed ^= this.seed << 13;
+            this.seed ^= this.seed >>> 17;
+            this.seed ^= this.seed << 5;
+            return benchmark.uuids[(this.seed & Integer.MAX_VALUE) % benchmark.uuids.length];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(0x5eedL);
+        this.uuids = new UUID[this.entries];
+        this.uuidHashMap = new UuidHashMap<Object>();
+        this.concurrentHashMap = new ConcurrentHashMap<UUID, Object>();
+        for (int i = 0; i < this.entries; i++) {
+            this.uuids[i] = new UUID(random.nextLong(), random.nextLong());
+            this.uuidHashMap.put(this.uuids[i], i);
+            this.concurrentHashMap.put(this.uuids[i], i);
+        }
+    }
+
+    @Benchmark
+    public Object uuidHashMapGet(KeyState keyState) {
+        return this.uuidHashMap.get(keyState.nextKey(this));
+    }
+
+    @Benchmark
+    public Object concurrentHashMapGet(KeyState keyState) {
+        return this.concurrentHashMap.get(keyState.nextKey(this));
+    }
+
+    @Benchmark
+    public Object uuidHashMapPut(KeyState keyState) {
+        return this.uuidHashMap.put(keyState.nextKey(this), keyState);
+    }
+
+    @Benchmark
+    public Object concurrentHashMapPut(KeyState keyState) {
+        return this.concurrentHashMap.put(keyState.nextKey(this), keyState);
+    }
+}
@@ -1,6 +1,10 @@
 package ch.papers.objectstorage;
 
+import ch.papers.objectstorage.adapters.GeneratedAdapterFactory;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.nio.charset.Charset;
 
 /**
  * Created by Alessandro De Carli (@a_d_c_) on 15/11/15.
@@ -8,6 +12,17 @@ import com.google.gson.Gson;
  * a.decarli@papers.ch
  */
 public class Constants {
-    public static final Gson GSON = new Gson();
+    public static final Gson GSON = new GsonBuilder().registerTypeAdapterFactory(GeneratedAdapterFactory.INSTANCE).create();
     public static final String SUCCESS_MESSAGE = "success";
+    public static final Charset CHARSET = Charset.forName("UTF-8");
+
+    public static final String DATA_FILE_EXTENSION = ".json";
+    public static final String INDEX_FILE_EXTENSION = ".json.idx";
+    public static final String EXPIRY_FILE_EXTENSION = ".json.ttl";
+    public static final String CHANGE_LOG_FILE_EXTENSION = ".json.changes";
+    public static final String SEQUENCE_FILE_EXTENSION = ".json.seq";
+    public static final String TEXT_INDEX_FILE_EXTENSION = ".json.fts";
+    public static final String BLOOM_FILTER_FILE_EXTENSION = ".json.bloom";
+    public static final String VERSION_FLOOR_FILE_EXTENSION = ".json.ver";
+    public static final String TEMP_FILE_EXTENSION = ".tmp";
 }
@@ -0,0 +1,42 @@
+package ch.papers.objectstorage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints the failures of a periodic background task. A task failing for good fails on every tick, so after a
+ * printed failure the next ones are only counted until the interval is over. The failures are recorded in the
+ * metrics as failed operations as well.
+ */
+class FailureLog {
+    static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final String task;
+    private final long intervalNanos;
+    private long lastPrintedNanos;
+    private boolean printed;
+    private int suppressed;
+
+    FailureLog(String task, long intervalMillis) {
+        this.task = task;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * @param failure the failure of the current run of the task
+     * @return true if it was printed, false if it was only counted
+     */
+    synchronized boolean log(Throwable failure) {
+        final long nowNanos = System.nanoTime();
+        if (this.printed && nowNanos - this.lastPrintedNanos < this.intervalNanos) {
+            this.suppressed++;
+            return false;
+        }
+        System.err.println(this.suppressed == 0 ? this.task + " failed"
+                : this.task + " failed, " + this.suppressed + " more failures since the last one printed");
+        failure.printStackTrace();
+        this.printed = true;
+        this.lastPrintedNanos = nowNanos;
+        this.suppressed = 0;
+        return true;
+    }
+}
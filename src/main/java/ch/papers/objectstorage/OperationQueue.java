@@ -0,0 +1,105 @@
+package ch.papers.objectstorage;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the asynchronous operations of a storage on a fixed number of threads behind a bounded queue, and
+ * applies the {@link OverflowPolicy} once the queue is full.
+ */
+class OperationQueue {
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong overflowedOperations = new AtomicLong();
+
+    OperationQueue(int threads, int capacity, final OverflowPolicy overflowPolicy) {
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity), new OperationThreadFactory(), new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable operation, ThreadPoolExecutor executor) {
+                OperationQueue.this.overflow(operation, overflowPolicy);
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param operation the operation to run
+     * @throws RejectedExecutionException if the queue is full and the policy is {@link OverflowPolicy#REJECT}
+     */
+    void execute(Runnable operation) {
+        this.executor.execute(operation);
+    }
+
+    int getQueuedOperations() {
+        return this.executor.getQueue().size();
+    }
+
+    long getOverflowedOperations() {
+        return this.overflowedOperations.get();
+    }
+
+    /**
+     * Lets the queued operations finish and stops the threads afterwards.
+     */
+    void shutdown() {
+        this.executor.shutdown();
+    }
+
+    private void overflow(Runnable operation, OverflowPolicy overflowPolicy) {
+        if (this.executor.isShutdown()) {
+            throw new RejectedExecutionException("the storage has been initialised again");
+        }
+        this.overflowedOperations.incrementAndGet();
+        switch (overflowPolicy) {
+            case BLOCK:
+                if (!this.isOperationThread()) {
+                    try {
+                        this.executor.getQueue().put(operation);
+                        return;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                }
+                operation.run();
+                return;
+            case CALLER_RUNS:
+                operation.run();
+                return;
+            default:
+                throw new RejectedExecutionException("the operation queue is full");
+        }
+    }
+
+    private boolean isOperationThread() {
+        final Thread thread = Thread.currentThread();
+        return thread instanceof OperationThread && ((OperationThread) thread).queue == this;
+    }
+
+    private class OperationThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new OperationThread(OperationQueue.this, runnable, "uuid-object-storage-" + this.threadCount.incrementAndGet());
+        }
+    }
+
+    private static class OperationThread extends Thread {
+        private final OperationQueue queue;
+
+        OperationThread(OperationQueue queue, Runnable runnable, String name) {
+            super(runnable, name);
+            this.queue = queue;
+            this.setDaemon(true);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ch.papers.objectstorage;
+
+/**
+ * What an asynchronous call does when the operation queue of the storage is full, see
+ * {@link UuidObjectStorageConfig#setAsyncQueueCapacity(int)}.
+ */
+public enum OverflowPolicy {
+    /**
+     * The caller waits until there is room in the queue. Calls from within a callback or another operation
+     * run on the calling thread instead, so the storage threads never wait for themselves.
+     */
+    BLOCK,
+    /**
+     * The operation fails right away, callbacks get an error and futures complete with a
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    REJECT,
+    /**
+     * The operation runs on the calling thread, which slows the caller down to the pace of the storage.
+     */
+    CALLER_RUNS
+}
@@ -6,24 +6,81 @@ package ch.papers.objectstorage;
  * a.decarli@papers.ch
  */
 
+import ch.papers.objectstorage.caches.CacheBudget;
+import ch.papers.objectstorage.caches.ClassCache;
+import ch.papers.objectstorage.caches.HeapClassCache;
+import ch.papers.objectstorage.caches.LazyClassCache;
+import ch.papers.objectstorage.caches.QueryCache;
+import ch.papers.objectstorage.expiry.ClassExpiry;
 import ch.papers.objectstorage.filters.Filter;
 import ch.papers.objectstorage.filters.MatchAllFilter;
-import ch.papers.objectstorage.filters.UuidFilter;
-import ch.papers.objectstorage.listeners.BlockingOnResultListener;
 import ch.papers.objectstorage.listeners.OnResultListener;
 import ch.papers.objectstorage.listeners.OnStorageChangeListener;
+import ch.papers.objectstorage.metrics.MetricsRegistry;
+import ch.papers.objectstorage.metrics.StorageMetrics;
+import ch.papers.objectstorage.metrics.StorageOperation;
 import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.mutators.Mutator;
+import ch.papers.objectstorage.persistence.ClassBloomFilter;
+import ch.papers.objectstorage.persistence.ClassFile;
+import ch.papers.objectstorage.persistence.ClassIndex;
+import ch.papers.objectstorage.persistence.Snapshot;
+import ch.papers.objectstorage.persistence.VersionFloor;
+import ch.papers.objectstorage.replication.Change;
+import ch.papers.objectstorage.replication.ChangeLog;
+import ch.papers.objectstorage.replication.FollowedClass;
+import ch.papers.objectstorage.strings.StringDeduplication;
+import ch.papers.objectstorage.strings.StringPool;
+import ch.papers.objectstorage.text.TextIndex;
+import ch.papers.objectstorage.text.TextQuery;
+import ch.papers.objectstorage.tracing.StorageEvent;
+import ch.papers.objectstorage.tracing.StorageTracer;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import javax.management.JMException;
 
 public class UuidObjectStorage {
 
     private static UuidObjectStorage INSTANCE;
+    // classes with at least this many entries are updated in parallel
+    private static final int PARALLEL_UPDATE_THRESHOLD = 10000;
+    private static final int IMPORT_CHUNK_SIZE = 10000;
+    private static final int FOLLOW_BATCH_SIZE = 10000;
 
     /**
      * Signleton accessor
@@ -37,13 +94,40 @@ public class UuidObjectStorage {
         return INSTANCE;
     }
 
-    private UuidObjectStorage() {
+    /**
+     * Creates a storage that is independent of the singleton, e.g. to run a leader and a follower in one
+     * process. Every storage has to be initialised with its own root path.
+     */
+    public UuidObjectStorage() {
     }
 
     private File rootPath;
+    private UuidObjectStorageConfig config = new UuidObjectStorageConfig();
+    private CacheBudget cacheBudget;
 
-    private final Map<Class<? extends AbstractUuidObject>, Map<UUID, ? extends AbstractUuidObject>> uuidObjectCache = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, Map<UUID, ? extends AbstractUuidObject>>();
+    private final Map<Class<? extends AbstractUuidObject>, ClassCache<? extends AbstractUuidObject>> uuidObjectCache = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, ClassCache<? extends AbstractUuidObject>>();
+    private final ConcurrentMap<Class<? extends AbstractUuidObject>, FutureTask<ClassCache<? extends AbstractUuidObject>>> classLoadTasks = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, FutureTask<ClassCache<? extends AbstractUuidObject>>>();
     private final Map<Class<? extends AbstractUuidObject>, List<OnStorageChangeListener>> listeners = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, List<OnStorageChangeListener>>();
+    private Map<Class<? extends AbstractUuidObject>, Future<?>> preloadFutures = Collections.emptyMap();
+    private final AtomicInteger pendingOperations = new AtomicInteger();
+    private final Lock persistLock = new ReentrantLock();
+    private volatile OperationQueue operationQueue = createOperationQueue(this.config);
+    private volatile ThreadPoolExecutor persistExecutor;
+    private final ConcurrentMap<Class<? extends AbstractUuidObject>, ClassExpiry> expiries = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, ClassExpiry>();
+    private volatile ScheduledExecutorService reaper;
+    private final FailureLog reaperFailures = new FailureLog("expiring entries", FailureLog.DEFAULT_INTERVAL_MILLIS);
+    private final ConcurrentMap<Class<? extends AbstractUuidObject>, ChangeLog> changeLogs = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, ChangeLog>();
+    private final Map<Class<? extends AbstractUuidObject>, FollowedClass> followedClasses = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, FollowedClass>();
+    private ScheduledExecutorService follower;
+    private final FailureLog followerFailures = new FailureLog("following the leader", FailureLog.DEFAULT_INTERVAL_MILLIS);
+    private volatile QueryCache queryCache;
+    private StringPool stringPool;
+    private final Map<Class<? extends AbstractUuidObject>, Gson> decoders = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, Gson>();
+    private final Map<Class<? extends AbstractUuidObject>, TextIndex> textIndexes = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, TextIndex>();
+    // the filters of classes that are not loaded yet, dropped once their class is loaded
+    private final Map<Class<? extends AbstractUuidObject>, ClassBloomFilter> bloomFilters = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, ClassBloomFilter>();
+    private final AtomicLong bloomFilterNegatives = new AtomicLong();
+    private final Map<Class<? extends AbstractUuidObject>, VersionFloor> versionFloors = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, VersionFloor>();
 
     /**
      * Check the initialisation state
@@ -60,10 +144,226 @@ public class UuidObjectStorage {
      * @param rootPath path where the data should be stored
      */
     public synchronized void init(File rootPath) {
+        this.init(rootPath, new UuidObjectStorageConfig());
+    }
+
+    /**
+     * Initialises the objectstorage signleton with the filepath and the given options. If preload classes are
+     * configured, their files are loaded in parallel in the background, see {@link #awaitPreload()}.
+     *
+     * @param rootPath path where the data should be stored
+     * @param config   storage options
+     */
+    public synchronized void init(File rootPath, UuidObjectStorageConfig config) {
         if(!this.isInitialised()){
+            // first, an unknown field to deduplicate or index leaves the storage uninitialised
+            this.createDecoders(config);
+            this.createTextIndexes(config);
             this.rootPath = rootPath;
+            this.config = config;
+            this.cacheBudget = config.isCacheBounded() ? new CacheBudget(config.getMaxCachedEntries(), config.getMaxCachedBytes()) : null;
+            this.queryCache = config.getMaxCachedQueries() > 0 ? new QueryCache(config.getMaxCachedQueries(), config.getMaxCachedQueryEntries()) : null;
             this.uuidObjectCache.clear();
+            this.classLoadTasks.clear();
+            this.bloomFilters.clear();
+            this.bloomFilterNegatives.set(0);
+            this.versionFloors.clear();
             this.listeners.clear();
+            this.stopReaper();
+            this.expiries.clear();
+            this.stopFollowing();
+            this.followedClasses.clear();
+            this.closeChangeLogs();
+            final OperationQueue previousQueue = this.operationQueue;
+            this.operationQueue = createOperationQueue(config);
+            previousQueue.shutdown();
+            final ThreadPoolExecutor previousPersistExecutor = this.persistExecutor;
+            this.persistExecutor = config.getPersistThreads() > 1 ? createPersistExecutor(config.getPersistThreads()) : null;
+            if (previousPersistExecutor != null) {
+                previousPersistExecutor.shutdown();
+            }
+            if (config.isJmxEnabled()) {
+                try {
+                    StorageMetrics.register(this, rootPath);
+                } catch (JMException e) {
+                    e.printStackTrace();
+                }
+            }
+            this.preloadFutures = this.preload(config);
+            if (config.getLeaderRootPath() != null) {
+                this.startFollowing(config);
+            }
+        }
+    }
+
+    /**
+     * Returns the readiness futures of the classes that are being preloaded since init.
+     *
+     * @return a future per preloaded class, completing once the class is in memory
+     */
+    public Map<Class<? extends AbstractUuidObject>, Future<?>> getPreloadFutures() {
+        return this.preloadFutures;
+    }
+
+    /**
+     * Blocks until all preloaded classes are in memory.
+     *
+     * @throws UuidObjectStorageException if a class could not be loaded
+     */
+    public void awaitPreload() throws UuidObjectStorageException {
+        for (Future<?> preloadFuture : this.preloadFutures.values()) {
+            try {
+                preloadFuture.get();
+            } catch (InterruptedException e) {
+                throw new UuidObjectStorageException(e);
+            } catch (ExecutionException e) {
+                throw new UuidObjectStorageException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Returns the registry the storage reports its measurements to, see
+     * {@link UuidObjectStorageConfig#setMetricsRegistry(MetricsRegistry)}.
+     *
+     * @return the metrics registry
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return this.config.getMetricsRegistry();
+    }
+
+    /**
+     * Returns the number of asynchronous operations that have been started and are not done yet, including
+     * their callbacks.
+     *
+     * @return the pending operations
+     */
+    public int getPendingOperations() {
+        return this.pendingOperations.get();
+    }
+
+    /**
+     * Returns the number of asynchronous operations waiting for a thread, see
+     * {@link UuidObjectStorageConfig#setAsyncQueueCapacity(int)}.
+     *
+     * @return the length of the operation queue
+     */
+    public int getQueuedOperations() {
+        return this.operationQueue.getQueuedOperations();
+    }
+
+    /**
+     * Returns how often an asynchronous call found the operation queue full since init, regardless of the
+     * {@link OverflowPolicy}.
+     *
+     * @return the number of overflows
+     */
+    public long getOverflowedOperations() {
+        return this.operationQueue.getOverflowedOperations();
+    }
+
+    /**
+     * Returns the number of entries of every class that is loaded.
+     *
+     * @return the entry count per loaded class
+     */
+    public Map<Class<? extends AbstractUuidObject>, Integer> getCachedEntryCounts() {
+        final Map<Class<? extends AbstractUuidObject>, Integer> cachedEntryCounts = new LinkedHashMap<Class<? extends AbstractUuidObject>, Integer>();
+        for (Map.Entry<Class<? extends AbstractUuidObject>, ClassCache<? extends AbstractUuidObject>> entry : this.uuidObjectCache.entrySet()) {
+            cachedEntryCounts.put(entry.getKey(), entry.getValue().size());
+        }
+        return cachedEntryCounts;
+    }
+
+    /**
+     * Returns how often a filter query was answered from the query cache since init, see
+     * {@link UuidObjectStorageConfig#setMaxCachedQueries(int)}.
+     *
+     * @return the query cache hits, 0 if the cache is disabled
+     */
+    public long getQueryCacheHits() {
+        final QueryCache queryCache = this.queryCache;
+        return queryCache == null ? 0 : queryCache.getHits();
+    }
+
+    /**
+     * Returns how often a filter query had to scan its class since init because the query cache had no
+     * current result.
+     *
+     * @return the query cache misses, 0 if the cache is disabled
+     */
+    public long getQueryCacheMisses() {
+        final QueryCache queryCache = this.queryCache;
+        return queryCache == null ? 0 : queryCache.getMisses();
+    }
+
+    /**
+     * Returns the number of query results in the query cache, including outdated ones that haven't been
+     * dropped yet.
+     *
+     * @return the cached query results, 0 if the cache is disabled
+     */
+    public int getCachedQueries() {
+        final QueryCache queryCache = this.queryCache;
+        return queryCache == null ? 0 : queryCache.getCachedQueries();
+    }
+
+    /**
+     * Returns how many strings have been replaced by an equal instance while loading since init, see
+     * {@link UuidObjectStorageConfig#setStringDeduplication(Class, String...)}.
+     *
+     * @return the number of deduplicated strings, 0 if no class is deduplicated
+     */
+    public long getDeduplicatedStrings() {
+        return this.stringPool == null ? 0 : this.stringPool.getDeduplicatedStrings();
+    }
+
+    /**
+     * Returns how many point lookups and deletes since init returned without loading their class, because its
+     * Bloom filter or the missing class file ruled the entry out, see
+     * {@link UuidObjectStorageConfig#setBloomFilterFalsePositiveRate(double)}.
+     *
+     * @return the number of lookups answered by a Bloom filter, 0 if the filters are disabled
+     */
+    public long getBloomFilterNegatives() {
+        return this.bloomFilterNegatives.get();
+    }
+
+    /**
+     * Returns how many changes a follower was behind its leader at its last poll, per followed class.
+     *
+     * @return the replication lag in changes, empty unless the storage follows a leader
+     */
+    public Map<Class<? extends AbstractUuidObject>, Long> getReplicationLag() {
+        final Map<Class<? extends AbstractUuidObject>, Long> replicationLag = new LinkedHashMap<Class<? extends AbstractUuidObject>, Long>();
+        for (Map.Entry<Class<? extends AbstractUuidObject>, FollowedClass> entry : this.followedClasses.entrySet()) {
+            replicationLag.put(entry.getKey(), entry.getValue().getLag());
+        }
+        return replicationLag;
+    }
+
+    /**
+     * Returns the time between the leader recording and this follower applying the last applied change, per
+     * followed class.
+     *
+     * @return the replication delay in milliseconds, empty unless the storage follows a leader
+     */
+    public Map<Class<? extends AbstractUuidObject>, Long> getReplicationDelayMillis() {
+        final Map<Class<? extends AbstractUuidObject>, Long> replicationDelays = new LinkedHashMap<Class<? extends AbstractUuidObject>, Long>();
+        for (Map.Entry<Class<? extends AbstractUuidObject>, FollowedClass> entry : this.followedClasses.entrySet()) {
+            replicationDelays.put(entry.getKey(), entry.getValue().getDelayMillis());
+        }
+        return replicationDelays;
+    }
+
+    /**
+     * Stops applying the changes of the leader, e.g. to promote a follower once its leader is gone. The state
+     * replicated so far stays, writes are no longer overwritten by the leader's changes.
+     */
+    public synchronized void stopFollowing() {
+        if (this.follower != null) {
+            this.follower.shutdownNow();
+            this.follower = null;
         }
     }
 
@@ -76,16 +376,11 @@ public class UuidObjectStorage {
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
     public <T extends AbstractUuidObject> void addEntries(final Map<UUID, T> entries, final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener blockingOnResultListener = new BlockingOnResultListener();
-        this.addEntries(entries, blockingOnResultListener, clazz);
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            this.putEntries(entries, clazz);
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
-        }
     }
 
     /**
@@ -97,18 +392,17 @@ public class UuidObjectStorage {
      * @param <T>            generic type of objects
      */
     public <T extends AbstractUuidObject> void addEntries(final Map<UUID, T> entries, final OnResultListener<Map<UUID, T>> resultCallback, final Class<T> clazz) {
-        new Thread(new Runnable() {
+        this.execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    UuidObjectStorage.this.<T>getOrCreateClassCache(clazz).putAll(entries);
-                    UuidObjectStorage.this.notifyListeners(clazz);
+                    UuidObjectStorage.this.putEntries(entries, clazz);
                     resultCallback.onSuccess(entries);
                 } catch (Throwable e) {
                     resultCallback.onError(e.getMessage());
                 }
             }
-        }).start();
+        }, resultCallback);
     }
 
     /**
@@ -120,16 +414,15 @@ public class UuidObjectStorage {
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
     public <T extends AbstractUuidObject> void addEntriesAsList(final List<T> entries, final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener blockingOnResultListener = new BlockingOnResultListener();
-        this.addEntriesAsList(entries, blockingOnResultListener, clazz);
+        final Map<UUID, T> entriesToAdd = new HashMap<UUID, T>();
+        for (T entry : entries) {
+            entriesToAdd.put(entry.getUuid(), entry);
+        }
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            this.putEntries(entriesToAdd, clazz);
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
-        }
     }
 
     /**
@@ -168,16 +461,11 @@ public class UuidObjectStorage {
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
     public <T extends AbstractUuidObject> void addEntry(final T entry, final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener blockingOnResultListener = new BlockingOnResultListener();
-        this.addEntry(entry, blockingOnResultListener, clazz);
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            this.putEntry(entry, clazz);
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
-        }
     }
 
     /**
@@ -213,16 +501,12 @@ public class UuidObjectStorage {
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
     public <T extends AbstractUuidObject> void deleteEntry(final T entry, final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener blockingOnResultListener = new BlockingOnResultListener();
-        this.deleteEntry(entry, blockingOnResultListener, clazz);
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            // deleting a missing entry succeeds, like the asynchronous variants
+            this.removeEntry(entry.getUuid(), clazz);
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
-        }
     }
 
     /**
@@ -234,17 +518,16 @@ public class UuidObjectStorage {
      * @param <T>            generic type of objects
      */
     public <T extends AbstractUuidObject> void deleteEntry(final T entry, final OnResultListener<T> resultCallback, final Class<T> clazz) {
-        this.deleteEntries(new UuidFilter(entry.getUuid()), new OnResultListener<Map<UUID, T>>() {
-            @Override
-            public void onSuccess(Map<UUID, T> result) {
-                resultCallback.onSuccess(result.get(entry.getUuid()));
-            }
-
+        this.execute(new Runnable() {
             @Override
-            public void onError(String message) {
-                resultCallback.onError(message);
+            public void run() {
+                try {
+                    resultCallback.onSuccess(UuidObjectStorage.this.removeEntry(entry.getUuid(), clazz));
+                } catch (Throwable e) {
+                    resultCallback.onError(e.getMessage());
+                }
             }
-        }, clazz);
+        }, resultCallback);
     }
 
     /**
@@ -256,16 +539,11 @@ public class UuidObjectStorage {
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
     public <T extends AbstractUuidObject> void deleteEntries(final Filter<T> filter, final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener blockingOnResultListener = new BlockingOnResultListener();
-        this.deleteEntries(filter, blockingOnResultListener, clazz);
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            this.removeEntries(filter, clazz);
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
-        }
     }
 
     /**
@@ -277,21 +555,16 @@ public class UuidObjectStorage {
      * @param <T>            generic type of objects
      */
     public <T extends AbstractUuidObject> void deleteEntries(final Filter<T> filter, final OnResultListener<Map<UUID, T>> resultCallback, final Class<T> clazz) {
-        this.getEntries(filter, new OnResultListener<Map<UUID, T>>() {
+        this.execute(new Runnable() {
             @Override
-            public void onSuccess(Map<UUID, T> result) {
-                for (T uuidObject : result.values()) {
-                    UuidObjectStorage.this.uuidObjectCache.get(clazz).remove(uuidObject.getUuid());
+            public void run() {
+                try {
+                    resultCallback.onSuccess(UuidObjectStorage.this.removeEntries(filter, clazz));
+                } catch (Throwable e) {
+                    resultCallback.onError(e.getMessage());
                 }
-                UuidObjectStorage.this.notifyListeners(clazz);
-                resultCallback.onSuccess(result);
-            }
-
-            @Override
-            public void onError(String message) {
-                resultCallback.onError(message);
             }
-        }, clazz);
+        }, resultCallback);
     }
 
     /**
@@ -304,17 +577,11 @@ public class UuidObjectStorage {
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
     public <T extends AbstractUuidObject> Map<UUID, T> getEntries(final Filter<T> filter, final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener<Map<UUID, T>> blockingOnResultListener = new BlockingOnResultListener<Map<UUID, T>>();
-        this.getEntries(filter, blockingOnResultListener, clazz);
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            return this.findEntries(filter, clazz);
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
-        }
-        return blockingOnResultListener.getResultObject();
     }
 
     /**
@@ -326,45 +593,90 @@ public class UuidObjectStorage {
      * @param <T>            generic type of objects
      */
     public <T extends AbstractUuidObject> void getEntries(final Filter<T> filter, final OnResultListener<Map<UUID, T>> resultCallback, final Class<T> clazz) {
-        new Thread(new Runnable() {
+        this.execute(new Runnable() {
             @Override
             public void run() {
-                final Map<UUID, T> resultMap = new ConcurrentHashMap<UUID, T>();
                 try {
-                    for (T uuidObject : UuidObjectStorage.this.<T>getOrCreateClassCache(clazz).values()) {
-                        if (filter.matches(uuidObject)) {
-                            resultMap.put(uuidObject.getUuid(), uuidObject);
-                        }
-                    }
-                    resultCallback.onSuccess(resultMap);
+                    resultCallback.onSuccess(UuidObjectStorage.this.findEntries(filter, clazz));
                 } catch (Throwable e) {
                     e.printStackTrace();
                     resultCallback.onError(e.getMessage());
                 }
             }
-        }).start();
+        }, resultCallback);
     }
 
     /**
-     * Returns all entries from the object storage synchronously.
+     * Returns the entries matching a text query synchronously, looked up in the text index of the class instead
+     * of scanning it, see {@link UuidObjectStorageConfig#setTextIndex(Class, String...)}.
      *
-     * @param clazz dynamic type of objects
+     * @param query text query to match entries you want to get
+     * @param clazz dynamic type of objects, must have a text index
      * @param <T>   generic type of objects
      * @return matching entries
-     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
+     * @throws UuidObjectStorageException if the class has no text index or something goes wrong during the
+     *                                    synchronous call
      */
-    public <T extends AbstractUuidObject> Map<UUID, T> getEntries(final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener<Map<UUID, T>> blockingOnResultListener = new BlockingOnResultListener<Map<UUID, T>>();
-        this.getEntries(blockingOnResultListener, clazz);
+    public <T extends AbstractUuidObject> Map<UUID, T> getEntries(final TextQuery query, final Class<T> clazz) throws UuidObjectStorageException {
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            return this.findEntries(query, clazz);
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
+    }
+
+    /**
+     * Returns the entries matching a text query asynchronously.
+     *
+     * @param query          text query to match entries you want to get
+     * @param resultCallback the asynchronous callback
+     * @param clazz          dynamic type of objects, must have a text index
+     * @param <T>            generic type of objects
+     */
+    public <T extends AbstractUuidObject> void getEntries(final TextQuery query, final OnResultListener<Map<UUID, T>> resultCallback, final Class<T> clazz) {
+        this.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resultCallback.onSuccess(UuidObjectStorage.this.findEntries(query, clazz));
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    resultCallback.onError(e.getMessage());
+                }
+            }
+        }, resultCallback);
+    }
+
+    /**
+     * Returns the identifiers of the entries matching a text query synchronously, without reading the entries.
+     *
+     * @param query text query to match entries you want to find
+     * @param clazz dynamic type of objects, must have a text index
+     * @param <T>   generic type of objects
+     * @return identifiers of the matching entries
+     * @throws UuidObjectStorageException if the class has no text index or something goes wrong during the
+     *                                    synchronous call
+     */
+    public <T extends AbstractUuidObject> Set<UUID> search(final TextQuery query, final Class<T> clazz) throws UuidObjectStorageException {
+        try {
+            // loading the class reads or rebuilds its index
+            this.getOrCreateClassCache(clazz);
+            return this.getTextIndex(clazz).search(query);
+        } catch (IOException | RuntimeException e) {
+            throw new UuidObjectStorageException(e);
         }
-        return blockingOnResultListener.getResultObject();
+    }
+
+    /**
+     * Returns all entries from the object storage synchronously.
+     *
+     * @param clazz dynamic type of objects
+     * @param <T>   generic type of objects
+     * @return matching entries
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
+     */
+    public <T extends AbstractUuidObject> Map<UUID, T> getEntries(final Class<T> clazz) throws UuidObjectStorageException {
+        return this.getEntries(new MatchAllFilter(), clazz);
     }
 
     /**
@@ -388,17 +700,7 @@ public class UuidObjectStorage {
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
     public <T extends AbstractUuidObject> List<T> getEntriesAsList(final Filter<T> filter, final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener<List<T>> blockingOnResultListener = new BlockingOnResultListener<List<T>>();
-        this.getEntriesAsList(filter, blockingOnResultListener, clazz);
-        try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
-            throw new UuidObjectStorageException(e);
-        }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
-        }
-        return blockingOnResultListener.getResultObject();
+        return new ArrayList<T>(this.getEntries(filter, clazz).values());
     }
 
     /**
@@ -432,17 +734,7 @@ public class UuidObjectStorage {
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
     public <T extends AbstractUuidObject> List<T> getEntriesAsList(final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener<List<T>> blockingOnResultListener = new BlockingOnResultListener<List<T>>();
-        this.getEntriesAsList(blockingOnResultListener, clazz);
-        try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
-            throw new UuidObjectStorageException(e);
-        }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
-        }
-        return blockingOnResultListener.getResultObject();
+        return this.getEntriesAsList(new MatchAllFilter(), clazz);
     }
 
     /**
@@ -466,17 +758,16 @@ public class UuidObjectStorage {
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
     public <T extends AbstractUuidObject> T getFirstMatchEntry(final Filter<T> filter, final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener<T> blockingOnResultListener = new BlockingOnResultListener<T>();
-        this.getFirstMatchEntry(filter, blockingOnResultListener, clazz);
+        final T entry;
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            entry = this.findFirstEntry(filter, clazz);
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
+        if (entry == null) {
+            throw new UuidObjectStorageException("could not find entry for filter " + filter);
         }
-        return blockingOnResultListener.getResultObject();
+        return entry;
     }
 
     /**
@@ -515,17 +806,16 @@ public class UuidObjectStorage {
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
     public <T extends AbstractUuidObject> T getEntry(final UUID uuid, final Class<T> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener<T> blockingOnResultListener = new BlockingOnResultListener<T>();
-        this.getEntry(uuid, blockingOnResultListener, clazz);
+        final T entry;
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            entry = this.findEntry(uuid, clazz);
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
+        if (entry == null) {
+            throw new UuidObjectStorageException("could not find entry for uuid " + uuid);
         }
-        return blockingOnResultListener.getResultObject();
+        return entry;
     }
 
     /**
@@ -537,97 +827,1277 @@ public class UuidObjectStorage {
      * @param <T>            generic type of objects
      */
     public <T extends AbstractUuidObject> void getEntry(final UUID uuid, final OnResultListener<T> resultCallback, final Class<T> clazz) {
-        this.getFirstMatchEntry(new UuidFilter(uuid), resultCallback, clazz);
+        this.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final T entry = UuidObjectStorage.this.findEntry(uuid, clazz);
+                    if (entry != null) {
+                        resultCallback.onSuccess(entry);
+                    } else {
+                        resultCallback.onError("could not find entry for uuid " + uuid);
+                    }
+                } catch (Throwable e) {
+                    resultCallback.onError(e.getMessage());
+                }
+            }
+        }, resultCallback);
     }
 
     /**
-     * Register a listener that will be called if storage of a given class changes.
+     * Updates all entries matching a filter in a single scan, which runs in parallel for large classes. Listeners
+     * are notified once, after all entries have been updated.
      *
-     * @param onStorageChangeListener the listener that should be called
-     * @param clazz                   dynamic type of objects
-     * @param <T>                     generic type of objects
-     * @return the registered listener can be used for unregistering later on 
+     * @param filter  filter to match entries you want to update
+     * @param mutator changes each matching entry
+     * @param clazz   dynamic type of objects
+     * @param <T>     generic type of objects
+     * @return the number of updated entries
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
-    public <T extends AbstractUuidObject> OnStorageChangeListener registerOnChangeListener(OnStorageChangeListener onStorageChangeListener, final Class<T> clazz) {
-        final List<OnStorageChangeListener> listeners = this.getOrCreateListenerList(clazz);
-        listeners.add(onStorageChangeListener);
-        return onStorageChangeListener;
+    public <T extends AbstractUuidObject> int updateEntries(final Filter<T> filter, final Mutator<T> mutator, final Class<T> clazz) throws UuidObjectStorageException {
+        try {
+            return this.mutateEntries(filter, mutator, clazz);
+        } catch (IOException | RuntimeException e) {
+            throw new UuidObjectStorageException(e);
+        }
     }
 
-    public <T extends AbstractUuidObject> void unRegisterOnChangeListener(OnStorageChangeListener onStorageChangeListener, final Class<T> clazz) {
-        final List<OnStorageChangeListener> listeners = this.getOrCreateListenerList(clazz);
-        listeners.remove(onStorageChangeListener);
+    /**
+     * Updates all entries matching a filter asynchronously, see {@link #updateEntries(Filter, Mutator, Class)}.
+     *
+     * @param filter         filter to match entries you want to update
+     * @param mutator        changes each matching entry
+     * @param resultCallback the asynchronous callback, gets the number of updated entries
+     * @param clazz          dynamic type of objects
+     * @param <T>            generic type of objects
+     */
+    public <T extends AbstractUuidObject> void updateEntries(final Filter<T> filter, final Mutator<T> mutator, final OnResultListener<Integer> resultCallback, final Class<T> clazz) {
+        this.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resultCallback.onSuccess(UuidObjectStorage.this.mutateEntries(filter, mutator, clazz));
+                } catch (Throwable e) {
+                    resultCallback.onError(e.getMessage());
+                }
+            }
+        }, resultCallback);
     }
 
     /**
-     * Commit and persist all entries to disk synchronously
+     * Replaces an entry, unless it has been written since it was read with the expected version. Use this
+     * instead of {@link #addEntry(AbstractUuidObject, Class)} when the same entry can be updated concurrently:
+     * no update is lost, and writers of other entries are never blocked.
+     * <pre>
+     * TestModel current = storage.getEntry(uuid, TestModel.class);
+     * TestModel changed = new TestModel(current); // a copy, the stored object must not be modified
+     * changed.setName("new name");
+     * if (!storage.replaceEntry(changed, current.getVersion(), TestModel.class)) {
+     *     // somebody else was faster, read again and retry
+     * }
+     * </pre>
      *
+     * @param entry           a copy of the stored entry with the changes, its version is set on success
+     * @param expectedVersion the version of the entry the copy was made from
+     * @param clazz           dynamic type of objects
+     * @param <T>             generic type of objects
+     * @return true if the entry has been replaced, false if it has been written or deleted in the meantime
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
-    public void commit() throws UuidObjectStorageException {
-        final BlockingOnResultListener<String> blockingOnResultListener = new BlockingOnResultListener<String>();
-        this.commit(blockingOnResultListener);
+    public <T extends AbstractUuidObject> boolean replaceEntry(final T entry, final long expectedVersion, final Class<T> clazz) throws UuidObjectStorageException {
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            return this.replaceVersion(entry, expectedVersion, clazz);
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
-        }
     }
 
     /**
-     * Commit and persist all entries to disk asynchronously
+     * Atomically updates an entry: the function gets the current entry (null if there is none) and returns the
+     * new one, null to delete it or the given entry itself to leave it as is. If another writer changes the
+     * entry in the meantime, the function is called again with the new state, so it should be free of side
+     * effects and must not modify the entry it gets.
      *
-     * @param resultCallback the asynchronous callback
+     * @param uuid     the identifier of the object
+     * @param function computes the new entry from the current one
+     * @param clazz    dynamic type of objects
+     * @param <T>      generic type of objects
+     * @return the entry after the update, null if there is none
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
-    public void commit(final OnResultListener<String> resultCallback) {
-        for (Class<? extends AbstractUuidObject> keyClazz : this.uuidObjectCache.keySet()) {
-            this.commit(resultCallback, keyClazz);
+    public <T extends AbstractUuidObject> T compute(final UUID uuid, final UnaryOperator<T> function, final Class<T> clazz) throws UuidObjectStorageException {
+        try {
+            return this.computeEntry(uuid, function, clazz);
+        } catch (IOException | RuntimeException e) {
+            throw new UuidObjectStorageException(e);
         }
     }
 
     /**
-     * Commit and persist the entries of a class to disk synchronously
+     * Lets a single entry expire after the given time, overriding the time to live of its class (see
+     * {@link UuidObjectStorageConfig#setTimeToLive}) until the entry is written again. Expired entries are
+     * removed in the background, see {@link UuidObjectStorageConfig#setExpiryResolution}.
      *
-     * @param clazz dynamic type of objects
+     * @param uuid     the identifier of the object
+     * @param duration time until the entry expires, 0 to keep it forever
+     * @param unit     unit of the duration
+     * @param clazz    dynamic type of objects
+     * @param <T>      generic type of objects
+     * @return true if the entry exists
      * @throws UuidObjectStorageException if something goes wrong during the synchronous call
      */
-    public void commit(final Class<? extends AbstractUuidObject> clazz) throws UuidObjectStorageException {
-        final BlockingOnResultListener<String> blockingOnResultListener = new BlockingOnResultListener<String>();
-        this.commit(blockingOnResultListener, clazz);
+    public <T extends AbstractUuidObject> boolean setTimeToLive(final UUID uuid, final long duration, final TimeUnit unit, final Class<T> clazz) throws UuidObjectStorageException {
         try {
-            blockingOnResultListener.getCountDownLatch().await();
-        } catch (InterruptedException e) {
+            if (this.getOrCreateClassCache(clazz).get(uuid) == null) {
+                return false;
+            }
+            if (duration > 0) {
+                this.getOrCreateExpiry(clazz).expireAt(uuid, System.currentTimeMillis() + unit.toMillis(duration));
+            } else {
+                this.clearExpiry(uuid, clazz);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
             throw new UuidObjectStorageException(e);
         }
-        if (!blockingOnResultListener.isSuccess()) {
-            throw new UuidObjectStorageException(blockingOnResultListener.getErrorMessage());
+    }
+
+    /**
+     * @param uuid  the identifier of the object
+     * @param clazz dynamic type of objects
+     * @param <T>   generic type of objects
+     * @return when the entry expires in milliseconds since the epoch, 0 if it doesn't
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
+     */
+    public <T extends AbstractUuidObject> long getExpirationTime(final UUID uuid, final Class<T> clazz) throws UuidObjectStorageException {
+        try {
+            this.getOrCreateClassCache(clazz);
+            final ClassExpiry expiry = this.expiries.get(clazz);
+            return expiry == null ? 0 : expiry.getDeadline(uuid);
+        } catch (IOException | RuntimeException e) {
+            throw new UuidObjectStorageException(e);
         }
     }
 
     /**
-     * Commit and persist the entries of a class to disk asynchronously
+     * Reads the change feed of a class, which has to be enabled with
+     * {@link UuidObjectStorageConfig#setChangeFeedEnabled}. Every write and delete gets the next sequence
+     * number of its class, changes that are older than the last commit of the class are no longer available.
      *
-     * @param resultCallback the asynchronous callback
+     * @param clazz         dynamic type of objects
+     * @param afterSequence the sequence number of the last change already seen, 0 for all available changes
+     * @param maxChanges    the maximum number of changes to return
+     * @param <T>           generic type of objects
+     * @return the changes in the order of their sequence numbers
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
+     */
+    public <T extends AbstractUuidObject> List<Change<T>> getChanges(final Class<T> clazz, final long afterSequence, final int maxChanges) throws UuidObjectStorageException {
+        try {
+            this.getOrCreateClassCache(clazz);
+            return ChangeLog.read(new ClassFile(this.rootPath, clazz), clazz, afterSequence, maxChanges);
+        } catch (IOException | RuntimeException e) {
+            throw new UuidObjectStorageException(e);
+        }
+    }
+
+    /**
+     * Streams all entries of a class as newline-delimited JSON, one entry per line. Entries are written one
+     * at a time, entries of lazily loaded classes that have not been deserialized are copied as they are
+     * stored. Writes made during the export may or may not be included.
+     *
+     * @param clazz        dynamic type of objects
+     * @param outputStream the stream to write to, it is flushed but not closed
+     * @param <T>          generic type of objects
+     * @return the number of exported entries
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
+     */
+    public <T extends AbstractUuidObject> int exportClass(final Class<T> clazz, final OutputStream outputStream) throws UuidObjectStorageException {
+        try {
+            return this.exportEntries(clazz, outputStream);
+        } catch (IOException | RuntimeException e) {
+            throw new UuidObjectStorageException(e);
+        }
+    }
+
+    /**
+     * Adds the entries of a newline-delimited JSON stream, as written by {@link #exportClass}, and commits the
+     * class once at the end. The stream is parsed in chunks of 10000 lines, which are decoded in parallel and
+     * then added, so the import itself never holds more than a chunk. Listeners are notified once.
+     * <p>
+     * Imported entries replace stored entries with the same uuid and get versions like any other write. If a
+     * line can't be parsed, the import stops and the chunks added before stay in memory uncommitted.
+     *
+     * @param clazz       dynamic type of objects
+     * @param inputStream the stream to read, it is read to the end but not closed
+     * @param <T>         generic type of objects
+     * @return the number of imported entries
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
+     */
+    public <T extends AbstractUuidObject> int importClass(final Class<T> clazz, final InputStream inputStream) throws UuidObjectStorageException {
+        try {
+            return this.importEntries(clazz, inputStream);
+        } catch (IOException | RuntimeException e) {
+            throw new UuidObjectStorageException(e);
+        }
+    }
+
+    /**
+     * Register a listener that will be called if storage of a given class changes.
+     *
+     * @param onStorageChangeListener the listener that should be called
+     * @param clazz                   dynamic type of objects
+     * @param <T>                     generic type of objects
+     * @return the registered listener can be used for unregistering later on 
+     */
+    public <T extends AbstractUuidObject> OnStorageChangeListener registerOnChangeListener(OnStorageChangeListener onStorageChangeListener, final Class<T> clazz) {
+        final List<OnStorageChangeListener> listeners = this.getOrCreateListenerList(clazz);
+        listeners.add(onStorageChangeListener);
+        return onStorageChangeListener;
+    }
+
+    public <T extends AbstractUuidObject> void unRegisterOnChangeListener(OnStorageChangeListener onStorageChangeListener, final Class<T> clazz) {
+        final List<OnStorageChangeListener> listeners = this.getOrCreateListenerList(clazz);
+        listeners.remove(onStorageChangeListener);
+    }
+
+    /**
+     * Commit and persist all entries to disk synchronously
+     *
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
+     */
+    public void commit() throws UuidObjectStorageException {
+        for (Class<? extends AbstractUuidObject> keyClazz : this.uuidObjectCache.keySet()) {
+            this.commit(keyClazz);
+        }
+    }
+
+    /**
+     * Commit and persist all entries to disk asynchronously
+     *
+     * @param resultCallback the asynchronous callback
+     */
+    public void commit(final OnResultListener<String> resultCallback) {
+        for (Class<? extends AbstractUuidObject> keyClazz : this.uuidObjectCache.keySet()) {
+            this.commit(resultCallback, keyClazz);
+        }
+    }
+
+    /**
+     * Commit and persist the entries of a class to disk synchronously
+     *
+     * @param clazz dynamic type of objects
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
+     */
+    public void commit(final Class<? extends AbstractUuidObject> clazz) throws UuidObjectStorageException {
+        try {
+            this.commitEntries(clazz);
+        } catch (IOException | RuntimeException e) {
+            throw new UuidObjectStorageException(e);
+        }
+    }
+
+    /**
+     * Commit and persist the entries of a class to disk asynchronously
+     *
+     * @param resultCallback the asynchronous callback
      * @param clazz          dynamic type of objects
      */
     public void commit(final OnResultListener<String> resultCallback, final Class<? extends AbstractUuidObject> clazz) {
-        new Thread(new Runnable() {
+        this.execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    persistEntries(clazz);
+                    UuidObjectStorage.this.commitEntries(clazz);
                     resultCallback.onSuccess(Constants.SUCCESS_MESSAGE);
                 } catch (Throwable e) {
                     resultCallback.onError(e.getMessage());
                 }
             }
-        }).start();
+        }, resultCallback);
+    }
+
+    /**
+     * Takes a consistent point-in-time copy of the committed state of all classes, which can be opened like
+     * any other root path. The copy consists of hard links to the class files, which a commit replaces
+     * rather than modifies, or of copies where the target doesn't support links. Writes go on during the
+     * snapshot, commits only wait while the files are linked or opened. Commit first to include changes that
+     * are still in memory.
+     *
+     * @param target an empty or missing directory
+     * @return the snapshot
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
+     */
+    public Snapshot snapshot(final File target) throws UuidObjectStorageException {
+        return this.snapshot(target, null);
+    }
+
+    /**
+     * Takes an incremental snapshot, see {@link #snapshot(File)}: files that haven't been replaced by a commit
+     * since the previous snapshot are taken from it, so only the changed files are copied.
+     *
+     * @param target           an empty or missing directory
+     * @param previousSnapshot a complete snapshot of this storage
+     * @return the snapshot
+     * @throws UuidObjectStorageException if something goes wrong during the synchronous call
+     */
+    public Snapshot snapshot(final File target, final File previousSnapshot) throws UuidObjectStorageException {
+        try {
+            final Snapshot snapshot;
+            this.persistLock.lock();
+            try {
+                snapshot = Snapshot.take(this.rootPath, target, previousSnapshot);
+            } finally {
+                this.persistLock.unlock();
+            }
+            return snapshot.complete(target);
+        } catch (IOException | RuntimeException e) {
+            throw new UuidObjectStorageException(e);
+        }
+    }
+
+    /**
+     * Returns an entry without blocking. If its class is loaded already, the lookup happens on the calling
+     * thread and the returned future is completed, otherwise the class is loaded in the background first.
+     *
+     * @param uuid  the identifier of the object
+     * @param clazz dynamic type of objects
+     * @param <T>   generic type of objects
+     * @return a future completing with the entry, or with null if there is no such entry
+     */
+    public <T extends AbstractUuidObject> CompletableFuture<T> getEntryAsync(final UUID uuid, final Class<T> clazz) {
+        return this.call(() -> this.findEntry(uuid, clazz), this.isLoaded(clazz));
+    }
+
+    /**
+     * Returns the entries matching a filter, scanning the class in the background.
+     *
+     * @param filter filter to match entries you want to get
+     * @param clazz  dynamic type of objects
+     * @param <T>    generic type of objects
+     * @return a future completing with the matching entries
+     */
+    public <T extends AbstractUuidObject> CompletableFuture<Map<UUID, T>> getEntriesAsync(final Filter<T> filter, final Class<T> clazz) {
+        return this.call(() -> this.findEntries(filter, clazz), false);
+    }
+
+    /**
+     * Returns all entries of a class, see {@link #getEntriesAsync(Filter, Class)}.
+     *
+     * @param clazz dynamic type of objects
+     * @param <T>   generic type of objects
+     * @return a future completing with all entries
+     */
+    public <T extends AbstractUuidObject> CompletableFuture<Map<UUID, T>> getEntriesAsync(final Class<T> clazz) {
+        return this.getEntriesAsync(new MatchAllFilter(), clazz);
+    }
+
+    /**
+     * Adds an entry without blocking, see {@link #addEntriesAsync(Map, Class)}.
+     *
+     * @param entry the entry to store
+     * @param clazz dynamic type of objects
+     * @param <T>   generic type of objects
+     * @return a future completing with the added entry
+     */
+    public <T extends AbstractUuidObject> CompletableFuture<T> addEntryAsync(final T entry, final Class<T> clazz) {
+        return this.addEntriesAsync(Collections.singletonMap(entry.getUuid(), entry), clazz).thenApply(entries -> entry);
+    }
+
+    /**
+     * Adds entries without blocking. If their class is loaded already, they are added on the calling thread and
+     * the returned future is completed, otherwise the class is loaded in the background first.
+     *
+     * @param entries the entries to store
+     * @param clazz   dynamic type of objects
+     * @param <T>     generic type of objects
+     * @return a future completing with the added entries
+     */
+    public <T extends AbstractUuidObject> CompletableFuture<Map<UUID, T>> addEntriesAsync(final Map<UUID, T> entries, final Class<T> clazz) {
+        return this.call(() -> {
+            this.putEntries(entries, clazz);
+            return entries;
+        }, this.isLoaded(clazz));
+    }
+
+    /**
+     * Deletes an entry without blocking, see {@link #getEntryAsync(UUID, Class)} for the thread it runs on.
+     *
+     * @param entry the entry to delete
+     * @param clazz dynamic type of objects
+     * @param <T>   generic type of objects
+     * @return a future completing with the deleted entry, or with null if there was no such entry
+     */
+    public <T extends AbstractUuidObject> CompletableFuture<T> deleteEntryAsync(final T entry, final Class<T> clazz) {
+        return this.call(() -> this.removeEntry(entry.getUuid(), clazz), this.isLoaded(clazz));
+    }
+
+    /**
+     * Deletes the entries matching a filter, scanning the class in the background.
+     *
+     * @param filter filter to match entries you want to delete
+     * @param clazz  dynamic type of objects
+     * @param <T>    generic type of objects
+     * @return a future completing with the deleted entries
+     */
+    public <T extends AbstractUuidObject> CompletableFuture<Map<UUID, T>> deleteEntriesAsync(final Filter<T> filter, final Class<T> clazz) {
+        return this.call(() -> this.removeEntries(filter, clazz), false);
+    }
+
+    /**
+     * Updates all entries matching a filter in the background, see {@link #updateEntries(Filter, Mutator, Class)}.
+     *
+     * @param filter  filter to match entries you want to update
+     * @param mutator changes each matching entry
+     * @param clazz   dynamic type of objects
+     * @param <T>     generic type of objects
+     * @return a future completing with the number of updated entries
+     */
+    public <T extends AbstractUuidObject> CompletableFuture<Integer> updateEntriesAsync(final Filter<T> filter, final Mutator<T> mutator, final Class<T> clazz) {
+        return this.call(() -> this.mutateEntries(filter, mutator, clazz), false);
+    }
+
+    /**
+     * Persists the entries of a class to disk in the background.
+     *
+     * @param clazz dynamic type of objects
+     * @return a future completing once the class file has been written
+     */
+    public CompletableFuture<Void> commitAsync(final Class<? extends AbstractUuidObject> clazz) {
+        return this.call(() -> {
+            this.commitEntries(clazz);
+            return null;
+        }, false);
+    }
+
+    /**
+     * Persists all loaded classes to disk in the background, in parallel.
+     *
+     * @return a future completing once all class files have been written
+     */
+    public CompletableFuture<Void> commitAsync() {
+        final List<CompletableFuture<Void>> commits = new ArrayList<CompletableFuture<Void>>();
+        for (Class<? extends AbstractUuidObject> clazz : this.uuidObjectCache.keySet()) {
+            commits.add(this.commitAsync(clazz));
+        }
+        return CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[commits.size()]));
+    }
+
+    private <T extends AbstractUuidObject> T findEntry(UUID uuid, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            if (!this.mightContain(uuid, clazz)) {
+                success = true;
+                return null;
+            }
+            final T entry = this.getOrCreateClassCache(clazz).get(uuid);
+            success = true;
+            return entry;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.GET, startNanos, success);
+        }
+    }
+
+    private <T extends AbstractUuidObject> T findFirstEntry(Filter<T> filter, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            final StorageTracer tracer = this.config.getTracer();
+            final Object scanTrace = tracer.begin(StorageEvent.SCAN);
+            T match = null;
+            int scanned = 0;
+            for (T uuidObject : classCache) {
+                scanned++;
+                if (filter.matches(uuidObject)) {
+                    match = uuidObject;
+                    break;
+                }
+            }
+            if (scanTrace != null) {
+                tracer.endScan(scanTrace, clazz, scanned, match != null ? 1 : 0);
+            }
+            success = true;
+            return match;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.GET, startNanos, success);
+        }
+    }
+
+    private <T extends AbstractUuidObject> Map<UUID, T> findEntries(TextQuery query, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            final TextIndex textIndex = this.getTextIndex(clazz);
+            final Map<UUID, T> resultMap = new ConcurrentHashMap<UUID, T>();
+            for (UUID uuid : textIndex.search(query)) {
+                final T entry = classCache.get(uuid);
+                // the entry may have changed since the index was searched
+                if (entry != null && query.matches(textIndex.getTokens(entry))) {
+                    resultMap.put(uuid, entry);
+                }
+            }
+            success = true;
+            return resultMap;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.GET, startNanos, success);
+        }
+    }
+
+    private TextIndex getTextIndex(Class<? extends AbstractUuidObject> clazz) {
+        final TextIndex textIndex = this.textIndexes.get(clazz);
+        if (textIndex == null) {
+            throw new IllegalArgumentException(clazz.getSimpleName() + " has no text index");
+        }
+        return textIndex;
+    }
+
+    private <T extends AbstractUuidObject> Map<UUID, T> findEntries(Filter<T> filter, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final QueryCache queryCache = this.queryCache;
+            if (queryCache != null) {
+                final Map<UUID, T> cachedResult = queryCache.get(clazz, filter);
+                if (cachedResult != null) {
+                    success = true;
+                    return new ConcurrentHashMap<UUID, T>(cachedResult);
+                }
+            }
+            // read before the scan, a change during the scan keeps its result out of the cache
+            final long generation = queryCache == null ? 0 : queryCache.getGeneration(clazz);
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            final StorageTracer tracer = this.config.getTracer();
+            final Object scanTrace = tracer.begin(StorageEvent.SCAN);
+            final Map<UUID, T> resultMap = new ConcurrentHashMap<UUID, T>();
+            int scanned = 0;
+            for (T uuidObject : classCache) {
+                scanned++;
+                if (filter.matches(uuidObject)) {
+                    resultMap.put(uuidObject.getUuid(), uuidObject);
+                }
+            }
+            if (scanTrace != null) {
+                tracer.endScan(scanTrace, clazz, scanned, resultMap.size());
+            }
+            if (queryCache != null) {
+                queryCache.put(clazz, filter, generation, new HashMap<UUID, T>(resultMap));
+            }
+            success = true;
+            return resultMap;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.GET, startNanos, success);
+        }
+    }
+
+    private <T extends AbstractUuidObject> void putEntry(T entry, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            this.write(this.getOrCreateClassCache(clazz), entry, clazz);
+            this.notifyListeners(clazz);
+            success = true;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.ADD, startNanos, success);
+        }
+    }
+
+    private <T extends AbstractUuidObject> void putEntries(Map<UUID, T> entries, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            for (T entry : entries.values()) {
+                this.write(classCache, entry, clazz);
+            }
+            this.notifyListeners(clazz);
+            success = true;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.ADD, startNanos, success);
+        }
+    }
+
+    /**
+     * Adds or overwrites an entry with the next version of its uuid. Writes of the same uuid are ordered by
+     * compare-and-set, so no two of them get the same version.
+     */
+    private <T extends AbstractUuidObject> void write(ClassCache<T> classCache, T entry, Class<T> clazz) throws IOException {
+        final UUID uuid = entry.getUuid();
+        final VersionFloor versionFloor = this.versionFloors.get(clazz);
+        while (true) {
+            final T current = classCache.get(uuid);
+            if (current == null) {
+                entry.setVersion(versionFloor.next());
+                if (classCache.putIfAbsent(uuid, entry)) {
+                    break;
+                }
+            } else {
+                entry.setVersion(current.getVersion() + 1);
+                if (classCache.replace(uuid, current, entry)) {
+                    break;
+                }
+            }
+        }
+        this.written(uuid, clazz);
+    }
+
+    private <T extends AbstractUuidObject> boolean replaceVersion(T entry, long expectedVersion, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            final UUID uuid = entry.getUuid();
+            final long previousVersion = entry.getVersion();
+            boolean replaced = false;
+            while (true) {
+                final T current = classCache.get(uuid);
+                if (current == null || current.getVersion() != expectedVersion) {
+                    break;
+                }
+                if (current == entry) {
+                    throw new IllegalArgumentException("entry " + uuid + " is the stored object, replace it with a modified copy");
+                }
+                // set before the entry can be seen, and restored if another writer is faster
+                entry.setVersion(expectedVersion + 1);
+                if (classCache.replace(uuid, current, entry)) {
+                    this.written(uuid, clazz);
+                    replaced = true;
+                    break;
+                }
+                entry.setVersion(previousVersion);
+            }
+            if (replaced) {
+                this.notifyListeners(clazz);
+            }
+            success = true;
+            return replaced;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.UPDATE, startNanos, success);
+        }
+    }
+
+    private <T extends AbstractUuidObject> int mutateEntries(final Filter<T> filter, final Mutator<T> mutator, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            final StorageTracer tracer = this.config.getTracer();
+            final Object scanTrace = tracer.begin(StorageEvent.SCAN);
+            final AtomicInteger scanned = new AtomicInteger();
+            final AtomicInteger updated = new AtomicInteger();
+            try {
+                StreamSupport.stream(classCache.spliterator(), classCache.size() >= PARALLEL_UPDATE_THRESHOLD).forEach(entry -> {
+                    scanned.incrementAndGet();
+                    try {
+                        if (filter.matches(entry) && this.mutate(classCache, entry, filter, mutator, clazz)) {
+                            updated.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (scanTrace != null) {
+                tracer.endScan(scanTrace, clazz, scanned.get(), updated.get());
+            }
+            if (updated.get() > 0) {
+                this.notifyListeners(clazz);
+            }
+            success = true;
+            return updated.get();
+        } finally {
+            this.recordOperation(clazz, StorageOperation.UPDATE, startNanos, success);
+        }
+    }
+
+    /**
+     * Writes the mutation of an entry that matched the filter. If another writer changed the entry meanwhile,
+     * its new state is filtered and mutated again.
+     */
+    private <T extends AbstractUuidObject> boolean mutate(ClassCache<T> classCache, T entry, Filter<T> filter, Mutator<T> mutator, Class<T> clazz) throws IOException {
+        final UUID uuid = entry.getUuid();
+        T current = entry;
+        while (true) {
+            final T mutated = mutator.mutate(current);
+            if (mutated == null || !uuid.equals(mutated.getUuid())) {
+                throw new IllegalArgumentException("mutator has to return an entry with the uuid " + uuid);
+            }
+            mutated.setVersion(current.getVersion() + 1);
+            if (classCache.replace(uuid, current, mutated)) {
+                this.written(uuid, clazz);
+                return true;
+            }
+            current = classCache.get(uuid);
+            if (current == null || !filter.matches(current)) {
+                return false;
+            }
+        }
+    }
+
+    private <T extends AbstractUuidObject> T computeEntry(UUID uuid, UnaryOperator<T> function, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            while (true) {
+                final T current = classCache.get(uuid);
+                final T computed = function.apply(current);
+                if (computed == current) {
+                    success = true;
+                    return current;
+                }
+                final boolean written;
+                if (computed == null) {
+                    this.versionFloors.get(clazz).raise(current.getVersion());
+                    written = classCache.remove(uuid, current);
+                } else if (!uuid.equals(computed.getUuid())) {
+                    throw new IllegalArgumentException("computed entry " + computed.getUuid() + " does not have the uuid " + uuid);
+                } else if (current == null) {
+                    computed.setVersion(this.versionFloors.get(clazz).next());
+                    written = classCache.putIfAbsent(uuid, computed);
+                } else {
+                    computed.setVersion(current.getVersion() + 1);
+                    written = classCache.replace(uuid, current, computed);
+                }
+                if (written) {
+                    if (computed == null) {
+                        this.removed(uuid, clazz);
+                    } else {
+                        this.written(uuid, clazz);
+                    }
+                    this.notifyListeners(clazz);
+                    success = true;
+                    return computed;
+                }
+            }
+        } finally {
+            this.recordOperation(clazz, StorageOperation.UPDATE, startNanos, success);
+        }
+    }
+
+    private <T extends AbstractUuidObject> T removeEntry(UUID uuid, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            if (!this.mightContain(uuid, clazz)) {
+                success = true;
+                return null;
+            }
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            T entry;
+            do {
+                entry = classCache.get(uuid);
+                if (entry == null) {
+                    success = true;
+                    return null;
+                }
+                this.versionFloors.get(clazz).raise(entry.getVersion());
+            } while (!classCache.remove(uuid, entry));
+            this.removed(uuid, clazz);
+            this.notifyListeners(clazz);
+            success = true;
+            return entry;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.DELETE, startNanos, success);
+        }
+    }
+
+    private <T extends AbstractUuidObject> Map<UUID, T> removeEntries(Filter<T> filter, Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final Map<UUID, T> result = this.findEntries(filter, clazz);
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            final Iterator<T> iterator = result.values().iterator();
+            while (iterator.hasNext()) {
+                final T uuidObject = iterator.next();
+                // an entry written or deleted since the scan is left alone
+                this.versionFloors.get(clazz).raise(uuidObject.getVersion());
+                if (classCache.remove(uuidObject.getUuid(), uuidObject)) {
+                    this.removed(uuidObject.getUuid(), clazz);
+                } else {
+                    iterator.remove();
+                }
+            }
+            this.notifyListeners(clazz);
+            success = true;
+            return result;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.DELETE, startNanos, success);
+        }
     }
 
+    private <T extends AbstractUuidObject> int exportEntries(Class<T> clazz, OutputStream outputStream) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, 64 * 1024);
+            final int exported = this.getOrCreateClassCache(clazz).export(bufferedOutputStream);
+            bufferedOutputStream.flush();
+            success = true;
+            return exported;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.EXPORT, startNanos, success);
+        }
+    }
+
+    private <T extends AbstractUuidObject> int importEntries(final Class<T> clazz, InputStream inputStream) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, Constants.CHARSET), 64 * 1024);
+            final List<String> lines = new ArrayList<String>(IMPORT_CHUNK_SIZE);
+            final Gson decoder = this.getDecoder(clazz);
+            int imported = 0;
+            boolean endOfStream = false;
+            while (!endOfStream) {
+                String line;
+                while (lines.size() < IMPORT_CHUNK_SIZE && (line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        lines.add(line);
+                    }
+                }
+                endOfStream = lines.size() < IMPORT_CHUNK_SIZE;
+                final int firstLine = imported;
+                final List<T> entries = IntStream.range(0, lines.size()).parallel().mapToObj(i -> {
+                    final T entry = decoder.fromJson(lines.get(i), clazz);
+                    if (entry == null || entry.getUuid() == null) {
+                        throw new JsonParseException("entry " + (firstLine + i + 1) + " of " + clazz.getSimpleName() + " has no uuid");
+                    }
+                    return entry;
+                }).collect(Collectors.toList());
+                for (T entry : entries) {
+                    this.write(classCache, entry, clazz);
+                }
+                imported += entries.size();
+                lines.clear();
+            }
+            if (imported > 0) {
+                this.notifyListeners(clazz);
+            }
+            this.commitEntries(clazz);
+            success = true;
+            return imported;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.IMPORT, startNanos, success);
+        }
+    }
+
+    private void commitEntries(Class<? extends AbstractUuidObject> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            this.persistEntries(clazz);
+            success = true;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.COMMIT, startNanos, success);
+        }
+    }
+
+    /**
+     * Restarts the time to live of a written entry, or drops its expiration time if its class has none, and
+     * records the write in the change feed.
+     */
+    private void written(UUID uuid, Class<? extends AbstractUuidObject> clazz) throws IOException {
+        final long timeToLive = this.config.getTimeToLive(clazz);
+        if (timeToLive > 0) {
+            this.getOrCreateExpiry(clazz).expireAt(uuid, System.currentTimeMillis() + timeToLive);
+        } else {
+            this.clearExpiry(uuid, clazz);
+        }
+        this.indexText(uuid, clazz);
+        this.logChange(uuid, clazz);
+    }
+
+    private void removed(UUID uuid, Class<? extends AbstractUuidObject> clazz) throws IOException {
+        this.clearExpiry(uuid, clazz);
+        this.indexText(uuid, clazz);
+        this.logChange(uuid, clazz);
+    }
+
+    /**
+     * Indexes the current value of a written or removed entry if its class has a text index.
+     */
+    private void indexText(UUID uuid, Class<? extends AbstractUuidObject> clazz) throws IOException {
+        final TextIndex textIndex = this.textIndexes.get(clazz);
+        if (textIndex != null) {
+            textIndex.update(uuid, this.uuidObjectCache.get(clazz));
+        }
+    }
+
+    private void clearExpiry(UUID uuid, Class<? extends AbstractUuidObject> clazz) {
+        final ClassExpiry expiry = this.expiries.get(clazz);
+        if (expiry != null) {
+            expiry.clear(uuid);
+        }
+    }
+
+    private void logChange(UUID uuid, Class<? extends AbstractUuidObject> clazz) throws IOException {
+        final ChangeLog changeLog = this.changeLogs.get(clazz);
+        if (changeLog != null) {
+            changeLog.append(uuid, this.uuidObjectCache.get(clazz));
+        }
+    }
+
+    private void closeChangeLogs() {
+        for (ChangeLog changeLog : this.changeLogs.values()) {
+            try {
+                changeLog.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        this.changeLogs.clear();
+    }
+
+    private ClassExpiry getOrCreateExpiry(Class<? extends AbstractUuidObject> clazz) {
+        ClassExpiry expiry = this.expiries.get(clazz);
+        if (expiry == null) {
+            final ClassExpiry newExpiry = new ClassExpiry(this.config.getExpiryResolutionMillis());
+            expiry = this.expiries.putIfAbsent(clazz, newExpiry);
+            if (expiry == null) {
+                expiry = newExpiry;
+            }
+            this.startReaper();
+        }
+        return expiry;
+    }
+
+    private synchronized void startReaper() {
+        if (this.reaper == null) {
+            this.reaper = newDaemonScheduler("uuid-object-storage-expiry");
+            final long resolutionMillis = this.config.getExpiryResolutionMillis();
+            this.reaper.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    UuidObjectStorage.this.reap();
+                }
+            }, resolutionMillis, resolutionMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void stopReaper() {
+        if (this.reaper != null) {
+            this.reaper.shutdownNow();
+            this.reaper = null;
+        }
+    }
+
+    /**
+     * Removes the entries whose time to live is over, one batch and one change notification per class and tick.
+     */
+    private void reap() {
+        final long nowMillis = System.currentTimeMillis();
+        for (Map.Entry<Class<? extends AbstractUuidObject>, ClassExpiry> entry : this.expiries.entrySet()) {
+            final Class<? extends AbstractUuidObject> clazz = entry.getKey();
+            // the expiration times of a class are read just before its cache is published
+            if (!this.isLoaded(clazz)) {
+                continue;
+            }
+            try {
+                this.expire(entry.getValue(), clazz);
+            } catch (IOException | RuntimeException e) {
+                // recorded as a failed expiry, the next tick tries again
+                this.reaperFailures.log(e);
+            }
+        }
+    }
+
+    private <T extends AbstractUuidObject> void expire(ClassExpiry expiry, Class<T> clazz) throws IOException {
+        final List<ClassExpiry.Timer> due = expiry.advance(System.currentTimeMillis());
+        if (due.isEmpty()) {
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+            int expired = 0;
+            for (ClassExpiry.Timer timer : due) {
+                // read before claiming, so an entry written in between survives along with its new deadline
+                final T current = classCache.get(timer.getUuid());
+                if (current != null) {
+                    this.versionFloors.get(clazz).raise(current.getVersion());
+                }
+                if (expiry.claim(timer) && current != null && classCache.remove(timer.getUuid(), current)) {
+                    this.indexText(timer.getUuid(), clazz);
+                    this.logChange(timer.getUuid(), clazz);
+                    expired++;
+                }
+            }
+            if (expired > 0) {
+                this.notifyListeners(clazz);
+            }
+            success = true;
+        } finally {
+            this.recordOperation(clazz, StorageOperation.EXPIRE, startNanos, success);
+        }
+    }
+
+    private void startFollowing(UuidObjectStorageConfig config) {
+        for (Class<? extends AbstractUuidObject> clazz : config.getFollowedClasses()) {
+            long appliedSequence = 0;
+            try {
+                appliedSequence = ChangeLog.readSequence(new ClassFile(this.rootPath, clazz).getSequenceFile());
+            } catch (IOException e) {
+                // the follower starts over from the leader's class file
+                e.printStackTrace();
+            }
+            this.followedClasses.put(clazz, new FollowedClass(appliedSequence));
+        }
+        this.follower = newDaemonScheduler("uuid-object-storage-follower");
+        this.follower.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                UuidObjectStorage.this.follow();
+            }
+        }, 0, config.getFollowIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void follow() {
+        for (Map.Entry<Class<? extends AbstractUuidObject>, FollowedClass> entry : this.followedClasses.entrySet()) {
+            final long startNanos = System.nanoTime();
+            try {
+                if (this.follow(entry.getKey(), entry.getValue())) {
+                    this.recordOperation(entry.getKey(), StorageOperation.FOLLOW, startNanos, true);
+                }
+            } catch (IOException | RuntimeException e) {
+                // the next poll tries again
+                this.recordOperation(entry.getKey(), StorageOperation.FOLLOW, startNanos, false);
+                this.followerFailures.log(e);
+            }
+        }
+    }
+
+    /**
+     * Applies the changes of a class that the leader recorded since the last poll in batches, notifies the
+     * listeners once and commits the class if anything changed.
+     *
+     * @return true if anything changed
+     */
+    private <T extends AbstractUuidObject> boolean follow(Class<T> clazz, FollowedClass followed) throws IOException {
+        final ClassCache<T> classCache = this.getOrCreateClassCache(clazz);
+        final ClassFile leaderFile = new ClassFile(this.config.getLeaderRootPath(), clazz);
+        final long committedSequence = ChangeLog.readSequence(leaderFile.getSequenceFile());
+        boolean changed = false;
+        if (followed.getAppliedSequence() < committedSequence) {
+            // the changes in between have been cut off the log, start over from the leader's class file
+            final Map<UUID, T> entries = leaderFile.exists() ? leaderFile.<T>readAll(this.getDecoder(clazz), new UuidObjectMapType(clazz), false) : null;
+            final Map<UUID, T> leaderEntries = entries == null ? Collections.<UUID, T>emptyMap() : entries;
+            final Iterator<T> iterator = classCache.iterator();
+            while (iterator.hasNext()) {
+                if (!leaderEntries.containsKey(iterator.next().getUuid())) {
+                    iterator.remove();
+                }
+            }
+            classCache.putAll(leaderEntries);
+            final TextIndex textIndex = this.textIndexes.get(clazz);
+            if (textIndex != null) {
+                textIndex.rebuild(classCache);
+            }
+            followed.setAppliedSequence(committedSequence);
+            changed = true;
+        }
+
+        List<Change<T>> changes;
+        boolean lagRecorded = false;
+        do {
+            changes = ChangeLog.read(leaderFile, clazz, followed.getAppliedSequence(), FOLLOW_BATCH_SIZE);
+            if (!lagRecorded) {
+                followed.setLag(ChangeLog.getLastSequence(leaderFile) - followed.getAppliedSequence());
+                lagRecorded = true;
+            }
+            // a gap means the leader has just trimmed its log, the next poll starts over from its class file
+            if (changes.isEmpty() || changes.get(0).getSequence() != followed.getAppliedSequence() + 1) {
+                break;
+            }
+            for (Change<T> change : changes) {
+                if (change.isDelete()) {
+                    classCache.remove(change.getUuid());
+                } else {
+                    classCache.put(change.getUuid(), change.getEntry());
+                }
+                this.indexText(change.getUuid(), clazz);
+            }
+            final Change<T> last = changes.get(changes.size() - 1);
+            followed.setAppliedSequence(last.getSequence());
+            followed.setDelayMillis(System.currentTimeMillis() - last.getTimeMillis());
+            changed = true;
+        } while (changes.size() == FOLLOW_BATCH_SIZE);
+
+        if (changed) {
+            this.notifyListeners(clazz);
+            this.commitEntries(clazz);
+        }
+        return changed;
+    }
+
+    private void createTextIndexes(UuidObjectStorageConfig config) {
+        final Map<Class<? extends AbstractUuidObject>, TextIndex> textIndexes = new HashMap<Class<? extends AbstractUuidObject>, TextIndex>();
+        for (Map.Entry<Class<? extends AbstractUuidObject>, String[]> entry : config.getTextIndexedClasses().entrySet()) {
+            textIndexes.put(entry.getKey(), new TextIndex(entry.getKey(), entry.getValue()));
+        }
+        this.textIndexes.clear();
+        this.textIndexes.putAll(textIndexes);
+    }
+
+    private void createDecoders(UuidObjectStorageConfig config) {
+        this.decoders.clear();
+        this.stringPool = config.getDeduplicatedClasses().isEmpty() ? null : new StringPool(config.getStringPoolSize(), StringPool.DEFAULT_MAX_LENGTH);
+        for (Map.Entry<Class<? extends AbstractUuidObject>, String[]> entry : config.getDeduplicatedClasses().entrySet()) {
+            this.decoders.put(entry.getKey(), StringDeduplication.createGson(this.stringPool, entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * @return the Gson that entries of a class are loaded with, deduplicating their strings if configured
+     */
+    private Gson getDecoder(Class<? extends AbstractUuidObject> clazz) {
+        final Gson decoder = this.decoders.get(clazz);
+        return decoder == null ? Constants.GSON : decoder;
+    }
+
+    private static ScheduledExecutorService newDaemonScheduler(final String threadName) {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Rules out entries of classes that are not loaded yet without loading them. A class without a file has no
+     * entries, otherwise its committed Bloom filter is read once and kept until the class is loaded.
+     *
+     * @return false if the entry certainly doesn't exist
+     */
+    private boolean mightContain(UUID uuid, Class<? extends AbstractUuidObject> clazz) throws IOException {
+        if (this.config.getBloomFilterFalsePositiveRate() <= 0 || this.isLoaded(clazz)) {
+            return true;
+        }
+        ClassBloomFilter bloomFilter = this.bloomFilters.get(clazz);
+        if (bloomFilter == null) {
+            final ClassFile classFile = new ClassFile(this.rootPath, clazz);
+            // a class being created has no file yet, but it is published before its first entry is written
+            if (!classFile.exists() && !this.classLoadTasks.containsKey(clazz)) {
+                this.bloomFilterNegatives.incrementAndGet();
+                return false;
+            }
+            bloomFilter = ClassBloomFilter.read(classFile);
+            if (bloomFilter == null) {
+                // missing or outdated, the class has to be loaded
+                return true;
+            }
+            this.bloomFilters.put(clazz, bloomFilter);
+        }
+        if (bloomFilter.mightContain(uuid) || this.isLoaded(clazz)) {
+            return true;
+        }
+        this.bloomFilterNegatives.incrementAndGet();
+        return false;
+    }
+
+    private boolean isLoaded(Class<? extends AbstractUuidObject> clazz) {
+        return this.uuidObjectCache.containsKey(clazz);
+    }
+
+    /**
+     * Runs an operation of the callback API on the operation queue, the callback gets an error if the
+     * operation is rejected.
+     */
+    private void execute(final Runnable operation, OnResultListener<?> resultCallback) {
+        try {
+            this.submit(operation);
+        } catch (RejectedExecutionException e) {
+            resultCallback.onError(e.getMessage());
+        }
+    }
+
+    private void submit(final Runnable operation) {
+        this.pendingOperations.incrementAndGet();
+        try {
+            this.operationQueue.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        operation.run();
+                    } finally {
+                        UuidObjectStorage.this.pendingOperations.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.pendingOperations.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs an operation of the future API, either right away or on the async executor.
+     */
+    private <R> CompletableFuture<R> call(final Callable<R> operation, boolean onCallingThread) {
+        final CompletableFuture<R> future = new CompletableFuture<R>();
+        if (onCallingThread) {
+            complete(future, operation);
+            return future;
+        }
+        try {
+            this.submit(() -> complete(future, operation));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static <R> void complete(CompletableFuture<R> future, Callable<R> operation) {
+        try {
+            future.complete(operation.call());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static OperationQueue createOperationQueue(UuidObjectStorageConfig config) {
+        return new OperationQueue(config.getAsyncThreads(), config.getAsyncQueueCapacity(), config.getOverflowPolicy());
+    }
+
+    /**
+     * @return the pool serializing large classes on commit, its threads only live while commits keep them busy
+     */
+    private static ThreadPoolExecutor createPersistExecutor(int persistThreads) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadPoolExecutor persistExecutor = new ThreadPoolExecutor(persistThreads, persistThreads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "uuid-object-storage-persist-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        persistExecutor.allowCoreThreadTimeOut(true);
+        return persistExecutor;
+    }
+
+    private void recordOperation(Class<? extends AbstractUuidObject> clazz, StorageOperation operation, long startNanos, boolean success) {
+        this.config.getMetricsRegistry().recordOperation(clazz, operation, System.nanoTime() - startNanos, success);
+    }
+
+    /**
+     * Called after every change of a class, which also outdates its cached query results.
+     */
     private <T extends AbstractUuidObject> void notifyListeners(final Class<T> clazz) {
+        final QueryCache queryCache = this.queryCache;
+        if (queryCache != null) {
+            queryCache.invalidate(clazz);
+        }
         final List<OnStorageChangeListener> listeners = this.getOrCreateListenerList(clazz);
         for (OnStorageChangeListener listener : listeners) {
             listener.onChange();
@@ -643,56 +2113,213 @@ public class UuidObjectStorage {
         return listeners;
     }
 
-    private synchronized <T extends AbstractUuidObject> Map<UUID, T> getOrCreateClassCache(final Class<T> clazz) throws IOException {
+    private Map<Class<? extends AbstractUuidObject>, Future<?>> preload(UuidObjectStorageConfig config) {
+        final Map<Class<? extends AbstractUuidObject>, Future<?>> futures = new LinkedHashMap<Class<? extends AbstractUuidObject>, Future<?>>();
+        for (Class<? extends AbstractUuidObject> clazz : config.getPreloadClasses()) {
+            if (new ClassFile(this.rootPath, clazz).exists()) {
+                futures.put(clazz, this.getOrCreateLoadTask(clazz));
+            }
+        }
+
+        if (!futures.isEmpty()) {
+            final ExecutorService preloadExecutor = Executors.newFixedThreadPool(Math.min(config.getPreloadThreads(), futures.size()));
+            for (Future<?> future : futures.values()) {
+                preloadExecutor.execute((Runnable) future);
+            }
+            preloadExecutor.shutdown();
+        }
+        return Collections.unmodifiableMap(futures);
+    }
+
+    private <T extends AbstractUuidObject> ClassCache<T> getOrCreateClassCache(final Class<T> clazz) throws IOException {
+        ClassCache<T> entries = (ClassCache<T>) this.uuidObjectCache.get(clazz);
+        if (entries != null) {
+            return entries;
+        }
+
+        // whoever comes first loads the class, everybody else waits for that class only
+        final FutureTask<ClassCache<? extends AbstractUuidObject>> loadTask = this.getOrCreateLoadTask(clazz);
+        loadTask.run();
         try {
-            if (!this.uuidObjectCache.containsKey(clazz)) {
-                this.<T>loadEntries(clazz);
+            if (!loadTask.isDone()) {
+                final Object waitTrace = this.config.getTracer().begin(StorageEvent.LOCK_WAIT);
+                loadTask.get();
+                if (waitTrace != null) {
+                    this.config.getTracer().endLockWait(waitTrace, clazz, "class load");
+                }
+            }
+            return (ClassCache<T>) loadTask.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            this.classLoadTasks.remove(clazz, loadTask);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private <T extends AbstractUuidObject> FutureTask<ClassCache<? extends AbstractUuidObject>> getOrCreateLoadTask(final Class<T> clazz) {
+        FutureTask<ClassCache<? extends AbstractUuidObject>> loadTask = this.classLoadTasks.get(clazz);
+        if (loadTask == null) {
+            final FutureTask<ClassCache<? extends AbstractUuidObject>> newLoadTask = new FutureTask<ClassCache<? extends AbstractUuidObject>>(new Callable<ClassCache<? extends AbstractUuidObject>>() {
+                @Override
+                public ClassCache<? extends AbstractUuidObject> call() throws Exception {
+                    return UuidObjectStorage.this.loadOrCreateEntries(clazz);
+                }
+            });
+            loadTask = this.classLoadTasks.putIfAbsent(clazz, newLoadTask);
+            if (loadTask == null) {
+                loadTask = newLoadTask;
+            }
+        }
+        return loadTask;
+    }
+
+    private <T extends AbstractUuidObject> ClassCache<T> loadOrCreateEntries(final Class<T> clazz) throws IOException {
+        final long startNanos = System.nanoTime();
+        // read before the class is published, it is used by every write
+        this.versionFloors.put(clazz, VersionFloor.read(new ClassFile(this.rootPath, clazz).getVersionFloorFile()));
+        ClassCache<T> entries = null;
+        // only a class without a file is created empty, any other failure fails the load and keeps the file
+        if (new ClassFile(this.rootPath, clazz).exists()) {
+            boolean loaded = false;
+            try {
+                entries = this.loadEntries(clazz);
+                loaded = true;
+            } finally {
+                this.recordOperation(clazz, StorageOperation.LOAD, startNanos, loaded);
+            }
+        } else {
+            this.recordOperation(clazz, StorageOperation.LOAD, startNanos, true);
+        }
+
+        if (entries != null) {
+            final ClassExpiry expiry = ClassExpiry.read(new ClassFile(this.rootPath, clazz).getExpiryFile(), this.config.getExpiryResolutionMillis());
+            if (expiry != null) {
+                this.expiries.put(clazz, expiry);
+                this.startReaper();
+            }
+            final TextIndex textIndex = this.textIndexes.get(clazz);
+            if (textIndex != null) {
+                final ClassFile classFile = new ClassFile(this.rootPath, clazz);
+                // a missing or outdated sidecar is rebuilt from the loaded entries
+                if (!textIndex.read(classFile.getTextIndexFile(), classFile.getDataFile())) {
+                    textIndex.rebuild(entries);
+                }
+            }
+        }
+        if (this.config.isChangeFeedEnabled()) {
+            // opened before the class is published, so no write is missed
+            final ChangeLog previousChangeLog = this.changeLogs.put(clazz, ChangeLog.open(new ClassFile(this.rootPath, clazz)));
+            if (previousChangeLog != null) {
+                previousChangeLog.close();
             }
-        } catch (Throwable e) {
-            // this happens the first time you add an unknown class and it's ok
         }
 
-        Map<UUID, T> entries = (Map<UUID, T>) UuidObjectStorage.this.uuidObjectCache.get(clazz);
         if (entries == null) {
-            entries = new ConcurrentHashMap<UUID, T>();
+            entries = this.config.isLazyLoading() ? new LazyClassCache<T>(clazz, this.getDecoder(clazz), this.config.getRecordStorage(), this.cacheBudget, this.config.getMetricsRegistry()) : new HeapClassCache<T>();
             this.uuidObjectCache.put(clazz, entries);
             this.persistEntries(clazz);
+        } else {
+            this.uuidObjectCache.put(clazz, entries);
         }
+        this.bloomFilters.remove(clazz);
 
         return entries;
     }
 
-    private synchronized void persistEntries(Class<? extends AbstractUuidObject> clazz) throws IOException {
-        final File objectStorageFile = new File(this.rootPath, clazz.getSimpleName() + ".json");
-        final File objectStorageTempFile = new File(this.rootPath, clazz.getSimpleName() + ".json.tmp");   
-        OutputStreamWriter fileOutputStreamWriter = null; 
-        try {
-        	final FileOutputStream fileOutputStream = new FileOutputStream(objectStorageTempFile);
-        	fileOutputStreamWriter = new OutputStreamWriter(fileOutputStream);
-        	Constants.GSON.toJson(this.uuidObjectCache.get(clazz), fileOutputStreamWriter);
-        	fileOutputStreamWriter.flush();
-        	fileOutputStreamWriter.close();
-        	fileOutputStreamWriter = null;
-        	if (!objectStorageTempFile.renameTo(objectStorageFile)) {
-        		throw new IOException("Renaming file '" + objectStorageTempFile + "' to '" + objectStorageFile + "' failed");
-        	}
+    private void persistEntries(Class<? extends AbstractUuidObject> clazz) throws IOException {
+        final StorageTracer tracer = this.config.getTracer();
+        if (!this.persistLock.tryLock()) {
+            final Object waitTrace = tracer.begin(StorageEvent.LOCK_WAIT);
+            this.persistLock.lock();
+            if (waitTrace != null) {
+                tracer.endLockWait(waitTrace, clazz, "persist");
+            }
+        }
+        try {
+            final Object commitTrace = tracer.begin(StorageEvent.COMMIT);
+            final ClassFile classFile = new ClassFile(this.rootPath, clazz);
+            final ClassCache<? extends AbstractUuidObject> classCache = this.uuidObjectCache.get(clazz);
+            final ChangeLog changeLog = this.changeLogs.get(clazz);
+            final ChangeLog.Checkpoint checkpoint = changeLog == null ? null : changeLog.checkpoint();
+            final FollowedClass followed = this.followedClasses.get(clazz);
+            final long appliedSequence = followed == null ? 0 : followed.getAppliedSequence();
+            final TextIndex textIndex = this.textIndexes.get(clazz);
+            final long textGeneration = textIndex == null ? 0 : textIndex.getGeneration();
+            final double bloomFilterFalsePositiveRate = this.config.getBloomFilterFalsePositiveRate();
+            final VersionFloor versionFloor = this.versionFloors.get(clazz);
+            classCache.persist(classFile, this.persistExecutor, (index, dataFile) -> {
+                // a sidecar that isn't replaced is deleted, so it is never taken for one of a later data file
+                if (bloomFilterFalsePositiveRate > 0) {
+                    ClassBloomFilter.create(index, bloomFilterFalsePositiveRate).write(classFile.getBloomFilterFile(), dataFile);
+                } else {
+                    deleteFile(classFile.getBloomFilterFile());
+                }
+                if (textIndex != null) {
+                    textIndex.write(classFile.getTextIndexFile(), dataFile, textGeneration);
+                } else {
+                    deleteFile(classFile.getTextIndexFile());
+                }
+                if (versionFloor.get() > 0) {
+                    versionFloor.write(classFile.getVersionFloorFile());
+                }
+            });
+            if (checkpoint != null) {
+                changeLog.truncate(checkpoint);
+            } else if (followed != null) {
+                ChangeLog.writeSequence(classFile.getSequenceFile(), appliedSequence);
+            }
+            final ClassExpiry expiry = this.expiries.get(clazz);
+            if (expiry != null && !expiry.isEmpty()) {
+                expiry.write(classFile.getExpiryFile());
+            } else {
+                deleteFile(classFile.getExpiryFile());
+            }
+            final long bytesWritten = classFile.getDataFile().length() + classFile.getIndexFile().length() + classFile.getExpiryFile().length()
+                    + classFile.getTextIndexFile().length() + classFile.getBloomFilterFile().length() + classFile.getVersionFloorFile().length();
+            this.config.getMetricsRegistry().recordBytesWritten(clazz, bytesWritten);
+            if (commitTrace != null) {
+                tracer.endCommit(commitTrace, clazz, classCache.size(), bytesWritten);
+            }
         } finally {
-        	if (fileOutputStreamWriter != null) {
-        		fileOutputStreamWriter.close();
-        	}
-        }
-    }
-
-    private synchronized <T extends AbstractUuidObject> void loadEntries(Class<T> clazz) throws IOException {
-        this.uuidObjectCache.remove(clazz);
-        final File objectStorageFile = new File(this.rootPath, clazz.getSimpleName() + ".json");
-        final FileInputStream fileInputStream = new FileInputStream(objectStorageFile);
-        Reader fileInputStreamReader = new InputStreamReader(fileInputStream);
-        final Map<UUID, T> entriesMap = new ConcurrentHashMap<UUID, T>();
-        final Map<UUID, T> deserializedMap = Constants.GSON.fromJson(fileInputStreamReader, new UuidObjectMapType(clazz));
-        entriesMap.putAll(deserializedMap);
-        this.uuidObjectCache.put(clazz, entriesMap);
-        fileInputStreamReader.close();
+            this.persistLock.unlock();
+        }
+    }
+
+    private static void deleteFile(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Deleting file '" + file + "' failed");
+        }
+    }
+
+    private <T extends AbstractUuidObject> ClassCache<T> loadEntries(Class<T> clazz) throws IOException {
+        final ClassFile classFile = new ClassFile(this.rootPath, clazz);
+        final Object loadTrace = this.config.getTracer().begin(StorageEvent.LOAD);
+        if (this.config.isLazyLoading()) {
+            final ClassIndex index = ClassIndex.read(classFile);
+            if (index != null) {
+                final ClassCache<T> entries = LazyClassCache.open(clazz, this.getDecoder(clazz), classFile, index, this.config.getRecordStorage(), this.cacheBudget, this.config.getMetricsRegistry());
+                return this.loaded(clazz, entries, classFile.getIndexFile().length(), loadTrace);
+            }
+        }
+
+        final Map<UUID, T> deserializedMap = classFile.readAll(this.getDecoder(clazz), new UuidObjectMapType(clazz), this.config.isMemoryMappedLoading());
+        if (deserializedMap == null) {
+            return null;
+        }
+        final ClassCache<T> entries = this.config.isLazyLoading() ? new LazyClassCache<T>(clazz, this.getDecoder(clazz), this.config.getRecordStorage(), this.cacheBudget, this.config.getMetricsRegistry(), deserializedMap) : new HeapClassCache<T>(deserializedMap);
+        return this.loaded(clazz, entries, classFile.getDataFile().length(), loadTrace);
+    }
+
+    private <T extends AbstractUuidObject> ClassCache<T> loaded(Class<T> clazz, ClassCache<T> entries, long bytesRead, Object loadTrace) {
+        this.config.getMetricsRegistry().recordBytesRead(clazz, bytesRead);
+        if (loadTrace != null) {
+            this.config.getTracer().endLoad(loadTrace, clazz, entries.size(), bytesRead);
+        }
+        return entries;
     }
 
 }
@@ -0,0 +1,541 @@
+package ch.papers.objectstorage;
+
+import ch.papers.objectstorage.metrics.DefaultMetricsRegistry;
+import ch.papers.objectstorage.metrics.MetricsRegistry;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.persistence.ClassFileWriter;
+import ch.papers.objectstorage.persistence.RecordStorage;
+import ch.papers.objectstorage.strings.StringPool;
+import ch.papers.objectstorage.text.TextQuery;
+import ch.papers.objectstorage.tracing.StorageTracer;
+import ch.papers.objectstorage.tracing.StorageTracers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options for {@link UuidObjectStorage#init(java.io.File, UuidObjectStorageConfig)}.
+ * The defaults reproduce the behaviour of {@link UuidObjectStorage#init(java.io.File)}.
+ */
+public class UuidObjectStorageConfig {
+    public static final int DEFAULT_OFF_HEAP_CACHED_ENTRIES = 10000;
+    public static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 10000;
+
+    private final List<Class<? extends AbstractUuidObject>> preloadClasses = new ArrayList<Class<? extends AbstractUuidObject>>();
+    private int preloadThreads = Runtime.getRuntime().availableProcessors();
+    private boolean lazyLoading;
+    private int maxCachedEntries = Integer.MAX_VALUE;
+    private long maxCachedBytes = Long.MAX_VALUE;
+    private RecordStorage recordStorage = RecordStorage.FILE;
+    private boolean memoryMappedLoading;
+    private MetricsRegistry metricsRegistry = new DefaultMetricsRegistry();
+    private boolean jmxEnabled;
+    private StorageTracer tracer = StorageTracers.createDefault();
+    private int asyncThreads = 2 * Runtime.getRuntime().availableProcessors();
+    private int asyncQueueCapacity = DEFAULT_ASYNC_QUEUE_CAPACITY;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private final Map<Class<? extends AbstractUuidObject>, Long> timesToLive = new HashMap<Class<? extends AbstractUuidObject>, Long>();
+    private long expiryResolutionMillis = 1000;
+    private boolean changeFeedEnabled = false;
+    private File leaderRootPath;
+    private final List<Class<? extends AbstractUuidObject>> followedClasses = new ArrayList<Class<? extends AbstractUuidObject>>();
+    private long followIntervalMillis = 1000;
+    private int maxCachedQueries;
+    private int maxCachedQueryEntries = Integer.MAX_VALUE;
+    private final Map<Class<? extends AbstractUuidObject>, String[]> deduplicatedClasses = new HashMap<Class<? extends AbstractUuidObject>, String[]>();
+    private final Map<Class<? extends AbstractUuidObject>, String[]> textIndexedClasses = new HashMap<Class<? extends AbstractUuidObject>, String[]>();
+    private int stringPoolSize = StringPool.DEFAULT_SLOTS;
+    private int persistThreads = Runtime.getRuntime().availableProcessors();
+    private double bloomFilterFalsePositiveRate;
+
+    /**
+     * Classes that should be loaded eagerly on init. Only classes that have a file in the root path are loaded,
+     * all others are still created lazily on first access.
+     *
+     * @param classes dynamic types of objects to preload
+     * @return this config
+     */
+    @SafeVarargs
+    public final UuidObjectStorageConfig setPreloadClasses(Class<? extends AbstractUuidObject>... classes) {
+        this.preloadClasses.clear();
+        this.preloadClasses.addAll(Arrays.asList(classes));
+        return this;
+    }
+
+    public List<Class<? extends AbstractUuidObject>> getPreloadClasses() {
+        return Collections.unmodifiableList(this.preloadClasses);
+    }
+
+    /**
+     * Maximum number of classes loaded in parallel during preloading.
+     *
+     * @param preloadThreads size of the preload pool, at least 1
+     * @return this config
+     */
+    public UuidObjectStorageConfig setPreloadThreads(int preloadThreads) {
+        if (preloadThreads < 1) {
+            throw new IllegalArgumentException("preloadThreads must be at least 1");
+        }
+        this.preloadThreads = preloadThreads;
+        return this;
+    }
+
+    public int getPreloadThreads() {
+        return this.preloadThreads;
+    }
+
+    /**
+     * Opens classes using the index written next to each class file on commit, instead of parsing the whole
+     * file. Objects are deserialized on first access and kept in memory afterwards. Classes without an up to
+     * date index (e.g. written by an older version) are parsed completely the first time.
+     *
+     * @param lazyLoading true to open classes from their index
+     * @return this config
+     */
+    public UuidObjectStorageConfig setLazyLoading(boolean lazyLoading) {
+        this.lazyLoading = lazyLoading;
+        return this;
+    }
+
+    public boolean isLazyLoading() {
+        return this.lazyLoading || this.isCacheBounded() || this.recordStorage != RecordStorage.FILE;
+    }
+
+    /**
+     * Limits the number of deserialized objects kept in memory across all classes. Objects are evicted with
+     * the CLOCK (second chance) policy, an approximation of least recently used: objects accessed since the last
+     * eviction pass over them are skipped once. Evicted objects are read from their class file again when
+     * accessed. Objects that have been added or updated are only evictable after they have been committed.
+     * Implies lazy loading.
+     * <p>
+     * Note that changes to an object that has been evicted are lost, add it again after modifying it.
+     *
+     * @param maxCachedEntries the maximum number of deserialized objects
+     * @return this config
+     */
+    public UuidObjectStorageConfig setMaxCachedEntries(int maxCachedEntries) {
+        this.maxCachedEntries = maxCachedEntries;
+        return this;
+    }
+
+    public int getMaxCachedEntries() {
+        if (this.recordStorage == RecordStorage.OFF_HEAP && this.maxCachedEntries == Integer.MAX_VALUE && this.maxCachedBytes == Long.MAX_VALUE) {
+            return DEFAULT_OFF_HEAP_CACHED_ENTRIES;
+        }
+        return this.maxCachedEntries;
+    }
+
+    /**
+     * Limits the size of deserialized objects kept in memory across all classes, estimated by the size of
+     * their serialized form. Implies lazy loading, see {@link #setMaxCachedEntries(int)}.
+     *
+     * @param maxCachedBytes the maximum estimated size of deserialized objects
+     * @return this config
+     */
+    public UuidObjectStorageConfig setMaxCachedBytes(long maxCachedBytes) {
+        this.maxCachedBytes = maxCachedBytes;
+        return this;
+    }
+
+    public long getMaxCachedBytes() {
+        return this.maxCachedBytes;
+    }
+
+    public boolean isCacheBounded() {
+        return this.getMaxCachedEntries() != Integer.MAX_VALUE || this.maxCachedBytes != Long.MAX_VALUE;
+    }
+
+    /**
+     * Where the serialized entries of committed objects are kept. With {@link RecordStorage#OFF_HEAP} the class
+     * files are copied to off-heap memory and only a small number of deserialized objects is cached on the
+     * heap ({@link #DEFAULT_OFF_HEAP_CACHED_ENTRIES} unless limited otherwise). With
+     * {@link RecordStorage#MEMORY_MAPPED} objects are deserialized from the mapped class files. Implies lazy
+     * loading for everything but {@link RecordStorage#FILE}.
+     *
+     * @param recordStorage where to keep serialized entries
+     * @return this config
+     */
+    public UuidObjectStorageConfig setRecordStorage(RecordStorage recordStorage) {
+        this.recordStorage = recordStorage;
+        return this;
+    }
+
+    public RecordStorage getRecordStorage() {
+        return this.recordStorage;
+    }
+
+    /**
+     * Parses class files that are loaded completely from a memory mapping instead of a stream, which saves
+     * copying the file through intermediate buffers.
+     *
+     * @param memoryMappedLoading true to memory map class files for loading
+     * @return this config
+     */
+    public UuidObjectStorageConfig setMemoryMappedLoading(boolean memoryMappedLoading) {
+        this.memoryMappedLoading = memoryMappedLoading;
+        return this;
+    }
+
+    public boolean isMemoryMappedLoading() {
+        return this.memoryMappedLoading;
+    }
+
+    /**
+     * Where the storage reports operation latencies and the bytes it reads and writes. Defaults to a
+     * {@link DefaultMetricsRegistry}, which keeps them in memory.
+     *
+     * @param metricsRegistry the registry to report to
+     * @return this config
+     */
+    public UuidObjectStorageConfig setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        return this;
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    /**
+     * Registers a {@link ch.papers.objectstorage.metrics.StorageMetricsMXBean} with the platform MBean server
+     * on init.
+     *
+     * @param jmxEnabled true to expose the metrics over JMX
+     * @return this config
+     */
+    public UuidObjectStorageConfig setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        return this;
+    }
+
+    public boolean isJmxEnabled() {
+        return this.jmxEnabled;
+    }
+
+    /**
+     * Where the storage reports loads, commits, filter scans and lock waits. Defaults to emitting Flight
+     * Recorder events if the JVM supports them, see {@link StorageTracers#createDefault()}.
+     *
+     * @param tracer the tracer to report to
+     * @return this config
+     */
+    public UuidObjectStorageConfig setTracer(StorageTracer tracer) {
+        this.tracer = tracer;
+        return this;
+    }
+
+    public StorageTracer getTracer() {
+        return this.tracer;
+    }
+
+    /**
+     * Number of threads running the operations of the callback and future API. Defaults to twice the number
+     * of processors.
+     *
+     * @param asyncThreads size of the operation pool, at least 1
+     * @return this config
+     */
+    public UuidObjectStorageConfig setAsyncThreads(int asyncThreads) {
+        if (asyncThreads < 1) {
+            throw new IllegalArgumentException("asyncThreads must be at least 1");
+        }
+        this.asyncThreads = asyncThreads;
+        return this;
+    }
+
+    public int getAsyncThreads() {
+        return this.asyncThreads;
+    }
+
+    /**
+     * Maximum number of asynchronous operations waiting for a thread, defaults to
+     * {@link #DEFAULT_ASYNC_QUEUE_CAPACITY}. Once it is reached, the {@link OverflowPolicy} applies.
+     *
+     * @param asyncQueueCapacity the capacity of the operation queue, at least 1
+     * @return this config
+     */
+    public UuidObjectStorageConfig setAsyncQueueCapacity(int asyncQueueCapacity) {
+        if (asyncQueueCapacity < 1) {
+            throw new IllegalArgumentException("asyncQueueCapacity must be at least 1");
+        }
+        this.asyncQueueCapacity = asyncQueueCapacity;
+        return this;
+    }
+
+    public int getAsyncQueueCapacity() {
+        return this.asyncQueueCapacity;
+    }
+
+    /**
+     * What asynchronous calls do when the operation queue is full, defaults to {@link OverflowPolicy#BLOCK}.
+     *
+     * @param overflowPolicy the policy for a full queue
+     * @return this config
+     */
+    public UuidObjectStorageConfig setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Lets every entry of a class expire after the given time. The time starts over whenever the entry is
+     * written, see {@link UuidObjectStorage#setTimeToLive} to change it for a single entry.
+     *
+     * @param clazz    dynamic type of objects
+     * @param duration time until an entry expires, 0 to keep entries forever
+     * @param unit     unit of the duration
+     * @return this config
+     */
+    public UuidObjectStorageConfig setTimeToLive(Class<? extends AbstractUuidObject> clazz, long duration, TimeUnit unit) {
+        if (duration > 0) {
+            this.timesToLive.put(clazz, unit.toMillis(duration));
+        } else {
+            this.timesToLive.remove(clazz);
+        }
+        return this;
+    }
+
+    /**
+     * @param clazz dynamic type of objects
+     * @return the time to live of the entries of the class in milliseconds, 0 if they don't expire
+     */
+    public long getTimeToLive(Class<? extends AbstractUuidObject> clazz) {
+        final Long timeToLive = this.timesToLive.get(clazz);
+        return timeToLive == null ? 0 : timeToLive;
+    }
+
+    /**
+     * How often expired entries are removed, defaults to once a second. Entries remain visible for up to this
+     * long after they expired.
+     *
+     * @param duration interval of the expiry reaper
+     * @param unit     unit of the duration
+     * @return this config
+     */
+    public UuidObjectStorageConfig setExpiryResolution(long duration, TimeUnit unit) {
+        if (unit.toMillis(duration) < 1) {
+            throw new IllegalArgumentException("the expiry resolution must be at least a millisecond");
+        }
+        this.expiryResolutionMillis = unit.toMillis(duration);
+        return this;
+    }
+
+    public long getExpiryResolutionMillis() {
+        return this.expiryResolutionMillis;
+    }
+
+    /**
+     * Records every write and delete in a change feed per class, see {@link UuidObjectStorage#getChanges}.
+     * Followers read the feed from the root path of this storage, it is trimmed whenever a class is committed.
+     *
+     * @param changeFeedEnabled true to record changes
+     * @return this config
+     */
+    public UuidObjectStorageConfig setChangeFeedEnabled(boolean changeFeedEnabled) {
+        this.changeFeedEnabled = changeFeedEnabled;
+        return this;
+    }
+
+    public boolean isChangeFeedEnabled() {
+        return this.changeFeedEnabled;
+    }
+
+    /**
+     * Makes the storage a follower that applies the change feed of another storage to its own root path. The
+     * leader has to have its change feed enabled, it can run in the same or another process.
+     *
+     * @param leaderRootPath the root path of the leader, different from the root path of the follower
+     * @param classes        dynamic types of objects to replicate
+     * @return this config
+     */
+    @SafeVarargs
+    public final UuidObjectStorageConfig setLeader(File leaderRootPath, Class<? extends AbstractUuidObject>... classes) {
+        this.leaderRootPath = leaderRootPath;
+        this.followedClasses.clear();
+        this.followedClasses.addAll(Arrays.asList(classes));
+        return this;
+    }
+
+    public File getLeaderRootPath() {
+        return this.leaderRootPath;
+    }
+
+    public List<Class<? extends AbstractUuidObject>> getFollowedClasses() {
+        return Collections.unmodifiableList(this.followedClasses);
+    }
+
+    /**
+     * How often a follower polls the change feed of its leader, defaults to once a second.
+     *
+     * @param duration interval between polls
+     * @param unit     unit of the duration
+     * @return this config
+     */
+    public UuidObjectStorageConfig setFollowInterval(long duration, TimeUnit unit) {
+        if (unit.toMillis(duration) < 1) {
+            throw new IllegalArgumentException("the follow interval must be at least a millisecond");
+        }
+        this.followIntervalMillis = unit.toMillis(duration);
+        return this;
+    }
+
+    public long getFollowIntervalMillis() {
+        return this.followIntervalMillis;
+    }
+
+    /**
+     * Keeps the results of up to this many filter queries until their class changes, see
+     * {@link ch.papers.objectstorage.caches.QueryCache}. A query is identified by its class and its filter, so
+     * filters must implement equals or be passed as the same instance to be answered from the cache, and must
+     * only depend on the entries they are matched against. Disabled by default.
+     *
+     * @param maxCachedQueries the maximum number of cached results, 0 to disable the cache
+     * @return this config
+     */
+    public UuidObjectStorageConfig setMaxCachedQueries(int maxCachedQueries) {
+        if (maxCachedQueries < 0) {
+            throw new IllegalArgumentException("maxCachedQueries must not be negative");
+        }
+        this.maxCachedQueries = maxCachedQueries;
+        return this;
+    }
+
+    public int getMaxCachedQueries() {
+        return this.maxCachedQueries;
+    }
+
+    /**
+     * Limits the number of entries of all cached query results together, larger results are not cached. Cached
+     * results keep their entries in memory, including deserialized objects a bounded cache would evict
+     * otherwise.
+     *
+     * @param maxCachedQueryEntries the maximum number of entries of all cached results
+     * @return this config
+     */
+    public UuidObjectStorageConfig setMaxCachedQueryEntries(int maxCachedQueryEntries) {
+        this.maxCachedQueryEntries = maxCachedQueryEntries;
+        return this;
+    }
+
+    public int getMaxCachedQueryEntries() {
+        return this.maxCachedQueryEntries;
+    }
+
+    /**
+     * Deduplicates the strings of a class while it is loaded, so equal values like status codes, country codes
+     * or tags share one instance instead of taking up memory for every occurrence. The strings are taken from
+     * a {@link StringPool} shared by all classes, which is bounded by {@link #setStringPoolSize(int)}.
+     *
+     * @param clazz      dynamic type of objects
+     * @param fieldNames the fields to deduplicate as declared in Java, holding strings, lists or arrays of
+     *                   strings, none to deduplicate all strings of the class
+     * @return this config
+     */
+    public UuidObjectStorageConfig setStringDeduplication(Class<? extends AbstractUuidObject> clazz, String... fieldNames) {
+        this.deduplicatedClasses.put(clazz, fieldNames.clone());
+        return this;
+    }
+
+    /**
+     * @return the deduplicated classes with the names of their deduplicated fields, empty for all strings
+     */
+    public Map<Class<? extends AbstractUuidObject>, String[]> getDeduplicatedClasses() {
+        return Collections.unmodifiableMap(this.deduplicatedClasses);
+    }
+
+    /**
+     * The number of distinct strings kept for deduplication, defaults to {@link StringPool#DEFAULT_SLOTS}.
+     * Strings longer than {@link StringPool#DEFAULT_MAX_LENGTH} are not deduplicated.
+     *
+     * @param stringPoolSize the number of strings in the pool, at least 1
+     * @return this config
+     */
+    public UuidObjectStorageConfig setStringPoolSize(int stringPoolSize) {
+        if (stringPoolSize < 1) {
+            throw new IllegalArgumentException("stringPoolSize must be at least 1");
+        }
+        this.stringPoolSize = stringPoolSize;
+        return this;
+    }
+
+    public int getStringPoolSize() {
+        return this.stringPoolSize;
+    }
+
+    /**
+     * Maximum number of threads serializing a class in parallel on commit. Classes are serialized in chunks of
+     * {@link ClassFileWriter#CHUNK_ENTRIES} entries, so smaller classes are always serialized by the committing
+     * thread. Defaults to the number of processors, 1 serializes every class on the committing thread.
+     *
+     * @param persistThreads size of the serialization pool, at least 1
+     * @return this config
+     */
+    public UuidObjectStorageConfig setPersistThreads(int persistThreads) {
+        if (persistThreads < 1) {
+            throw new IllegalArgumentException("persistThreads must be at least 1");
+        }
+        this.persistThreads = persistThreads;
+        return this;
+    }
+
+    public int getPersistThreads() {
+        return this.persistThreads;
+    }
+
+    /**
+     * Keeps an inverted index of the tokens in string fields of a class, so entries containing a word or a word
+     * starting with a prefix are found without scanning the class, see
+     * {@link UuidObjectStorage#getEntries(TextQuery, Class)}. The index is updated on every write and delete
+     * and committed next to the class file.
+     *
+     * @param clazz      dynamic type of objects
+     * @param fieldNames the fields to index as declared in Java, holding strings, lists or arrays of strings,
+     *                   at least one
+     * @return this config
+     */
+    public UuidObjectStorageConfig setTextIndex(Class<? extends AbstractUuidObject> clazz, String... fieldNames) {
+        if (fieldNames.length == 0) {
+            throw new IllegalArgumentException("a text index needs at least one field");
+        }
+        this.textIndexedClasses.put(clazz, fieldNames.clone());
+        return this;
+    }
+
+    /**
+     * @return the text indexed classes with the names of their indexed fields
+     */
+    public Map<Class<? extends AbstractUuidObject>, String[]> getTextIndexedClasses() {
+        return Collections.unmodifiableMap(this.textIndexedClasses);
+    }
+
+    /**
+     * Commits a Bloom filter of the UUIDs next to every class file, so a point lookup or delete of a missing
+     * entry in a class that isn't loaded yet returns without loading it. Lookups in a class without a file
+     * return without creating one. Disabled by default.
+     *
+     * @param bloomFilterFalsePositiveRate the probability that a missing entry still loads its class, like 0.01
+     *                                     for about 10 bits per entry, 0 to disable the filters
+     * @return this config
+     */
+    public UuidObjectStorageConfig setBloomFilterFalsePositiveRate(double bloomFilterFalsePositiveRate) {
+        if (!(bloomFilterFalsePositiveRate >= 0 && bloomFilterFalsePositiveRate < 1)) {
+            throw new IllegalArgumentException("bloomFilterFalsePositiveRate must be at least 0 and less than 1");
+        }
+        this.bloomFilterFalsePositiveRate = bloomFilterFalsePositiveRate;
+        return this;
+    }
+
+    public double getBloomFilterFalsePositiveRate() {
+        return this.bloomFilterFalsePositiveRate;
+    }
+}
@@ -0,0 +1,19 @@
+package ch.papers.objectstorage.adapters;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a type adapter for a model class at compile time, which the storage uses instead of Gson's
+ * reflective adapter. The adapter reads and writes the same JSON: it honours {@code SerializedName} and leaves
+ * out static and transient fields. Fields it can't access directly are accessed through method handles.
+ * <p>
+ * The annotation processor is part of the library jar, it runs whenever the library is on the compile
+ * classpath. Annotated classes must not be private or generic. Subclasses need an annotation of their own.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateAdapter {
+}
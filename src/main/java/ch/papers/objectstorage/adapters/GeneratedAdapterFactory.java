@@ -0,0 +1,48 @@
+package ch.papers.objectstorage.adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Provides the generated adapters of classes annotated with {@link GenerateAdapter}. Classes whose adapter has not
+ * been generated, e.g. because annotation processing was disabled, are left to Gson's reflective adapter.
+ */
+public class GeneratedAdapterFactory implements TypeAdapterFactory {
+    public static final GeneratedAdapterFactory INSTANCE = new GeneratedAdapterFactory();
+    public static final String ADAPTER_SUFFIX = "_GsonAdapter";
+
+    private GeneratedAdapterFactory() {
+    }
+
+    /**
+     * @param clazz an annotated class
+     * @return the binary name of its generated adapter: nested class names are joined by underscores and the
+     * adapter is placed in the package of the class
+     */
+    public static String getAdapterClassName(Class<?> clazz) {
+        final String packagePrefix = clazz.getPackage() == null ? "" : clazz.getPackage().getName() + ".";
+        return packagePrefix + clazz.getName().substring(packagePrefix.length()).replace('$', '_') + ADAPTER_SUFFIX;
+    }
+
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        final Class<? super T> clazz = type.getRawType();
+        if (type.getType() != clazz || !clazz.isAnnotationPresent(GenerateAdapter.class)) {
+            return null;
+        }
+        try {
+            final Class<?> adapterClass = Class.forName(getAdapterClassName(clazz), true, clazz.getClassLoader());
+            return (TypeAdapter<T>) adapterClass.getConstructor(Gson.class).newInstance(gson);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("generated adapter of " + clazz.getName() + " can't be created", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("generated adapter of " + clazz.getName() + " can't be created", e.getCause());
+        }
+    }
+}
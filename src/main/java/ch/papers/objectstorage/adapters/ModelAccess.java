@@ -0,0 +1,122 @@
+package ch.papers.objectstorage.adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.InstanceCreator;
+import com.google.gson.TypeAdapter;
+import com.google.gson.internal.ConstructorConstructor;
+import com.google.gson.internal.ObjectConstructor;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.util.Collections;
+
+/**
+ * Called by generated adapters once, when they are initialised. The method handles they keep in static final
+ * fields are constants to the JIT compiler, so accessing a field through them is as fast as accessing it
+ * directly.
+ */
+public final class ModelAccess {
+    private static final ConstructorConstructor CONSTRUCTORS = new ConstructorConstructor(Collections.<Type, InstanceCreator<?>>emptyMap());
+
+    private ModelAccess() {
+    }
+
+    /**
+     * @param declaringClass the class declaring the field
+     * @param fieldName      the name of the field
+     * @return a handle reading the field, taking the object and returning the value
+     */
+    public static MethodHandle getter(Class<?> declaringClass, String fieldName) {
+        try {
+            return MethodHandles.lookup().unreflectGetter(findField(declaringClass, fieldName));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("field " + fieldName + " of " + declaringClass.getName() + " can't be read", e);
+        }
+    }
+
+    /**
+     * @param declaringClass the class declaring the field
+     * @param fieldName      the name of the field, which may be final
+     * @return a handle writing the field, taking the object and the value
+     */
+    public static MethodHandle setter(Class<?> declaringClass, String fieldName) {
+        try {
+            return MethodHandles.lookup().unreflectSetter(findField(declaringClass, fieldName));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("field " + fieldName + " of " + declaringClass.getName() + " can't be written", e);
+        }
+    }
+
+    /**
+     * @param clazz the class to create instances of
+     * @param <T>   the type of the class
+     * @return what Gson's reflective adapter creates instances with: the no-argument constructor if there is one,
+     * an instance allocated without running a constructor otherwise
+     */
+    public static <T> ObjectConstructor<T> constructor(Class<T> clazz) {
+        return CONSTRUCTORS.get(TypeToken.get(clazz));
+    }
+
+    /**
+     * Wraps the adapter of a field whose values may be instances of subclasses of its type. Like the reflective
+     * adapter, values are written with the adapter of their runtime class, unless that is reflective and the
+     * adapter of the field isn't.
+     *
+     * @param gson    the Gson the adapters come from
+     * @param adapter the adapter of the type of the field
+     * @param type    the type of the field
+     * @param <T>     the type of the field
+     * @return an adapter choosing the adapter of the runtime class for writing
+     */
+    public static <T> TypeAdapter<T> runtimeTypeAdapter(Gson gson, TypeAdapter<T> adapter, Class<T> type) {
+        return new RuntimeTypeAdapter<T>(gson, adapter, type);
+    }
+
+    private static Field findField(Class<?> declaringClass, String fieldName) {
+        try {
+            final Field field = declaringClass.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(declaringClass.getName() + " has no field " + fieldName + ", regenerate its adapter", e);
+        }
+    }
+
+    private static final class RuntimeTypeAdapter<T> extends TypeAdapter<T> {
+        private final Gson gson;
+        private final TypeAdapter<T> adapter;
+        private final Class<T> type;
+
+        RuntimeTypeAdapter(Gson gson, TypeAdapter<T> adapter, Class<T> type) {
+            this.gson = gson;
+            this.adapter = adapter;
+            this.type = type;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            if (value == null || value.getClass() == this.type) {
+                this.adapter.write(out, value);
+                return;
+            }
+            final TypeAdapter<T> runtimeAdapter = (TypeAdapter<T>) this.gson.getAdapter(value.getClass());
+            if (runtimeAdapter instanceof ReflectiveTypeAdapterFactory.Adapter && !(this.adapter instanceof ReflectiveTypeAdapterFactory.Adapter)) {
+                this.adapter.write(out, value);
+            } else {
+                runtimeAdapter.write(out, value);
+            }
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            return this.adapter.read(in);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ch.papers.objectstorage.caches;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number and the estimated size of deserialized objects kept by the {@link LazyClassCache}s sharing
+ * this budget. The size of an object is estimated by the length of its serialized form. When the budget is
+ * exceeded, objects are evicted with the CLOCK (second chance) policy: objects accessed since the hand last
+ * passed them are skipped once. Only persisted objects are evictable, evicted objects are read from the class
+ * file again on their next access.
+ */
+public class CacheBudget {
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final AtomicInteger residentEntries = new AtomicInteger();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final Queue<CachedRecord<?>> clock = new ConcurrentLinkedQueue<CachedRecord<?>>();
+
+    /**
+     * @param maxEntries maximum number of deserialized objects
+     * @param maxBytes   maximum estimated size of deserialized objects
+     */
+    public CacheBudget(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public int getResidentEntries() {
+        return this.residentEntries.get();
+    }
+
+    public long getResidentBytes() {
+        return this.residentBytes.get();
+    }
+
+    /**
+     * Sets the deserialized value of a record that was read from disk.
+     *
+     * @return the value of the record, which is the existing one if another thread was faster
+     */
+    <T> T admitLoaded(CachedRecord<T> record, T value, int length) {
+        synchronized (record) {
+            if (record.value != null) {
+                return record.value;
+            }
+            record.value = value;
+            this.makeResident(record, length);
+        }
+        this.clock.offer(record);
+        this.evictIfNecessary();
+        return value;
+    }
+
+    /**
+     * Makes a record that has just been persisted evictable, or updates its size if it already was.
+     */
+    void admitPersisted(CachedRecord<?> record, int length) {
+        synchronized (record) {
+            if (record.value == null) {
+                return;
+            }
+            if (record.resident) {
+                this.residentBytes.addAndGet(length - record.residentLength);
+                record.residentLength = length;
+                return;
+            }
+            this.makeResident(record, length);
+        }
+        this.clock.offer(record);
+        this.evictIfNecessary();
+    }
+
+    private void makeResident(CachedRecord<?> record, int length) {
+        record.resident = true;
+        record.residentLength = length;
+        this.residentEntries.incrementAndGet();
+        this.residentBytes.addAndGet(length);
+    }
+
+    private boolean isExceeded() {
+        return this.residentEntries.get() > this.maxEntries || this.residentBytes.get() > this.maxBytes;
+    }
+
+    private void evictIfNecessary() {
+        // every record gets at most one second chance per pass, so two passes are enough
+        int remainingVisits = 2 * this.residentEntries.get() + 16;
+        while (this.isExceeded() && remainingVisits-- > 0) {
+            final CachedRecord<?> record = this.clock.poll();
+            if (record == null) {
+                return;
+            }
+            if (record.referenced) {
+                record.referenced = false;
+                this.clock.offer(record);
+                continue;
+            }
+            // records that have been replaced or removed in the meantime end up here as well
+            synchronized (record) {
+                if (record.resident) {
+                    record.value = null;
+                    record.resident = false;
+                    this.residentEntries.decrementAndGet();
+                    this.residentBytes.addAndGet(-record.residentLength);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ch.papers.objectstorage.caches;
+
+/**
+ * An entry of a {@link LazyClassCache}: its location in the data file and, if it has been deserialized, its value.
+ */
+class CachedRecord<T> {
+    volatile T value;
+    // location of the serialized value, valid once the record has been persisted
+    long offset = -1;
+    int length;
+
+    // eviction state, see CacheBudget
+    volatile boolean referenced;
+    boolean resident;
+    int residentLength;
+
+    CachedRecord(T value) {
+        this.value = value;
+    }
+
+    boolean isPersisted() {
+        return this.offset >= 0;
+    }
+}
@@ -0,0 +1,74 @@
+package ch.papers.objectstorage.caches;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.persistence.ClassFile;
+import ch.papers.objectstorage.persistence.ClassIndex;
+import ch.papers.objectstorage.persistence.SidecarWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * In-memory state of one class of the object storage. Iterating a cache returns its entries, decoding them
+ * if required, I/O failures while iterating are reported as {@link com.google.gson.JsonIOException}.
+ */
+public interface ClassCache<T extends AbstractUuidObject> extends Iterable<T> {
+
+    public T get(UUID uuid) throws IOException;
+
+    public void put(UUID uuid, T entry);
+
+    public void putAll(Map<UUID, T> entries);
+
+    /**
+     * @return true if the entry has been added, false if there already is an entry with the uuid
+     */
+    public boolean putIfAbsent(UUID uuid, T entry);
+
+    /**
+     * Replaces an entry if it is still the object returned by {@link #get(UUID)}. Never blocks writers of
+     * other entries.
+     *
+     * @return true if the entry has been replaced
+     * @throws IOException if the current entry has to be read to compare it
+     */
+    public boolean replace(UUID uuid, T expectedEntry, T newEntry) throws IOException;
+
+    public boolean remove(UUID uuid);
+
+    /**
+     * Removes an entry if it is still the object returned by {@link #get(UUID)}.
+     *
+     * @return true if the entry has been removed
+     * @throws IOException if the current entry has to be read to compare it
+     */
+    public boolean remove(UUID uuid, T expectedEntry) throws IOException;
+
+    public int size();
+
+    /**
+     * Writes all entries to the class file and replaces the previous file.
+     *
+     * @param classFile     the file to write to
+     * @param serializer    the executor to serialize entries on in parallel, null to serialize them on the
+     *                      calling thread
+     * @param sidecarWriter writes the sidecar files of the class other than its index before the file is
+     *                      replaced, null if there are none
+     * @return the index of the written file
+     * @throws IOException if writing fails, the previous file is left untouched in that case
+     */
+    public ClassIndex persist(ClassFile classFile, Executor serializer, SidecarWriter sidecarWriter) throws IOException;
+
+    /**
+     * Writes all entries as newline-delimited JSON, one entry per line, without holding more than one of them
+     * in memory at a time.
+     *
+     * @param outputStream the stream to write to, left open
+     * @return the number of entries written
+     * @throws IOException if writing fails
+     */
+    public int export(OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,100 @@
+package ch.papers.objectstorage.caches;
+
+import ch.papers.objectstorage.Constants;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.persistence.ClassFile;
+import ch.papers.objectstorage.persistence.ClassFileWriter;
+import ch.papers.objectstorage.persistence.ClassIndex;
+import ch.papers.objectstorage.persistence.SidecarWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps all entries of a class deserialized on the heap.
+ */
+public class HeapClassCache<T extends AbstractUuidObject> implements ClassCache<T> {
+    private final UuidHashMap<T> entries = new UuidHashMap<T>();
+
+    public HeapClassCache() {
+    }
+
+    public HeapClassCache(Map<UUID, T> entries) {
+        this.putAll(entries);
+    }
+
+    @Override
+    public T get(UUID uuid) {
+        return this.entries.get(uuid);
+    }
+
+    @Override
+    public void put(UUID uuid, T entry) {
+        this.entries.put(uuid, entry);
+    }
+
+    @Override
+    public void putAll(Map<UUID, T> entries) {
+        for (Map.Entry<UUID, T> entry : entries.entrySet()) {
+            this.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(UUID uuid, T entry) {
+        return this.entries.putIfAbsent(uuid, entry) == null;
+    }
+
+    @Override
+    public boolean replace(UUID uuid, T expectedEntry, T newEntry) {
+        return this.entries.replace(uuid, expectedEntry, newEntry);
+    }
+
+    @Override
+    public boolean remove(UUID uuid) {
+        return this.entries.remove(uuid) != null;
+    }
+
+    @Override
+    public boolean remove(UUID uuid, T expectedEntry) {
+        return this.entries.remove(uuid, expectedEntry);
+    }
+
+    @Override
+    public int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this.entries.values().iterator();
+    }
+
+    @Override
+    public ClassIndex persist(ClassFile classFile, Executor serializer, SidecarWriter sidecarWriter) throws IOException {
+        final ClassFileWriter writer = new ClassFileWriter(classFile, this.entries.size(), serializer);
+        try {
+            for (Map.Entry<UUID, T> entry : this.entries.entries()) {
+                writer.writeEntry(entry.getKey(), entry.getValue());
+            }
+            return writer.publish(sidecarWriter);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public int export(OutputStream outputStream) throws IOException {
+        int exported = 0;
+        for (T entry : this.entries.values()) {
+            outputStream.write(Constants.GSON.toJson(entry).getBytes(Constants.CHARSET));
+            outputStream.write('\n');
+            exported++;
+        }
+        return exported;
+    }
+}
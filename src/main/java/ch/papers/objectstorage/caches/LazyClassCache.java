@@ -0,0 +1,297 @@
+package ch.papers.objectstorage.caches;
+
+import ch.papers.objectstorage.Constants;
+import ch.papers.objectstorage.metrics.MetricsRegistry;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.persistence.ClassFile;
+import ch.papers.objectstorage.persistence.ClassFileWriter;
+import ch.papers.objectstorage.persistence.ClassIndex;
+import ch.papers.objectstorage.persistence.RecordSource;
+import ch.papers.objectstorage.persistence.RecordStorage;
+import ch.papers.objectstorage.persistence.SidecarWriter;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Opens a class from its {@link ClassIndex} without parsing the data file. Entries are deserialized on first
+ * access and kept afterwards, unless a {@link CacheBudget} is given, which evicts them again. Entries that
+ * are not deserialized are copied verbatim on persist. The serialized entries are read from where the
+ * {@link RecordStorage} keeps them.
+ */
+public class LazyClassCache<T extends AbstractUuidObject> implements ClassCache<T> {
+    private final Class<T> clazz;
+    private final Gson gson;
+    private final RecordStorage recordStorage;
+    private final CacheBudget budget;
+    private final MetricsRegistry metricsRegistry;
+    private final UuidHashMap<CachedRecord<T>> records = new UuidHashMap<CachedRecord<T>>();
+
+    // guards the record source and the record locations, which both change when the class is persisted
+    private final ReadWriteLock recordSourceLock = new ReentrantReadWriteLock();
+    private RecordSource recordSource;
+
+    /**
+     * @param clazz           dynamic type of objects
+     * @param gson            the Gson to deserialize entries with
+     * @param recordStorage   where to keep the serialized entries once they are persisted
+     * @param budget          the budget for deserialized objects, null to keep them all
+     * @param metricsRegistry where to report the bytes read from the record storage, may be null
+     */
+    public LazyClassCache(Class<T> clazz, Gson gson, RecordStorage recordStorage, CacheBudget budget, MetricsRegistry metricsRegistry) {
+        this.clazz = clazz;
+        this.gson = gson;
+        this.recordStorage = recordStorage;
+        this.budget = budget;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public LazyClassCache(Class<T> clazz, Gson gson, RecordStorage recordStorage, CacheBudget budget, MetricsRegistry metricsRegistry, Map<UUID, T> entries) {
+        this(clazz, gson, recordStorage, budget, metricsRegistry);
+        this.putAll(entries);
+    }
+
+    /**
+     * Opens a class using its index, only the index is read.
+     *
+     * @param clazz           dynamic type of objects
+     * @param gson            the Gson to deserialize entries with
+     * @param classFile       the class file to read the entries from
+     * @param index           the index of the class file
+     * @param recordStorage   where to keep the serialized entries
+     * @param budget          the budget for deserialized objects, null to keep them all
+     * @param metricsRegistry where to report the bytes read, may be null
+     * @param <T>             generic type of objects
+     * @return the cache
+     * @throws IOException if the data file can't be opened
+     */
+    public static <T extends AbstractUuidObject> LazyClassCache<T> open(Class<T> clazz, Gson gson, ClassFile classFile, ClassIndex index, RecordStorage recordStorage, CacheBudget budget, MetricsRegistry metricsRegistry) throws IOException {
+        final LazyClassCache<T> cache = new LazyClassCache<T>(clazz, gson, recordStorage, budget, metricsRegistry);
+        cache.recordSource = recordStorage.open(classFile.getDataFile());
+        for (int i = 0; i < index.size(); i++) {
+            final CachedRecord<T> record = new CachedRecord<T>(null);
+            record.offset = index.getOffset(i);
+            record.length = index.getLength(i);
+            cache.records.put(index.getUuid(i), record);
+        }
+        return cache;
+    }
+
+    @Override
+    public T get(UUID uuid) throws IOException {
+        final CachedRecord<T> record = this.records.get(uuid);
+        if (record == null) {
+            return null;
+        }
+        if (this.budget != null && !record.referenced) {
+            record.referenced = true;
+        }
+        return this.getValue(uuid, record, true);
+    }
+
+    @Override
+    public void put(UUID uuid, T entry) {
+        this.records.put(uuid, new CachedRecord<T>(entry));
+    }
+
+    @Override
+    public void putAll(Map<UUID, T> entries) {
+        for (Map.Entry<UUID, T> entry : entries.entrySet()) {
+            this.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(UUID uuid, T entry) {
+        return this.records.putIfAbsent(uuid, new CachedRecord<T>(entry)) == null;
+    }
+
+    @Override
+    public boolean replace(UUID uuid, T expectedEntry, T newEntry) throws IOException {
+        final CachedRecord<T> record = this.records.get(uuid);
+        return record != null && this.holds(uuid, record, expectedEntry) && this.records.replace(uuid, record, new CachedRecord<T>(newEntry));
+    }
+
+    @Override
+    public boolean remove(UUID uuid) {
+        return this.records.remove(uuid) != null;
+    }
+
+    @Override
+    public boolean remove(UUID uuid, T expectedEntry) throws IOException {
+        final CachedRecord<T> record = this.records.get(uuid);
+        return record != null && this.holds(uuid, record, expectedEntry) && this.records.remove(uuid, record);
+    }
+
+    @Override
+    public int size() {
+        return this.records.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        final Iterator<Map.Entry<UUID, CachedRecord<T>>> recordIterator = this.records.entries().iterator();
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return recordIterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                final Map.Entry<UUID, CachedRecord<T>> entry = recordIterator.next();
+                try {
+                    // with a budget, scans must not push the objects that are actually in use out of memory
+                    return LazyClassCache.this.getValue(entry.getKey(), entry.getValue(), LazyClassCache.this.budget == null);
+                } catch (IOException e) {
+                    throw new JsonIOException(e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                recordIterator.remove();
+            }
+        };
+    }
+
+    @Override
+    public ClassIndex persist(ClassFile classFile, Executor serializer, SidecarWriter sidecarWriter) throws IOException {
+        final List<CachedRecord<T>> writtenRecords = new ArrayList<CachedRecord<T>>(this.records.size());
+        final ClassFileWriter writer = new ClassFileWriter(classFile, this.records.size(), serializer);
+        try {
+            this.recordSourceLock.readLock().lock();
+            try {
+                for (Map.Entry<UUID, CachedRecord<T>> entry : this.records.entries()) {
+                    final CachedRecord<T> record = entry.getValue();
+                    final T value = record.value;
+                    if (value != null) {
+                        // deserialized entries might have been modified by their users
+                        writer.writeEntry(entry.getKey(), value);
+                    } else {
+                        writer.writeEntry(entry.getKey(), this.recordSource.read(record.offset, record.length));
+                        this.recordBytesRead(record.length);
+                    }
+                    writtenRecords.add(record);
+                }
+            } finally {
+                this.recordSourceLock.readLock().unlock();
+            }
+
+            final ClassIndex index = writer.publish(sidecarWriter);
+            final RecordSource publishedRecordSource = this.recordStorage.open(classFile.getDataFile());
+            final RecordSource previousRecordSource;
+            this.recordSourceLock.writeLock().lock();
+            try {
+                previousRecordSource = this.recordSource;
+                this.recordSource = publishedRecordSource;
+                for (int i = 0; i < writtenRecords.size(); i++) {
+                    final CachedRecord<T> record = writtenRecords.get(i);
+                    record.offset = index.getOffset(i);
+                    record.length = index.getLength(i);
+                    if (this.budget != null) {
+                        this.budget.admitPersisted(record, record.length);
+                    }
+                }
+            } finally {
+                this.recordSourceLock.writeLock().unlock();
+            }
+            if (previousRecordSource != null) {
+                previousRecordSource.close();
+            }
+            return index;
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public int export(OutputStream outputStream) throws IOException {
+        int exported = 0;
+        this.recordSourceLock.readLock().lock();
+        try {
+            for (Map.Entry<UUID, CachedRecord<T>> entry : this.records.entries()) {
+                final CachedRecord<T> record = entry.getValue();
+                final T value = record.value;
+                if (value != null) {
+                    outputStream.write(Constants.GSON.toJson(value).getBytes(Constants.CHARSET));
+                } else {
+                    // serialized records never contain a line break, so they are copied without decoding
+                    outputStream.write(this.recordSource.read(record.offset, record.length));
+                    this.recordBytesRead(record.length);
+                }
+                outputStream.write('\n');
+                exported++;
+            }
+        } finally {
+            this.recordSourceLock.readLock().unlock();
+        }
+        return exported;
+    }
+
+    /**
+     * A record never changes once it has been added, so if its value has been evicted and decoded again since
+     * the expected entry was read, the copy has the same version.
+     */
+    private boolean holds(UUID uuid, CachedRecord<T> record, T expectedEntry) throws IOException {
+        final T value = record.value;
+        if (value == expectedEntry) {
+            return true;
+        }
+        final T current = value != null ? value : this.getValue(uuid, record, false);
+        return current.getVersion() == expectedEntry.getVersion();
+    }
+
+    private T getValue(UUID uuid, CachedRecord<T> record, boolean keep) throws IOException {
+        final T value = record.value;
+        if (value != null) {
+            return value;
+        }
+
+        // the lock keeps the location valid until the value is set
+        this.recordSourceLock.readLock().lock();
+        try {
+            final T decoded = this.decode(uuid, this.recordSource.openReader(record.offset, record.length));
+            this.recordBytesRead(record.length);
+            if (!keep) {
+                return decoded;
+            } else if (this.budget != null) {
+                return this.budget.admitLoaded(record, decoded, record.length);
+            }
+            // concurrent readers have to end up with the same instance
+            synchronized (record) {
+                if (record.value == null) {
+                    record.value = decoded;
+                }
+                return record.value;
+            }
+        } finally {
+            this.recordSourceLock.readLock().unlock();
+        }
+    }
+
+    private T decode(UUID uuid, Reader json) throws IOException {
+        final T decoded = this.gson.fromJson(json, this.clazz);
+        if (decoded == null || !uuid.equals(decoded.getUuid())) {
+            throw new IOException("index of " + this.clazz.getSimpleName() + " does not match its data file");
+        }
+        return decoded;
+    }
+
+    private void recordBytesRead(long bytes) {
+        if (this.metricsRegistry != null) {
+            this.metricsRegistry.recordBytesRead(this.clazz, bytes);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package ch.papers.objectstorage.caches;
+
+import ch.papers.objectstorage.filters.Filter;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the results of filter queries while their class is unchanged. Every class has a generation that is
+ * advanced after each change to it, a result is only returned as long as the generation it was computed in is
+ * still current. Changing a class is a single increment, its outdated results are dropped when they are looked
+ * up or evicted. Results are evicted least recently used first, bounded by their number and their total number
+ * of entries.
+ * <p>
+ * Queries are identified by their class and their filter, compared with {@link Object#equals(Object)}. Filters
+ * without equals only hit the cache when the same instance is passed again.
+ */
+public class QueryCache {
+    private final int maxQueries;
+    private final int maxEntries;
+
+    private final ConcurrentMap<Class<? extends AbstractUuidObject>, AtomicLong> generations = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, AtomicLong>();
+    // access ordered, so iteration starts at the least recently used result
+    private final LinkedHashMap<QueryKey, CachedResult> results = new LinkedHashMap<QueryKey, CachedResult>(16, 0.75f, true);
+    private int cachedEntries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxQueries the maximum number of cached results
+     * @param maxEntries the maximum number of entries of all cached results together
+     */
+    public QueryCache(int maxQueries, int maxEntries) {
+        this.maxQueries = maxQueries;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param clazz dynamic type of objects
+     * @return the current generation of the class, to be read before the query that is put into the cache runs
+     */
+    public long getGeneration(Class<? extends AbstractUuidObject> clazz) {
+        return this.getOrCreateGeneration(clazz).get();
+    }
+
+    /**
+     * Outdates the cached results of a class, to be called after it has been changed.
+     *
+     * @param clazz dynamic type of objects
+     */
+    public void invalidate(Class<? extends AbstractUuidObject> clazz) {
+        this.getOrCreateGeneration(clazz).incrementAndGet();
+    }
+
+    /**
+     * @param clazz  dynamic type of objects
+     * @param filter the filter of the query
+     * @param <T>    generic type of objects
+     * @return the cached result, which must not be modified, or null if there is none for the current generation
+     */
+    public <T extends AbstractUuidObject> Map<UUID, T> get(Class<T> clazz, Filter<T> filter) {
+        final long generation = this.getGeneration(clazz);
+        final QueryKey key = new QueryKey(clazz, filter);
+        synchronized (this) {
+            final CachedResult cachedResult = this.results.get(key);
+            if (cachedResult != null) {
+                if (cachedResult.generation == generation) {
+                    this.hits.incrementAndGet();
+                    return (Map<UUID, T>) cachedResult.entries;
+                }
+                this.remove(key);
+            }
+        }
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the result of a query, unless its class has changed since the query started.
+     *
+     * @param clazz      dynamic type of objects
+     * @param filter     the filter of the query
+     * @param generation the generation of the class read before the query started
+     * @param entries    the result, which must not be modified anymore
+     * @param <T>        generic type of objects
+     */
+    public <T extends AbstractUuidObject> void put(Class<T> clazz, Filter<T> filter, long generation, Map<UUID, T> entries) {
+        if (entries.size() > this.maxEntries || this.maxQueries < 1) {
+            return;
+        }
+        final QueryKey key = new QueryKey(clazz, filter);
+        synchronized (this) {
+            if (generation != this.getGeneration(clazz)) {
+                return;
+            }
+            this.remove(key);
+            this.results.put(key, new CachedResult(generation, Collections.unmodifiableMap(entries)));
+            this.cachedEntries += entries.size();
+            final Iterator<CachedResult> leastRecentlyUsed = this.results.values().iterator();
+            while (this.results.size() > this.maxQueries || this.cachedEntries > this.maxEntries) {
+                this.cachedEntries -= leastRecentlyUsed.next().entries.size();
+                leastRecentlyUsed.remove();
+            }
+        }
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public synchronized int getCachedQueries() {
+        return this.results.size();
+    }
+
+    private void remove(QueryKey key) {
+        final CachedResult removed = this.results.remove(key);
+        if (removed != null) {
+            this.cachedEntries -= removed.entries.size();
+        }
+    }
+
+    private AtomicLong getOrCreateGeneration(Class<? extends AbstractUuidObject> clazz) {
+        AtomicLong generation = this.generations.get(clazz);
+        if (generation == null) {
+            final AtomicLong newGeneration = new AtomicLong();
+            generation = this.generations.putIfAbsent(clazz, newGeneration);
+            if (generation == null) {
+                generation = newGeneration;
+            }
+        }
+        return generation;
+    }
+
+    private static final class QueryKey {
+        private final Class<?> clazz;
+        private final Filter<?> filter;
+
+        QueryKey(Class<?> clazz, Filter<?> filter) {
+            this.clazz = clazz;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            final QueryKey other = (QueryKey) o;
+            return this.clazz == other.clazz && this.filter.equals(other.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.clazz.hashCode() + this.filter.hashCode();
+        }
+    }
+
+    private static final class CachedResult {
+        private final long generation;
+        private final Map<UUID, ?> entries;
+
+        CachedResult(long generation, Map<UUID, ?> entries) {
+            this.generation = generation;
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package ch.papers.objectstorage.caches;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent hash map from UUIDs to values that stores the two halves of every UUID in a primitive array,
+ * so an entry costs no node and no UUID object. The map is split into segments using open addressing with
+ * linear probing. Adding and removing keys locks their segment, {@link #replace} is a compare-and-set on the
+ * slot of the key and readers never lock.
+ * <p>
+ * Slots are filled only once per table: a removed entry leaves a tombstone, which is dropped when the segment
+ * is rehashed into a new table. A reader that found a value in a slot therefore always sees the key that
+ * belongs to it. Rehashing marks the slots of the old table as moved, so a compare-and-set can't succeed on
+ * a table that has been replaced. Like {@link java.util.concurrent.ConcurrentHashMap}, iteration is weakly
+ * consistent and null values are not supported.
+ */
+public class UuidHashMap<V> {
+    private static final Object TOMBSTONE = new Object();
+    private static final Object MOVED = new Object();
+    private static final int MIN_SEGMENT_CAPACITY = 8;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    public UuidHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize number of entries the map should hold without rehashing
+     */
+    public UuidHashMap(int expectedSize) {
+        int segmentCount = 1;
+        while (segmentCount < 4 * Runtime.getRuntime().availableProcessors() && segmentCount < 256) {
+            segmentCount <<= 1;
+        }
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+        this.segments = new Segment[segmentCount];
+        final int segmentCapacity = tableCapacity(expectedSize / segmentCount + 1);
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    public V get(UUID uuid) {
+        return this.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long mostSignificantBits, long leastSignificantBits) {
+        final long hash = hash(mostSignificantBits, leastSignificantBits);
+        final Segment segment = this.segmentFor(hash);
+        while (true) {
+            final Table table = segment.table;
+            final int slot = table.find(mostSignificantBits, leastSignificantBits, hash);
+            if (slot < 0) {
+                return null;
+            }
+            final Object value = table.values.get(slot);
+            if (value != MOVED) {
+                // the entry may have been removed since it was found
+                return value == TOMBSTONE ? null : (V) value;
+            }
+            segment.awaitRehash();
+        }
+    }
+
+    public boolean containsKey(UUID uuid) {
+        return this.get(uuid) != null;
+    }
+
+    /**
+     * @return the previous value, null if there was none
+     */
+    public V put(UUID uuid, V value) {
+        return this.put(uuid, value, false);
+    }
+
+    /**
+     * @return the current value, null if the value has been added
+     */
+    public V putIfAbsent(UUID uuid, V value) {
+        return this.put(uuid, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(UUID uuid, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        final long mostSignificantBits = uuid.getMostSignificantBits();
+        final long leastSignificantBits = uuid.getLeastSignificantBits();
+        final long hash = hash(mostSignificantBits, leastSignificantBits);
+        final Segment segment = this.segmentFor(hash);
+        synchronized (segment) {
+            final int slot = segment.table.find(mostSignificantBits, leastSignificantBits, hash);
+            if (slot >= 0) {
+                if (onlyIfAbsent) {
+                    return (V) segment.table.values.get(slot);
+                }
+                return (V) segment.table.values.getAndSet(slot, value);
+            }
+            if (segment.usedSlots + 1 > segment.table.threshold) {
+                segment.rehash(segment.size + 1);
+            }
+            segment.table.insert(mostSignificantBits, leastSignificantBits, hash, value);
+            segment.usedSlots++;
+            segment.size++;
+            return null;
+        }
+    }
+
+    /**
+     * @return the removed value, null if there was none
+     */
+    public V remove(UUID uuid) {
+        return this.removeIfSame(uuid, null);
+    }
+
+    /**
+     * Removes an entry if it still has the expected value.
+     *
+     * @return true if the entry has been removed
+     */
+    public boolean remove(UUID uuid, V expectedValue) {
+        return expectedValue != null && this.removeIfSame(uuid, expectedValue) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V removeIfSame(UUID uuid, V expectedValue) {
+        final long mostSignificantBits = uuid.getMostSignificantBits();
+        final long leastSignificantBits = uuid.getLeastSignificantBits();
+        final long hash = hash(mostSignificantBits, leastSignificantBits);
+        final Segment segment = this.segmentFor(hash);
+        synchronized (segment) {
+            final int slot = segment.table.find(mostSignificantBits, leastSignificantBits, hash);
+            if (slot < 0) {
+                return null;
+            }
+            final V previous;
+            if (expectedValue == null) {
+                previous = (V) segment.table.values.getAndSet(slot, TOMBSTONE);
+            } else if (segment.table.values.compareAndSet(slot, expectedValue, TOMBSTONE)) {
+                previous = expectedValue;
+            } else {
+                return null;
+            }
+            segment.size--;
+            return previous;
+        }
+    }
+
+    /**
+     * Replaces the value of an entry if it still is the expected value (compared by identity), without locking.
+     *
+     * @return true if the value has been replaced
+     */
+    public boolean replace(UUID uuid, V expectedValue, V newValue) {
+        if (newValue == null) {
+            throw new NullPointerException();
+        }
+        final long mostSignificantBits = uuid.getMostSignificantBits();
+        final long leastSignificantBits = uuid.getLeastSignificantBits();
+        final long hash = hash(mostSignificantBits, leastSignificantBits);
+        final Segment segment = this.segmentFor(hash);
+        while (true) {
+            final Table table = segment.table;
+            final int slot = table.find(mostSignificantBits, leastSignificantBits, hash);
+            if (slot < 0) {
+                return false;
+            }
+            final Object value = table.values.get(slot);
+            if (value == MOVED) {
+                segment.awaitRehash();
+            } else if (value != expectedValue) {
+                return false;
+            } else if (table.values.compareAndSet(slot, expectedValue, newValue)) {
+                return true;
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    public void clear() {
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                for (int slot = 0; slot < segment.table.capacity(); slot++) {
+                    segment.table.moveOut(slot);
+                }
+                segment.table = new Table(MIN_SEGMENT_CAPACITY);
+                segment.usedSlots = 0;
+                segment.size = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the values of the map, weakly consistent
+     */
+    public Iterable<V> values() {
+        return new Iterable<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new SlotIterator<V>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected V current(Table table, int slot, Object value) {
+                        return (V) value;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return the entries of the map, weakly consistent
+     */
+    public Iterable<Map.Entry<UUID, V>> entries() {
+        return new Iterable<Map.Entry<UUID, V>>() {
+            @Override
+            public Iterator<Map.Entry<UUID, V>> iterator() {
+                return new SlotIterator<Map.Entry<UUID, V>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected Map.Entry<UUID, V> current(Table table, int slot, Object value) {
+                        return new AbstractMap.SimpleImmutableEntry<UUID, V>(table.uuid(slot), (V) value);
+                    }
+                };
+            }
+        };
+    }
+
+    private Segment segmentFor(long hash) {
+        return this.segments[(int) (hash >>> this.segmentShift)];
+    }
+
+    private static long hash(long mostSignificantBits, long leastSignificantBits) {
+        // uuids don't have to be random, so the bits are mixed (murmur3 finalizer)
+        long hash = mostSignificantBits ^ (leastSignificantBits * 0x9e3779b97f4a7c15L);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int tableCapacity(int entries) {
+        int capacity = MIN_SEGMENT_CAPACITY;
+        while (capacity * 3 / 4 < entries) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static final class Segment {
+        volatile Table table;
+        volatile int size;
+        // live entries and tombstones, guarded by the segment
+        int usedSlots;
+
+        Segment(int capacity) {
+            this.table = new Table(capacity);
+        }
+
+        void rehash(int entries) {
+            final Table oldTable = this.table;
+            // leaves room for a third more entries, so a table full of tombstones is not rehashed again right away
+            final Table newTable = new Table(tableCapacity(entries + entries / 3));
+            for (int slot = 0; slot < oldTable.capacity(); slot++) {
+                final Object value = oldTable.moveOut(slot);
+                if (value != null) {
+                    final long mostSignificantBits = oldTable.keys.get(2 * slot);
+                    final long leastSignificantBits = oldTable.keys.get(2 * slot + 1);
+                    newTable.insert(mostSignificantBits, leastSignificantBits, hash(mostSignificantBits, leastSignificantBits), value);
+                }
+            }
+            // readers that meet a moved slot of the old table wait for this and look again
+            this.table = newTable;
+            this.usedSlots = this.size;
+        }
+
+        /**
+         * Waits until a rehash of this segment that is in progress has published its new table.
+         */
+        void awaitRehash() {
+            synchronized (this) {
+                // the rehash holds the lock until its new table is published
+            }
+        }
+    }
+
+    private static final class Table {
+        // the most and least significant bits of the key in slot i are at 2i and 2i+1
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<Object> values;
+        final int mask;
+        final int threshold;
+
+        Table(int capacity) {
+            this.keys = new AtomicLongArray(2 * capacity);
+            this.values = new AtomicReferenceArray<Object>(capacity);
+            this.mask = capacity - 1;
+            this.threshold = capacity * 3 / 4;
+        }
+
+        int capacity() {
+            return this.mask + 1;
+        }
+
+        UUID uuid(int slot) {
+            return new UUID(this.keys.get(2 * slot), this.keys.get(2 * slot + 1));
+        }
+
+        int find(long mostSignificantBits, long leastSignificantBits, long hash) {
+            int slot = (int) hash & this.mask;
+            for (int probes = 0; probes <= this.mask; probes++) {
+                final Object value = this.values.get(slot);
+                if (value == null) {
+                    return -1;
+                }
+                // the key of a slot is written before its value and never changes afterwards
+                if (value != TOMBSTONE && this.keys.get(2 * slot) == mostSignificantBits && this.keys.get(2 * slot + 1) == leastSignificantBits) {
+                    return slot;
+                }
+                slot = (slot + 1) & this.mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Marks a live slot as moved, so that compare-and-sets on it fail from now on.
+         *
+         * @return the value of the slot, null if it was empty or removed
+         */
+        Object moveOut(int slot) {
+            while (true) {
+                final Object value = this.values.get(slot);
+                if (value == null || value == TOMBSTONE || value == MOVED) {
+                    return null;
+                }
+                if (this.values.compareAndSet(slot, value, MOVED)) {
+                    return value;
+                }
+            }
+        }
+
+        void insert(long mostSignificantBits, long leastSignificantBits, long hash, Object value) {
+            int slot = (int) hash & this.mask;
+            while (this.values.get(slot) != null) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.keys.set(2 * slot, mostSignificantBits);
+            this.keys.set(2 * slot + 1, leastSignificantBits);
+            this.values.set(slot, value);
+        }
+    }
+
+    private abstract class SlotIterator<E> implements Iterator<E> {
+        private int segmentIndex = -1;
+        private Table table;
+        private int slot;
+        private Table nextTable;
+        private int nextSlot;
+        private Object nextValue;
+        private UUID lastReturned;
+
+        SlotIterator() {
+            this.advance();
+        }
+
+        protected abstract E current(Table table, int slot, Object value);
+
+        private void advance() {
+            this.nextValue = null;
+            while (true) {
+                if (this.table != null) {
+                    while (++this.slot < this.table.capacity()) {
+                        Object value = this.table.values.get(this.slot);
+                        if (value == MOVED) {
+                            // the segment has been rehashed since the iteration entered it
+                            value = UuidHashMap.this.get(this.table.keys.get(2 * this.slot), this.table.keys.get(2 * this.slot + 1));
+                        }
+                        if (value != null && value != TOMBSTONE) {
+                            this.nextTable = this.table;
+                            this.nextSlot = this.slot;
+                            this.nextValue = value;
+                            return;
+                        }
+                    }
+                }
+                if (++this.segmentIndex >= UuidHashMap.this.segments.length) {
+                    return;
+                }
+                this.table = UuidHashMap.this.segments[this.segmentIndex].table;
+                this.slot = -1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.nextValue != null;
+        }
+
+        @Override
+        public E next() {
+            if (this.nextValue == null) {
+                throw new NoSuchElementException();
+            }
+            final E current = this.current(this.nextTable, this.nextSlot, this.nextValue);
+            this.lastReturned = this.nextTable.uuid(this.nextSlot);
+            this.advance();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (this.lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            UuidHashMap.this.remove(this.lastReturned);
+            this.lastReturned = null;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package ch.papers.objectstorage.expiry;
+
+import ch.papers.objectstorage.caches.UuidHashMap;
+import ch.papers.objectstorage.persistence.TempFiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The expiration times of the entries of one class. Writers record a deadline without locking, the reaper
+ * thread moves new deadlines into a {@link TimerWheel} and collects the due ones on every tick, so finding
+ * expired entries never scans the class.
+ * <p>
+ * A deadline that has been changed or cleared leaves its old timer in the wheel, the timer is recognised as
+ * stale when it fires because the deadline it was scheduled for is no longer the current one.
+ */
+public class ClassExpiry {
+    private static final int MAGIC = 0x554f5354; // "UOST"
+    private static final int VERSION = 1;
+
+    private final long resolutionMillis;
+    // the current deadline of every entry with an expiration time, compared by identity
+    private final UuidHashMap<Long> deadlines = new UuidHashMap<Long>();
+    private final ConcurrentLinkedQueue<Timer> scheduled = new ConcurrentLinkedQueue<Timer>();
+    private final TimerWheel<Timer> wheel;
+
+    /**
+     * @param resolutionMillis length of a tick of the reaper
+     */
+    public ClassExpiry(long resolutionMillis) {
+        this.resolutionMillis = resolutionMillis;
+        this.wheel = new TimerWheel<Timer>(System.currentTimeMillis() / resolutionMillis);
+    }
+
+    /**
+     * Sets the expiration time of an entry, replacing the previous one.
+     *
+     * @param uuid           the identifier of the object
+     * @param deadlineMillis when the entry expires, in milliseconds since the epoch
+     */
+    public void expireAt(UUID uuid, long deadlineMillis) {
+        // a new instance per call, so a timer can tell whether its deadline is still the current one
+        final Long deadline = new Long(deadlineMillis);
+        this.deadlines.put(uuid, deadline);
+        this.scheduled.offer(new Timer(uuid, deadline));
+    }
+
+    public void clear(UUID uuid) {
+        this.deadlines.remove(uuid);
+    }
+
+    /**
+     * @param uuid the identifier of the object
+     * @return the expiration time of the entry in milliseconds since the epoch, 0 if it doesn't expire
+     */
+    public long getDeadline(UUID uuid) {
+        final Long deadline = this.deadlines.get(uuid);
+        return deadline == null ? 0 : deadline;
+    }
+
+    public boolean isEmpty() {
+        return this.deadlines.isEmpty();
+    }
+
+    /**
+     * Collects the timers that are due. Must only be called by the reaper thread.
+     *
+     * @param nowMillis the current time in milliseconds since the epoch
+     * @return the due timers whose deadline is still current
+     */
+    public List<Timer> advance(long nowMillis) {
+        Timer timer;
+        while ((timer = this.scheduled.poll()) != null) {
+            // rounded up, so no entry expires before its deadline
+            this.wheel.schedule(timer, (timer.deadline + this.resolutionMillis - 1) / this.resolutionMillis);
+        }
+        final List<Timer> due = new ArrayList<Timer>();
+        this.wheel.advance(nowMillis / this.resolutionMillis, expired -> {
+            if (this.deadlines.get(expired.uuid) == expired.deadline) {
+                due.add(expired);
+            }
+        });
+        return due;
+    }
+
+    /**
+     * Clears the deadline of a due timer, unless it has been changed in the meantime.
+     *
+     * @param timer a timer returned by {@link #advance(long)}
+     * @return true if the entry should be removed
+     */
+    public boolean claim(Timer timer) {
+        return this.deadlines.remove(timer.uuid, timer.deadline);
+    }
+
+    /**
+     * Writes the expiration times to a sidecar file next to the class file.
+     *
+     * @param expiryFile the file to write, replaced atomically
+     * @throws IOException if writing fails
+     */
+    public void write(File expiryFile) throws IOException {
+        final File tempFile = TempFiles.of(expiryFile);
+        final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            final List<Map.Entry<UUID, Long>> entries = new ArrayList<Map.Entry<UUID, Long>>();
+            for (Map.Entry<UUID, Long> entry : this.deadlines.entries()) {
+                entries.add(entry);
+            }
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(entries.size());
+            for (Map.Entry<UUID, Long> entry : entries) {
+                outputStream.writeLong(entry.getKey().getMostSignificantBits());
+                outputStream.writeLong(entry.getKey().getLeastSignificantBits());
+                outputStream.writeLong(entry.getValue());
+            }
+        } finally {
+            outputStream.close();
+        }
+        TempFiles.rename(tempFile, expiryFile);
+    }
+
+    /**
+     * Reads the expiration times written by {@link #write(File)}.
+     *
+     * @param expiryFile       the sidecar file
+     * @param resolutionMillis length of a tick of the reaper
+     * @return the expiration times, null if the file doesn't exist or is not valid
+     * @throws IOException if the file can't be read
+     */
+    public static ClassExpiry read(File expiryFile, long resolutionMillis) throws IOException {
+        if (!expiryFile.isFile()) {
+            return null;
+        }
+        final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(expiryFile)));
+        try {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                return null;
+            }
+            final ClassExpiry expiry = new ClassExpiry(resolutionMillis);
+            final int size = inputStream.readInt();
+            for (int i = 0; i < size; i++) {
+                expiry.expireAt(new UUID(inputStream.readLong(), inputStream.readLong()), inputStream.readLong());
+            }
+            return expiry;
+        } catch (EOFException e) {
+            return null;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * A deadline that has been handed to the wheel.
+     */
+    public static final class Timer {
+        private final UUID uuid;
+        private final Long deadline;
+
+        Timer(UUID uuid, Long deadline) {
+            this.uuid = uuid;
+            this.deadline = deadline;
+        }
+
+        public UUID getUuid() {
+            return this.uuid;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ch.papers.objectstorage.expiry;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timer wheel (Varghese and Lauck): timers due within the next 64 ticks sit in the slots of the
+ * first level, later ones in the slots of coarser levels, and move down a level whenever the finer level has
+ * turned once. Scheduling and expiring a timer take constant time, however many timers there are. Timers that
+ * are further away than the top level reaches are parked in it and rescheduled when it turns.
+ * <p>
+ * Not thread safe, the caller has to confine the wheel to one thread.
+ */
+public class TimerWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final Node<T>[][] levels;
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param currentTick the tick the wheel starts at, timers due at or before it expire on the next tick
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long currentTick) {
+        this.levels = (Node<T>[][]) new Node<?>[LEVELS][SLOTS];
+        this.currentTick = currentTick;
+    }
+
+    public void schedule(T value, long deadlineTick) {
+        this.insert(new Node<T>(value, deadlineTick), this.currentTick + 1);
+        this.size++;
+    }
+
+    /**
+     * Turns the wheel up to a tick and hands out all timers that are due by then, in the order of their ticks.
+     *
+     * @param tick    the current tick
+     * @param expired receives the values of the due timers
+     */
+    public void advance(long tick, Consumer<T> expired) {
+        while (this.currentTick < tick) {
+            if (this.size == 0) {
+                this.currentTick = tick;
+                return;
+            }
+            this.currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((this.currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    this.cascade(level);
+                }
+            }
+            final int slot = (int) (this.currentTick & SLOT_MASK);
+            Node<T> node = this.levels[0][slot];
+            this.levels[0][slot] = null;
+            while (node != null) {
+                this.size--;
+                expired.accept(node.value);
+                node = node.next;
+            }
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public long getCurrentTick() {
+        return this.currentTick;
+    }
+
+    private void cascade(int level) {
+        final int slot = (int) ((this.currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        Node<T> node = this.levels[level][slot];
+        this.levels[level][slot] = null;
+        while (node != null) {
+            final Node<T> next = node.next;
+            this.insert(node, this.currentTick);
+            node = next;
+        }
+    }
+
+    private void insert(Node<T> node, long earliestTick) {
+        // overdue timers expire as soon as possible, far away ones are parked in the top level
+        final long tick = Math.min(Math.max(node.deadlineTick, earliestTick), this.currentTick + MAX_DELAY);
+        final long delay = tick - this.currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        final int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        node.next = this.levels[level][slot];
+        this.levels[level][slot] = node;
+    }
+
+    private static final class Node<T> {
+        final T value;
+        final long deadlineTick;
+        Node<T> next;
+
+        Node(T value, long deadlineTick) {
+            this.value = value;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -12,4 +12,14 @@ public class MatchAllFilter implements Filter  {
     public boolean matches(AbstractUuidObject object) {
         return true;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MatchAllFilter;
+    }
+
+    @Override
+    public int hashCode() {
+        return MatchAllFilter.class.hashCode();
+    }
 }
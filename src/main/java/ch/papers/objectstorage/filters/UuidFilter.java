@@ -21,4 +21,14 @@ public class UuidFilter implements Filter {
     public boolean matches(AbstractUuidObject object) {
         return object.getUuid().equals(this.matchingUUID);
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof UuidFilter && this.matchingUUID.equals(((UuidFilter) o).matchingUUID);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.matchingUUID.hashCode();
+    }
 }
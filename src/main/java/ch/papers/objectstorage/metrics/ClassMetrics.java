@@ -0,0 +1,59 @@
+package ch.papers.objectstorage.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The measurements of one class, collected by the {@link DefaultMetricsRegistry}.
+ */
+public class ClassMetrics {
+    private final LatencyHistogram[] latencies = new LatencyHistogram[StorageOperation.values().length];
+    private final AtomicLongArray errors = new AtomicLongArray(StorageOperation.values().length);
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    ClassMetrics() {
+        for (int i = 0; i < this.latencies.length; i++) {
+            this.latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    void recordOperation(StorageOperation operation, long durationNanos, boolean success) {
+        this.latencies[operation.ordinal()].record(durationNanos);
+        if (!success) {
+            this.errors.incrementAndGet(operation.ordinal());
+        }
+    }
+
+    void recordBytesRead(long bytes) {
+        this.bytesRead.addAndGet(bytes);
+    }
+
+    void recordBytesWritten(long bytes) {
+        this.bytesWritten.addAndGet(bytes);
+    }
+
+    /**
+     * @param operation the operation
+     * @return the durations of all completed operations, including failed ones
+     */
+    public LatencyHistogram getLatencies(StorageOperation operation) {
+        return this.latencies[operation.ordinal()];
+    }
+
+    public long getCount(StorageOperation operation) {
+        return this.latencies[operation.ordinal()].getCount();
+    }
+
+    public long getErrors(StorageOperation operation) {
+        return this.errors.get(operation.ordinal());
+    }
+
+    public long getBytesRead() {
+        return this.bytesRead.get();
+    }
+
+    public long getBytesWritten() {
+        return this.bytesWritten.get();
+    }
+}
@@ -0,0 +1,55 @@
+package ch.papers.objectstorage.metrics;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps counters and latency histograms per class in memory. Recording only updates atomic counters, so it
+ * can stay enabled in production.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+    private final ConcurrentMap<Class<? extends AbstractUuidObject>, ClassMetrics> classMetrics = new ConcurrentHashMap<Class<? extends AbstractUuidObject>, ClassMetrics>();
+
+    @Override
+    public void recordOperation(Class<? extends AbstractUuidObject> clazz, StorageOperation operation, long durationNanos, boolean success) {
+        this.getOrCreateClassMetrics(clazz).recordOperation(operation, durationNanos, success);
+    }
+
+    @Override
+    public void recordBytesRead(Class<? extends AbstractUuidObject> clazz, long bytes) {
+        this.getOrCreateClassMetrics(clazz).recordBytesRead(bytes);
+    }
+
+    @Override
+    public void recordBytesWritten(Class<? extends AbstractUuidObject> clazz, long bytes) {
+        this.getOrCreateClassMetrics(clazz).recordBytesWritten(bytes);
+    }
+
+    /**
+     * @param clazz dynamic type of objects
+     * @return the measurements of the class, null if nothing has been recorded for it
+     */
+    public ClassMetrics getClassMetrics(Class<? extends AbstractUuidObject> clazz) {
+        return this.classMetrics.get(clazz);
+    }
+
+    public Map<Class<? extends AbstractUuidObject>, ClassMetrics> getAllClassMetrics() {
+        return Collections.unmodifiableMap(this.classMetrics);
+    }
+
+    private ClassMetrics getOrCreateClassMetrics(Class<? extends AbstractUuidObject> clazz) {
+        ClassMetrics metrics = this.classMetrics.get(clazz);
+        if (metrics == null) {
+            final ClassMetrics newMetrics = new ClassMetrics();
+            metrics = this.classMetrics.putIfAbsent(clazz, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+}
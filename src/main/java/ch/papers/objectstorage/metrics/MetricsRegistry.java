@@ -0,0 +1,21 @@
+package ch.papers.objectstorage.metrics;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+/**
+ * Receives the measurements of a storage. Implementations are called from the storage threads and must be
+ * thread safe and fast, e.g. to forward the measurements to an existing metrics library.
+ */
+public interface MetricsRegistry {
+    /**
+     * @param clazz         dynamic type of objects
+     * @param operation     the completed operation
+     * @param durationNanos how long the operation took
+     * @param success       false if the operation failed
+     */
+    void recordOperation(Class<? extends AbstractUuidObject> clazz, StorageOperation operation, long durationNanos, boolean success);
+
+    void recordBytesRead(Class<? extends AbstractUuidObject> clazz, long bytes);
+
+    void recordBytesWritten(Class<? extends AbstractUuidObject> clazz, long bytes);
+}
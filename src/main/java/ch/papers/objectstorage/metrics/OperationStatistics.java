@@ -0,0 +1,53 @@
+package ch.papers.objectstorage.metrics;
+
+/**
+ * A snapshot of the measurements of one operation of one class, as exposed over JMX.
+ */
+public class OperationStatistics {
+    private final long count;
+    private final long errors;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    public OperationStatistics(ClassMetrics metrics, StorageOperation operation) {
+        final LatencyHistogram latencies = metrics.getLatencies(operation);
+        this.count = latencies.getCount();
+        this.errors = metrics.getErrors(operation);
+        this.meanNanos = latencies.getMeanNanos();
+        this.p50Nanos = latencies.getValueAtPercentile(50);
+        this.p99Nanos = latencies.getValueAtPercentile(99);
+        this.p999Nanos = latencies.getValueAtPercentile(99.9);
+        this.maxNanos = latencies.getMaxNanos();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+}
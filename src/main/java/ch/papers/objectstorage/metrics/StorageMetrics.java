@@ -0,0 +1,150 @@
+package ch.papers.objectstorage.metrics;
+
+import ch.papers.objectstorage.UuidObjectStorage;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exposes the metrics of a storage as an MXBean.
+ */
+public class StorageMetrics implements StorageMetricsMXBean {
+    private final UuidObjectStorage storage;
+
+    public StorageMetrics(UuidObjectStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Registers the metrics of a storage with the platform MBean server, replacing the bean of a storage that
+     * was initialised with the same root path before.
+     *
+     * @param storage  the storage to expose
+     * @param rootPath the root path of the storage, part of the object name
+     * @return the name of the registered bean
+     * @throws JMException if the bean can't be registered
+     */
+    public static ObjectName register(UuidObjectStorage storage, File rootPath) throws JMException {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = objectNameFor(rootPath);
+        if (mBeanServer.isRegistered(objectName)) {
+            mBeanServer.unregisterMBean(objectName);
+        }
+        mBeanServer.registerMBean(new StorageMetrics(storage), objectName);
+        return objectName;
+    }
+
+    public static ObjectName objectNameFor(File rootPath) throws JMException {
+        return new ObjectName("ch.papers.objectstorage:type=UuidObjectStorage,root=" + ObjectName.quote(rootPath.getAbsolutePath()));
+    }
+
+    @Override
+    public int getPendingOperations() {
+        return this.storage.getPendingOperations();
+    }
+
+    @Override
+    public int getQueuedOperations() {
+        return this.storage.getQueuedOperations();
+    }
+
+    @Override
+    public long getOverflowedOperations() {
+        return this.storage.getOverflowedOperations();
+    }
+
+    @Override
+    public Map<String, Integer> getCachedEntries() {
+        final Map<String, Integer> cachedEntries = new TreeMap<String, Integer>();
+        for (Map.Entry<Class<? extends AbstractUuidObject>, Integer> entry : this.storage.getCachedEntryCounts().entrySet()) {
+            cachedEntries.put(entry.getKey().getSimpleName(), entry.getValue());
+        }
+        return cachedEntries;
+    }
+
+    @Override
+    public Map<String, Long> getBytesRead() {
+        final Map<String, Long> bytesRead = new TreeMap<String, Long>();
+        for (Map.Entry<Class<? extends AbstractUuidObject>, ClassMetrics> entry : this.getAllClassMetrics().entrySet()) {
+            bytesRead.put(entry.getKey().getSimpleName(), entry.getValue().getBytesRead());
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public Map<String, Long> getBytesWritten() {
+        final Map<String, Long> bytesWritten = new TreeMap<String, Long>();
+        for (Map.Entry<Class<? extends AbstractUuidObject>, ClassMetrics> entry : this.getAllClassMetrics().entrySet()) {
+            bytesWritten.put(entry.getKey().getSimpleName(), entry.getValue().getBytesWritten());
+        }
+        return bytesWritten;
+    }
+
+    @Override
+    public long getQueryCacheHits() {
+        return this.storage.getQueryCacheHits();
+    }
+
+    @Override
+    public long getQueryCacheMisses() {
+        return this.storage.getQueryCacheMisses();
+    }
+
+    @Override
+    public double getQueryCacheHitRate() {
+        final long hits = this.storage.getQueryCacheHits();
+        final long queries = hits + this.storage.getQueryCacheMisses();
+        return queries == 0 ? 0 : (double) hits / queries;
+    }
+
+    @Override
+    public int getCachedQueries() {
+        return this.storage.getCachedQueries();
+    }
+
+    @Override
+    public Map<String, Long> getReplicationLag() {
+        return bySimpleName(this.storage.getReplicationLag());
+    }
+
+    @Override
+    public Map<String, Long> getReplicationDelay() {
+        return bySimpleName(this.storage.getReplicationDelayMillis());
+    }
+
+    @Override
+    public Map<String, OperationStatistics> getOperations() {
+        final Map<String, OperationStatistics> operations = new TreeMap<String, OperationStatistics>();
+        for (Map.Entry<Class<? extends AbstractUuidObject>, ClassMetrics> entry : this.getAllClassMetrics().entrySet()) {
+            for (StorageOperation operation : StorageOperation.values()) {
+                if (entry.getValue().getCount(operation) > 0) {
+                    operations.put(entry.getKey().getSimpleName() + "." + operation, new OperationStatistics(entry.getValue(), operation));
+                }
+            }
+        }
+        return operations;
+    }
+
+    private static Map<String, Long> bySimpleName(Map<Class<? extends AbstractUuidObject>, Long> values) {
+        final Map<String, Long> bySimpleName = new TreeMap<String, Long>();
+        for (Map.Entry<Class<? extends AbstractUuidObject>, Long> entry : values.entrySet()) {
+            bySimpleName.put(entry.getKey().getSimpleName(), entry.getValue());
+        }
+        return bySimpleName;
+    }
+
+    private Map<Class<? extends AbstractUuidObject>, ClassMetrics> getAllClassMetrics() {
+        final MetricsRegistry metricsRegistry = this.storage.getMetricsRegistry();
+        if (metricsRegistry instanceof DefaultMetricsRegistry) {
+            return ((DefaultMetricsRegistry) metricsRegistry).getAllClassMetrics();
+        }
+        return Collections.emptyMap();
+    }
+}
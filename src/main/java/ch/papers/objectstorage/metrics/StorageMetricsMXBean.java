@@ -0,0 +1,47 @@
+package ch.papers.objectstorage.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a storage, registered by {@link StorageMetrics#register}. Classes are keyed by their
+ * simple name, operations by "SimpleName.OPERATION".
+ */
+public interface StorageMetricsMXBean {
+    int getPendingOperations();
+
+    int getQueuedOperations();
+
+    long getOverflowedOperations();
+
+    Map<String, Integer> getCachedEntries();
+
+    Map<String, Long> getBytesRead();
+
+    Map<String, Long> getBytesWritten();
+
+    long getQueryCacheHits();
+
+    long getQueryCacheMisses();
+
+    /**
+     * @return the share of filter queries answered from the query cache, 0 if it is disabled or unused
+     */
+    double getQueryCacheHitRate();
+
+    int getCachedQueries();
+
+    /**
+     * @return the changes a follower was behind its leader at its last poll, empty unless the storage follows one
+     */
+    Map<String, Long> getReplicationLag();
+
+    /**
+     * @return the delay of the last change a follower applied in milliseconds
+     */
+    Map<String, Long> getReplicationDelay();
+
+    /**
+     * @return the operation statistics, empty unless the storage uses a {@link DefaultMetricsRegistry}
+     */
+    Map<String, OperationStatistics> getOperations();
+}
@@ -0,0 +1,17 @@
+package ch.papers.objectstorage.metrics;
+
+/**
+ * The storage operations that are measured per class.
+ */
+public enum StorageOperation {
+    ADD,
+    UPDATE,
+    DELETE,
+    EXPIRE,
+    FOLLOW,
+    GET,
+    COMMIT,
+    LOAD,
+    EXPORT,
+    IMPORT
+}
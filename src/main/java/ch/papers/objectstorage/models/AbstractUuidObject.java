@@ -1,5 +1,7 @@
 package ch.papers.objectstorage.models;
 
+import com.google.gson.annotations.SerializedName;
+
 import java.util.UUID;
 
 
@@ -10,8 +12,31 @@ import java.util.UUID;
  */
 public abstract class AbstractUuidObject implements UuidObject{
     protected UUID uuid = UUID.randomUUID();
+    // named apart from the fields of subclasses, which often have a version of their own
+    @SerializedName("_version")
+    private long version;
 
     public UUID getUuid() {
         return uuid;
     }
+
+    /**
+     * The version of an object is increased by the storage every time it is added or replaced, objects that
+     * have never been stored have version 0. See
+     * {@link ch.papers.objectstorage.UuidObjectStorage#replaceEntry(AbstractUuidObject, long, Class)}.
+     *
+     * @return the version of this object
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Set by the storage when the object is written, there is no need to call this.
+     *
+     * @param version the new version of this object
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,12 @@
+package ch.papers.objectstorage.mutators;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+/**
+ * Changes an entry during {@link ch.papers.objectstorage.UuidObjectStorage#updateEntries}. A mutator may modify
+ * the entry it gets and return it, or return a replacement with the same uuid. It is called again if another
+ * writer changes the entry at the same time, and from several threads at once for large classes.
+ */
+public interface Mutator<T extends AbstractUuidObject> {
+    public T mutate(T object);
+}
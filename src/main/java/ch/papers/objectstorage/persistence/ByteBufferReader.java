@@ -0,0 +1,84 @@
+package ch.papers.objectstorage.persistence;
+
+import ch.papers.objectstorage.Constants;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes characters directly from (typically memory mapped) byte buffers into the caller's array, without
+ * the intermediate byte buffer of an {@link java.io.InputStreamReader}.
+ */
+public class ByteBufferReader extends Reader {
+    private final ByteBuffer[] buffers;
+    private int currentBuffer;
+    private final CharsetDecoder decoder = Constants.CHARSET.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean flushed;
+    private int pendingChar = -1;
+
+    /**
+     * @param buffers the bytes to read, from their position to their limit, one after the other. Characters
+     *                must not span two buffers. The positions of the buffers are advanced.
+     */
+    public ByteBufferReader(ByteBuffer... buffers) {
+        this.buffers = buffers;
+        this.flushed = buffers.length == 0;
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (this.pendingChar >= 0) {
+            chars[offset] = (char) this.pendingChar;
+            this.pendingChar = -1;
+            return 1;
+        }
+
+        final CharBuffer target = CharBuffer.wrap(chars, offset, length);
+        while (target.position() == offset && !this.flushed) {
+            final ByteBuffer buffer = this.buffers[this.currentBuffer];
+            final CoderResult result = buffer.hasRemaining() ? this.decoder.decode(buffer, target, true) : this.flush(target);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isOverflow() && target.position() == offset) {
+                // a surrogate pair doesn't fit into a single char, hand it out one by one
+                final CharBuffer surrogatePair = CharBuffer.allocate(2);
+                this.decoder.decode(buffer, surrogatePair, true);
+                surrogatePair.flip();
+                chars[offset] = surrogatePair.get();
+                this.pendingChar = surrogatePair.hasRemaining() ? surrogatePair.get() : -1;
+                return 1;
+            }
+        }
+        final int read = target.position() - offset;
+        return read == 0 ? -1 : read;
+    }
+
+    private CoderResult flush(CharBuffer target) {
+        final CoderResult result = this.decoder.flush(target);
+        if (result.isUnderflow()) {
+            if (this.currentBuffer + 1 < this.buffers.length) {
+                this.decoder.reset();
+                this.currentBuffer++;
+            } else {
+                this.flushed = true;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release, the buffers are owned by the caller
+    }
+}
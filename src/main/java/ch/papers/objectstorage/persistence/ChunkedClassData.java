@@ -0,0 +1,78 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * A class data file held in byte buffers of equal size (but the last one). Values may span two chunks.
+ */
+abstract class ChunkedClassData implements RecordSource {
+    private final ByteBuffer[] chunks;
+    private final int chunkSize;
+
+    ChunkedClassData(ByteBuffer[] chunks, int chunkSize) {
+        this.chunks = chunks;
+        this.chunkSize = chunkSize;
+    }
+
+    static int chunkCount(long size, int chunkSize) {
+        return (int) ((size + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Returns a value without copying it, if it doesn't span two chunks.
+     *
+     * @param offset position of the value
+     * @param length length of the value in bytes
+     * @return a buffer over the value, or null if the value spans two chunks
+     */
+    public ByteBuffer slice(long offset, int length) {
+        final ByteBuffer chunk = this.chunks[(int) (offset / this.chunkSize)];
+        final int position = (int) (offset % this.chunkSize);
+        if (position + length > chunk.limit()) {
+            return null;
+        }
+        // duplicates are used because buffer positions are not thread safe
+        final ByteBuffer slice = chunk.duplicate();
+        slice.position(position);
+        slice.limit(position + length);
+        return slice;
+    }
+
+    /**
+     * Returns the whole file if it fits into one chunk.
+     *
+     * @return a buffer over the whole file, or null if it is split into several chunks
+     */
+    public ByteBuffer asByteBuffer() {
+        if (this.chunks.length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        return this.chunks.length == 1 ? this.chunks[0].duplicate() : null;
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            final long position = offset + copied;
+            if (position >= (long) this.chunks.length * this.chunkSize) {
+                throw new IOException("offset " + offset + " is out of bounds");
+            }
+            final ByteBuffer chunk = this.chunks[(int) (position / this.chunkSize)].duplicate();
+            chunk.position((int) (position % this.chunkSize));
+            final int count = Math.min(length - copied, chunk.remaining());
+            chunk.get(bytes, copied, count);
+            copied += count;
+        }
+        return bytes;
+    }
+
+    @Override
+    public Reader openReader(long offset, int length) throws IOException {
+        final ByteBuffer slice = this.slice(offset, length);
+        return new ByteBufferReader(slice != null ? slice : ByteBuffer.wrap(this.read(offset, length)));
+    }
+}
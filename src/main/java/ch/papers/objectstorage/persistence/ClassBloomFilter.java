@@ -0,0 +1,163 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Bloom filter of the UUIDs in a class data file, answering whether an entry might be in the class without
+ * loading it. Like the {@link ClassIndex}, the filter remembers the {@link DataFileStamp} of the data file it
+ * was written for and is never used for another one.
+ */
+public class ClassBloomFilter {
+    private static final int MAGIC = 0x554f5342; // "UOSB"
+    private static final int VERSION = 2;
+    private static final int MAX_HASHES = 16;
+
+    private final long[] words;
+    private final long bits;
+    private final int hashes;
+
+    private ClassBloomFilter(long[] words, int hashes) {
+        this.words = words;
+        this.bits = (long) words.length * Long.SIZE;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Creates the filter of all entries in an index.
+     *
+     * @param index             the index of the published data file
+     * @param falsePositiveRate the probability that {@link #mightContain(UUID)} is true for a missing entry,
+     *                          between 0 and 1 exclusive
+     * @return the filter
+     */
+    public static ClassBloomFilter create(ClassIndex index, double falsePositiveRate) {
+        final int entries = Math.max(index.size(), 1);
+        final double optimalBits = -entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        final int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (long) Math.ceil(optimalBits / Long.SIZE)));
+        final int hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round((double) words * Long.SIZE / entries * Math.log(2))));
+        final ClassBloomFilter filter = new ClassBloomFilter(new long[words], hashes);
+        for (int i = 0; i < index.size(); i++) {
+            filter.add(index.getUuid(i));
+        }
+        return filter;
+    }
+
+    /**
+     * @param uuid the identifier of an entry
+     * @return false if the entry is certainly not in the data file
+     */
+    public boolean mightContain(UUID uuid) {
+        final long first = firstHash(uuid);
+        final long second = secondHash(uuid);
+        for (int i = 0; i < this.hashes; i++) {
+            final long bit = Math.floorMod(first + i * second, this.bits);
+            if ((this.words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(UUID uuid) {
+        final long first = firstHash(uuid);
+        final long second = secondHash(uuid);
+        for (int i = 0; i < this.hashes; i++) {
+            final long bit = Math.floorMod(first + i * second, this.bits);
+            this.words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * The bits of an entry are derived from two hashes, the second one odd so all of them differ.
+     */
+    private static long firstHash(UUID uuid) {
+        return mix(uuid.getMostSignificantBits() ^ mix(uuid.getLeastSignificantBits()));
+    }
+
+    private static long secondHash(UUID uuid) {
+        return mix(uuid.getLeastSignificantBits() + 0x9e3779b97f4a7c15L) | 1;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, spreading all bits of a UUID half, as not every UUID is random.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * Writes the filter of a data file, replacing the previous one.
+     *
+     * @param filterFile the sidecar file
+     * @param dataFile   the data file the filter was created for, the temporary one while it is published
+     * @throws IOException if writing fails
+     */
+    public void write(File filterFile, File dataFile) throws IOException {
+        final File tempFile = TempFiles.of(filterFile);
+        final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024));
+        try {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            DataFileStamp.of(dataFile).write(outputStream);
+            outputStream.writeInt(this.hashes);
+            outputStream.writeInt(this.words.length);
+            for (long word : this.words) {
+                outputStream.writeLong(word);
+            }
+        } finally {
+            outputStream.close();
+        }
+        TempFiles.rename(tempFile, filterFile);
+    }
+
+    /**
+     * Reads the filter of a class file.
+     *
+     * @param classFile the class file the filter belongs to
+     * @return the filter, or null if there is no filter or it is outdated
+     * @throws IOException if the filter can't be read
+     */
+    public static ClassBloomFilter read(ClassFile classFile) throws IOException {
+        final File filterFile = classFile.getBloomFilterFile();
+        final File dataFile = classFile.getDataFile();
+        if (!filterFile.isFile() || !dataFile.isFile()) {
+            return null;
+        }
+
+        final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(filterFile), 64 * 1024));
+        try {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                return null;
+            }
+            if (!DataFileStamp.read(inputStream).equals(DataFileStamp.of(dataFile))) {
+                return null;
+            }
+
+            final int hashes = inputStream.readInt();
+            final int length = inputStream.readInt();
+            if (hashes < 1 || length < 1) {
+                return null;
+            }
+            final long[] words = new long[length];
+            for (int i = 0; i < length; i++) {
+                words[i] = inputStream.readLong();
+            }
+            return new ClassBloomFilter(words, hashes);
+        } catch (EOFException e) {
+            return null;
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the values of a published class data file from disk.
+ */
+public class ClassDataFile implements RecordSource {
+    private final RandomAccessFile file;
+
+    public ClassDataFile(File dataFile) throws IOException {
+        this.file = new RandomAccessFile(dataFile, "r");
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        synchronized (this.file) {
+            this.file.seek(offset);
+            this.file.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    @Override
+    public Reader openReader(long offset, int length) throws IOException {
+        return new ByteBufferReader(ByteBuffer.wrap(this.read(offset, length)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.file.close();
+    }
+}
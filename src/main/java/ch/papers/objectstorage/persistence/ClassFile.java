@@ -0,0 +1,103 @@
+package ch.papers.objectstorage.persistence;
+
+import ch.papers.objectstorage.Constants;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The files belonging to one class in the storage root: the JSON data file, its sidecar index, the
+ * expiration times of its entries and its change feed.
+ */
+public class ClassFile {
+    private final File dataFile;
+    private final File indexFile;
+    private final File expiryFile;
+    private final File changeLogFile;
+    private final File sequenceFile;
+    private final File textIndexFile;
+    private final File bloomFilterFile;
+    private final File versionFloorFile;
+
+    public ClassFile(File rootPath, Class<? extends AbstractUuidObject> clazz) {
+        this.dataFile = new File(rootPath, clazz.getSimpleName() + Constants.DATA_FILE_EXTENSION);
+        this.indexFile = new File(rootPath, clazz.getSimpleName() + Constants.INDEX_FILE_EXTENSION);
+        this.expiryFile = new File(rootPath, clazz.getSimpleName() + Constants.EXPIRY_FILE_EXTENSION);
+        this.changeLogFile = new File(rootPath, clazz.getSimpleName() + Constants.CHANGE_LOG_FILE_EXTENSION);
+        this.sequenceFile = new File(rootPath, clazz.getSimpleName() + Constants.SEQUENCE_FILE_EXTENSION);
+        this.textIndexFile = new File(rootPath, clazz.getSimpleName() + Constants.TEXT_INDEX_FILE_EXTENSION);
+        this.bloomFilterFile = new File(rootPath, clazz.getSimpleName() + Constants.BLOOM_FILTER_FILE_EXTENSION);
+        this.versionFloorFile = new File(rootPath, clazz.getSimpleName() + Constants.VERSION_FLOOR_FILE_EXTENSION);
+    }
+
+    public File getDataFile() {
+        return dataFile;
+    }
+
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    public File getExpiryFile() {
+        return expiryFile;
+    }
+
+    public File getChangeLogFile() {
+        return changeLogFile;
+    }
+
+    public File getSequenceFile() {
+        return sequenceFile;
+    }
+
+    public File getTextIndexFile() {
+        return textIndexFile;
+    }
+
+    public File getBloomFilterFile() {
+        return bloomFilterFile;
+    }
+
+    public File getVersionFloorFile() {
+        return versionFloorFile;
+    }
+
+    public File getTempDataFile() {
+        return TempFiles.of(this.dataFile);
+    }
+
+    public File getTempIndexFile() {
+        return TempFiles.of(this.indexFile);
+    }
+
+    public boolean exists() {
+        return this.dataFile.isFile();
+    }
+
+    /**
+     * Parses the whole data file.
+     *
+     * @param gson         the Gson to deserialize the entries with
+     * @param mapType      the type of the persisted map
+     * @param memoryMapped true to parse the file from a memory mapping instead of reading it as a stream
+     * @param <T>          generic type of objects
+     * @return all persisted entries, null if the file is empty
+     * @throws IOException if the file can't be read
+     */
+    public <T extends AbstractUuidObject> Map<UUID, T> readAll(Gson gson, Type mapType, boolean memoryMapped) throws IOException {
+        final Reader fileReader = memoryMapped ? MappedClassData.openReader(this.dataFile) : new InputStreamReader(new FileInputStream(this.dataFile), Constants.CHARSET);
+        try {
+            return gson.fromJson(fileReader, mapType);
+        } finally {
+            fileReader.close();
+        }
+    }
+}
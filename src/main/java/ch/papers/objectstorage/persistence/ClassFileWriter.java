@@ -0,0 +1,321 @@
+package ch.papers.objectstorage.persistence;
+
+import ch.papers.objectstorage.Constants;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Writes the JSON map of a class to a temporary file, keeping track of where every value ends up, and
+ * atomically publishes it together with its {@link ClassIndex}. The output is the same JSON map Gson
+ * produces for a {@code Map<UUID, T>}, so files can still be read without the index.
+ * <p>
+ * Entries are collected in chunks. Given an executor, chunks are serialized on it in parallel, otherwise on the
+ * calling thread. Every serialized chunk is written at its position in the file without waiting for the write to
+ * complete, while the following chunks are still being serialized. The number of chunks in memory is bounded, so
+ * a large class is not buffered as a whole.
+ */
+public class ClassFileWriter implements Closeable {
+    public static final int CHUNK_ENTRIES = 1024;
+
+    private static final byte[] MAP_START = {'{'};
+    private static final byte[] MAP_END = {'}'};
+    private static final byte ENTRY_SEPARATOR = ',';
+    private static final byte UUID_QUOTE = '"';
+    private static final byte UUID_SUFFIX = ':';
+
+    private final ClassFile classFile;
+    private final ClassIndex index;
+    private final Executor serializer;
+    private final int chunkEntries;
+    private final int maxPendingChunks;
+    private AsynchronousFileChannel channel;
+    private long position;
+    private int entries;
+    private Chunk chunk;
+    private final Deque<Future<Chunk>> serializingChunks = new ArrayDeque<Future<Chunk>>();
+    private final Deque<PendingWrite> pendingWrites = new ArrayDeque<PendingWrite>();
+
+    public ClassFileWriter(ClassFile classFile, int expectedEntries, Executor serializer) throws IOException {
+        this(classFile, expectedEntries, serializer, CHUNK_ENTRIES);
+    }
+
+    /**
+     * @param classFile       the class file to replace
+     * @param expectedEntries the number of entries that will be written
+     * @param serializer      the executor to serialize chunks on, null to serialize them on the calling thread
+     * @param chunkEntries    the number of entries serialized together
+     * @throws IOException if the temporary file can't be created
+     */
+    public ClassFileWriter(ClassFile classFile, int expectedEntries, Executor serializer, int chunkEntries) throws IOException {
+        this.classFile = classFile;
+        this.index = new ClassIndex(expectedEntries);
+        this.serializer = serializer;
+        this.chunkEntries = chunkEntries;
+        // enough for every core to work on a chunk while as many wait to be written
+        this.maxPendingChunks = 2 * Runtime.getRuntime().availableProcessors();
+        this.channel = AsynchronousFileChannel.open(classFile.getTempDataFile().toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.write(ByteBuffer.wrap(MAP_START));
+    }
+
+    /**
+     * Adds an entry, which is serialized later and must not be modified until the file is published.
+     *
+     * @param uuid  the identifier of the entry
+     * @param entry the entry
+     * @throws IOException if writing fails
+     */
+    public void writeEntry(UUID uuid, Object entry) throws IOException {
+        this.add(uuid, entry);
+    }
+
+    /**
+     * Adds an already serialized entry.
+     *
+     * @param uuid the identifier of the entry
+     * @param json the serialized entry
+     * @throws IOException if writing fails
+     */
+    public void writeEntry(UUID uuid, byte[] json) throws IOException {
+        this.add(uuid, json);
+    }
+
+    /**
+     * Finishes the data file and replaces the current class file and index with the written ones.
+     *
+     * @return the index of the published file, in the order the entries have been written
+     * @throws IOException if publishing fails
+     */
+    public ClassIndex publish() throws IOException {
+        return this.publish(null);
+    }
+
+    /**
+     * Finishes the data file and replaces the current class file, index and other sidecar files with the written
+     * ones.
+     *
+     * @param sidecarWriter writes the other sidecar files before the data file is published, null if there are
+     *                      none
+     * @return the index of the published file, in the order the entries have been written
+     * @throws IOException if publishing fails
+     */
+    public ClassIndex publish(SidecarWriter sidecarWriter) throws IOException {
+        // the committing thread would only wait otherwise
+        this.flushChunk(true);
+        while (!this.serializingChunks.isEmpty()) {
+            this.writeNextChunk();
+        }
+        this.write(ByteBuffer.wrap(MAP_END));
+        while (!this.pendingWrites.isEmpty()) {
+            this.pendingWrites.removeFirst().await();
+        }
+        this.channel.close();
+        this.channel = null;
+
+        final File tempDataFile = this.classFile.getTempDataFile();
+        final File tempIndexFile = this.classFile.getTempIndexFile();
+        this.index.write(tempIndexFile, tempDataFile);
+        // the sidecars are published first, they are ignored until the data file they were written for shows up
+        TempFiles.rename(tempIndexFile, this.classFile.getIndexFile());
+        if (sidecarWriter != null) {
+            sidecarWriter.write(this.index, tempDataFile);
+        }
+        TempFiles.rename(tempDataFile, this.classFile.getDataFile());
+        return this.index;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            for (Future<Chunk> serializingChunk : this.serializingChunks) {
+                serializingChunk.cancel(false);
+            }
+            this.serializingChunks.clear();
+            this.pendingWrites.clear();
+            this.channel.close();
+            this.channel = null;
+            this.classFile.getTempDataFile().delete();
+        }
+    }
+
+    private void add(UUID uuid, Object entry) throws IOException {
+        if (this.chunk == null) {
+            this.chunk = new Chunk(this.entries, Math.min(this.chunkEntries, 64));
+        }
+        this.chunk.add(uuid, entry);
+        this.entries++;
+        if (this.chunk.size == this.chunkEntries) {
+            this.flushChunk(this.serializer == null);
+        }
+    }
+
+    private void flushChunk(boolean onCallingThread) throws IOException {
+        if (this.chunk == null) {
+            return;
+        }
+        final FutureTask<Chunk> serializedChunk = new FutureTask<Chunk>(this.chunk);
+        this.chunk = null;
+        if (onCallingThread) {
+            serializedChunk.run();
+        } else {
+            this.serializer.execute(serializedChunk);
+        }
+        this.serializingChunks.addLast(serializedChunk);
+        // serialized chunks are written right away, the others once too many are pending
+        while (!this.serializingChunks.isEmpty() && (this.serializingChunks.peekFirst().isDone() || this.serializingChunks.size() >= this.maxPendingChunks)) {
+            this.writeNextChunk();
+        }
+    }
+
+    /**
+     * Waits for the oldest chunk to be serialized, places it after the previous one and starts writing it.
+     */
+    private void writeNextChunk() throws IOException {
+        final Chunk serializedChunk = await(this.serializingChunks.removeFirst());
+        for (int i = 0; i < serializedChunk.size; i++) {
+            this.index.add(serializedChunk.uuids[i], this.position + serializedChunk.offsets[i], serializedChunk.lengths[i]);
+        }
+        this.write(ByteBuffer.wrap(serializedChunk.bytes, 0, serializedChunk.length));
+        while (this.pendingWrites.size() > this.maxPendingChunks) {
+            this.pendingWrites.removeFirst().await();
+        }
+    }
+
+    private void write(ByteBuffer buffer) {
+        final long position = this.position;
+        // taken before the write starts consuming the buffer
+        this.position += buffer.remaining();
+        this.pendingWrites.addLast(new PendingWrite(this.channel, buffer, position));
+    }
+
+    private static <V> V await(Future<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while writing a class file");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Consecutive entries, serialized into one buffer as they appear in the map. The offsets of their values are
+     * relative to the start of the buffer until the chunk is placed in the file.
+     */
+    private static final class Chunk implements Callable<Chunk> {
+        private final int firstEntry;
+        private UUID[] uuids;
+        private Object[] values;
+        private int size;
+        private int[] offsets;
+        private int[] lengths;
+        private byte[] bytes;
+        private int length;
+
+        Chunk(int firstEntry, int capacity) {
+            this.firstEntry = firstEntry;
+            this.uuids = new UUID[capacity];
+            this.values = new Object[capacity];
+        }
+
+        void add(UUID uuid, Object value) {
+            if (this.size == this.uuids.length) {
+                this.uuids = Arrays.copyOf(this.uuids, this.size * 2);
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.uuids[this.size] = uuid;
+            this.values[this.size] = value;
+            this.size++;
+        }
+
+        @Override
+        public Chunk call() {
+            this.offsets = new int[this.size];
+            this.lengths = new int[this.size];
+            this.bytes = new byte[64 * this.size];
+            for (int i = 0; i < this.size; i++) {
+                final Object value = this.values[i];
+                final byte[] json = value instanceof byte[] ? (byte[]) value : Constants.GSON.toJson(value).getBytes(Constants.CHARSET);
+                // released early, a serialized chunk may wait for a while before it is written
+                this.values[i] = null;
+                this.ensureCapacity(json.length + 40);
+                if (this.firstEntry + i > 0) {
+                    this.bytes[this.length++] = ENTRY_SEPARATOR;
+                }
+                this.bytes[this.length++] = UUID_QUOTE;
+                this.appendAscii(this.uuids[i].toString());
+                this.bytes[this.length++] = UUID_QUOTE;
+                this.bytes[this.length++] = UUID_SUFFIX;
+                this.offsets[i] = this.length;
+                this.lengths[i] = json.length;
+                System.arraycopy(json, 0, this.bytes, this.length, json.length);
+                this.length += json.length;
+            }
+            this.values = null;
+            return this;
+        }
+
+        private void appendAscii(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                this.bytes[this.length++] = (byte) value.charAt(i);
+            }
+        }
+
+        private void ensureCapacity(int additionalBytes) {
+            if (this.length + additionalBytes > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.length + additionalBytes));
+            }
+        }
+    }
+
+    /**
+     * A positional write that may complete partially, the rest is written when it is awaited.
+     */
+    private static final class PendingWrite {
+        private final AsynchronousFileChannel channel;
+        private final ByteBuffer buffer;
+        private long position;
+        private Future<Integer> written;
+
+        PendingWrite(AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.position = position;
+            this.written = channel.write(buffer, position);
+        }
+
+        void await() throws IOException {
+            while (true) {
+                this.position += ClassFileWriter.await(this.written);
+                if (!this.buffer.hasRemaining()) {
+                    return;
+                }
+                this.written = this.channel.write(this.buffer, this.position);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Sidecar index of a class data file, mapping every UUID to the byte offset and length of its JSON value.
+ * The index remembers the {@link DataFileStamp} of the data file it was written for, so an index that doesn't
+ * belong to the current data file is never used.
+ */
+public class ClassIndex {
+    private static final int MAGIC = 0x554f5349; // "UOSI"
+    private static final int VERSION = 2;
+
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private long[] offsets;
+    private int[] lengths;
+    private int size;
+
+    ClassIndex(int capacity) {
+        capacity = Math.max(capacity, 16);
+        this.mostSignificantBits = new long[capacity];
+        this.leastSignificantBits = new long[capacity];
+        this.offsets = new long[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    void add(UUID uuid, long offset, int length) {
+        if (this.size == this.offsets.length) {
+            final int capacity = this.size * 2;
+            this.mostSignificantBits = Arrays.copyOf(this.mostSignificantBits, capacity);
+            this.leastSignificantBits = Arrays.copyOf(this.leastSignificantBits, capacity);
+            this.offsets = Arrays.copyOf(this.offsets, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+        }
+        this.mostSignificantBits[this.size] = uuid.getMostSignificantBits();
+        this.leastSignificantBits[this.size] = uuid.getLeastSignificantBits();
+        this.offsets[this.size] = offset;
+        this.lengths[this.size] = length;
+        this.size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public UUID getUuid(int position) {
+        return new UUID(this.mostSignificantBits[position], this.leastSignificantBits[position]);
+    }
+
+    public long getOffset(int position) {
+        return this.offsets[position];
+    }
+
+    public int getLength(int position) {
+        return this.lengths[position];
+    }
+
+    void write(File indexFile, File dataFile) throws IOException {
+        final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            DataFileStamp.of(dataFile).write(outputStream);
+            outputStream.writeInt(this.size);
+            for (int i = 0; i < this.size; i++) {
+                outputStream.writeLong(this.mostSignificantBits[i]);
+                outputStream.writeLong(this.leastSignificantBits[i]);
+                outputStream.writeLong(this.offsets[i]);
+                outputStream.writeInt(this.lengths[i]);
+            }
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Reads the index of a class file.
+     *
+     * @param classFile the class file the index belongs to
+     * @return the index, or null if there is no index or it is outdated
+     * @throws IOException if the index can't be read
+     */
+    public static ClassIndex read(ClassFile classFile) throws IOException {
+        final File indexFile = classFile.getIndexFile();
+        final File dataFile = classFile.getDataFile();
+        if (!indexFile.isFile() || !dataFile.isFile()) {
+            return null;
+        }
+
+        final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                return null;
+            }
+            if (!DataFileStamp.read(inputStream).equals(DataFileStamp.of(dataFile))) {
+                return null;
+            }
+
+            final int size = inputStream.readInt();
+            final ClassIndex index = new ClassIndex(size);
+            for (int i = 0; i < size; i++) {
+                index.mostSignificantBits[i] = inputStream.readLong();
+                index.leastSignificantBits[i] = inputStream.readLong();
+                index.offsets[i] = inputStream.readLong();
+                index.lengths[i] = inputStream.readInt();
+            }
+            index.size = size;
+            return index;
+        } catch (EOFException e) {
+            return null;
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Identifies the data file a sidecar file was written for. Length and modification time may be the same for
+ * two commits within a second, so the stamp includes the file key too: sidecars are written for the temporary
+ * data file and published before it, while the data file they replace still exists and has another key.
+ * Platforms without file keys fall back to length and modification time.
+ */
+public final class DataFileStamp {
+    private final long length;
+    private final long lastModified;
+    private final String fileKey;
+
+    private DataFileStamp(long length, long lastModified, String fileKey) {
+        this.length = length;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * @param dataFile an existing data file
+     * @return the stamp of the file
+     * @throws IOException if the attributes of the file can't be read
+     */
+    public static DataFileStamp of(File dataFile) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(dataFile.toPath(), BasicFileAttributes.class);
+        return new DataFileStamp(attributes.size(), attributes.lastModifiedTime().toMillis(), String.valueOf(attributes.fileKey()));
+    }
+
+    public static DataFileStamp read(DataInput input) throws IOException {
+        return new DataFileStamp(input.readLong(), input.readLong(), input.readUTF());
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeLong(this.length);
+        output.writeLong(this.lastModified);
+        output.writeUTF(this.fileKey);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DataFileStamp)) {
+            return false;
+        }
+        final DataFileStamp other = (DataFileStamp) o;
+        return this.length == other.length && this.lastModified == other.lastModified && this.fileKey.equals(other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.lastModified);
+    }
+}
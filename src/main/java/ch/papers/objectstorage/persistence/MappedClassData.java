@@ -0,0 +1,75 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class data file mapped into memory. The operating system's page cache caches the file, values are read
+ * from the mapping without system calls or copies into the heap.
+ */
+public class MappedClassData extends ChunkedClassData {
+    private static final int CHUNK_SIZE = 1 << 30;
+
+    private MappedClassData(ByteBuffer[] chunks) {
+        super(chunks, CHUNK_SIZE);
+    }
+
+    public static MappedClassData map(File dataFile) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+        try {
+            // mappings stay valid after the channel is closed
+            final FileChannel channel = file.getChannel();
+            final long size = channel.size();
+            final ByteBuffer[] chunks = new ByteBuffer[chunkCount(size, CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long position = (long) i * CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+            }
+            return new MappedClassData(chunks);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Maps a whole data file for reading it from start to end.
+     *
+     * @param dataFile the file to read
+     * @return a reader decoding the mapped file
+     * @throws IOException if the file can't be mapped
+     */
+    public static Reader openReader(File dataFile) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final long size = channel.size();
+            final List<ByteBuffer> windows = new ArrayList<ByteBuffer>();
+            long position = 0;
+            while (position < size) {
+                // the window overlaps the next one by a few bytes, to see where the next character starts
+                final ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE + 4L, size - position));
+                int end = Math.min(CHUNK_SIZE, window.limit());
+                while (end < window.limit() && end > 0 && (window.get(end) & 0xc0) == 0x80) {
+                    end--;
+                }
+                window.limit(end);
+                windows.add(window);
+                position += end;
+            }
+            return new ByteBufferReader(windows.toArray(new ByteBuffer[windows.size()]));
+        } finally {
+            file.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        // mappings are released once they are garbage collected
+    }
+}
@@ -0,0 +1,46 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A copy of a class data file in direct (off-heap) memory, so the serialized values don't count against the
+ * heap and aren't traced by the garbage collector.
+ */
+public class OffHeapClassData extends ChunkedClassData {
+    private static final int CHUNK_SIZE = 1 << 26;
+
+    private OffHeapClassData(ByteBuffer[] chunks) {
+        super(chunks, CHUNK_SIZE);
+    }
+
+    public static OffHeapClassData load(File dataFile) throws IOException {
+        final FileInputStream fileInputStream = new FileInputStream(dataFile);
+        try {
+            final FileChannel channel = fileInputStream.getChannel();
+            final long size = channel.size();
+            final ByteBuffer[] chunks = new ByteBuffer[chunkCount(size, CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                final ByteBuffer chunk = ByteBuffer.allocateDirect((int) Math.min(CHUNK_SIZE, size - (long) i * CHUNK_SIZE));
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk) < 0) {
+                        throw new IOException("unexpected end of " + dataFile);
+                    }
+                }
+                chunk.flip();
+                chunks[i] = chunk;
+            }
+            return new OffHeapClassData(chunks);
+        } finally {
+            fileInputStream.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        // direct buffers are released once they are garbage collected
+    }
+}
@@ -0,0 +1,32 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Random read access to the serialized values of a published class data file, addressed by the offsets
+ * stored in its {@link ClassIndex}.
+ */
+public interface RecordSource extends Closeable {
+
+    /**
+     * Reads a serialized value.
+     *
+     * @param offset position of the value, as stored in the {@link ClassIndex}
+     * @param length length of the value in bytes
+     * @return the serialized value
+     * @throws IOException if the value can't be read
+     */
+    public byte[] read(long offset, int length) throws IOException;
+
+    /**
+     * Opens a reader over a serialized value.
+     *
+     * @param offset position of the value, as stored in the {@link ClassIndex}
+     * @param length length of the value in bytes
+     * @return a reader returning the value's characters
+     * @throws IOException if the value can't be read
+     */
+    public Reader openReader(long offset, int length) throws IOException;
+}
@@ -0,0 +1,40 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Where lazily loaded classes keep the serialized values of their persisted entries.
+ */
+public enum RecordStorage {
+    /**
+     * Values are read from the class file on disk when needed.
+     */
+    FILE {
+        @Override
+        public RecordSource open(File dataFile) throws IOException {
+            return new ClassDataFile(dataFile);
+        }
+    },
+    /**
+     * The class file is copied to off-heap memory, values are read from there when needed.
+     */
+    OFF_HEAP {
+        @Override
+        public RecordSource open(File dataFile) throws IOException {
+            return OffHeapClassData.load(dataFile);
+        }
+    },
+    /**
+     * The class file is mapped into memory, values are read from the mapping when needed. The operating
+     * system decides which parts of the file are kept in memory.
+     */
+    MEMORY_MAPPED {
+        @Override
+        public RecordSource open(File dataFile) throws IOException {
+            return MappedClassData.map(dataFile);
+        }
+    };
+
+    public abstract RecordSource open(File dataFile) throws IOException;
+}
@@ -0,0 +1,17 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes sidecar files stamped with a {@link DataFileStamp} while a class file is published. It is called once
+ * the temporary data file is complete, and the sidecars it publishes are ignored until the data file follows.
+ */
+public interface SidecarWriter {
+    /**
+     * @param index    the index of the new data file
+     * @param dataFile the temporary data file, to stamp the sidecars with
+     * @throws IOException if writing fails, the previous data file is kept in that case
+     */
+    public void write(ClassIndex index, File dataFile) throws IOException;
+}
@@ -0,0 +1,360 @@
+package ch.papers.objectstorage.persistence;
+
+import ch.papers.objectstorage.Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A point-in-time copy of the committed files of a storage. Class files are never modified once they are
+ * published, a commit replaces them with new files, so a snapshot consists of hard links to the current
+ * files. Where the target doesn't support hard links, the files are opened while commits are held back and
+ * copied afterwards. A copied data file is a new file, so the sidecars stamped with it are copied with the
+ * {@link DataFileStamp} of the copy.
+ * <p>
+ * Every snapshot has a manifest describing the files it was taken from. An incremental snapshot compares the
+ * current files with the manifest of the previous snapshot and takes the files that haven't been replaced
+ * since from there, so only the changed files have to be copied.
+ */
+public class Snapshot {
+    public static final String MANIFEST_FILE_NAME = "snapshot.manifest";
+    private static final String[] STAMPED_FILE_EXTENSIONS = {Constants.INDEX_FILE_EXTENSION, Constants.TEXT_INDEX_FILE_EXTENSION,
+            Constants.BLOOM_FILTER_FILE_EXTENSION};
+
+    private final List<FileState> files = new ArrayList<FileState>();
+    private transient List<PendingCopy> pendingCopies;
+    private transient int linkedFiles;
+    private transient int copiedFiles;
+    private transient int reusedFiles;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Links or opens the current files of a storage. Commits must be held back until this returns.
+     *
+     * @param rootPath the root path of the storage
+     * @param target   an empty or missing directory for the snapshot
+     * @param previous the previous snapshot to take unchanged files from, null for a full snapshot
+     * @return the snapshot, to be completed with {@link #complete(File)} once commits may continue
+     * @throws IOException if the target can't be prepared or a file can't be linked or opened
+     */
+    public static Snapshot take(File rootPath, File target, File previous) throws IOException {
+        return take(rootPath, target, previous, true);
+    }
+
+    /**
+     * @param linkFiles false to copy all files, as if the target didn't support hard links
+     */
+    static Snapshot take(File rootPath, File target, File previous, boolean linkFiles) throws IOException {
+        final String[] existingFiles = target.list();
+        if (existingFiles != null && existingFiles.length > 0) {
+            throw new IOException("snapshot target '" + target + "' is not empty");
+        }
+        if (!target.isDirectory() && !target.mkdirs()) {
+            throw new IOException("could not create snapshot target '" + target + "'");
+        }
+        final Map<String, FileState> previousFiles = previous == null ? Collections.<String, FileState>emptyMap() : read(previous).byName();
+
+        final Snapshot snapshot = new Snapshot();
+        snapshot.pendingCopies = new ArrayList<PendingCopy>();
+        final File[] files = rootPath.listFiles();
+        if (files == null) {
+            throw new IOException("could not list '" + rootPath + "'");
+        }
+        // the source of every file is chosen first, a sidecar is only restamped if it comes with its data file
+        final Map<String, File> sources = new LinkedHashMap<String, File>();
+        for (File file : files) {
+            if (!isCommittedFile(file.getName())) {
+                continue;
+            }
+            final FileState state = FileState.of(file);
+            final FileState previousState = previousFiles.get(state.name);
+            if (state.equals(previousState)) {
+                sources.put(state.name, new File(previous, state.name));
+                snapshot.reusedFiles++;
+            } else {
+                sources.put(state.name, file);
+            }
+            snapshot.files.add(state);
+        }
+        try {
+            for (Map.Entry<String, File> source : sources.entrySet()) {
+                final File targetFile = new File(target, source.getKey());
+                if (linkFiles && link(source.getValue(), targetFile)) {
+                    if (source.getValue().getParentFile().equals(rootPath)) {
+                        snapshot.linkedFiles++;
+                    }
+                    continue;
+                }
+                // opened now, so a commit can replace the file before it is copied
+                final PendingCopy pendingCopy = new PendingCopy(new FileInputStream(source.getValue()).getChannel(), source.getValue().lastModified(), targetFile);
+                final String dataFileName = getDataFileName(source.getKey());
+                final File dataFileSource = dataFileName == null ? null : sources.get(dataFileName);
+                if (dataFileSource != null && dataFileSource.getParentFile().equals(source.getValue().getParentFile())) {
+                    pendingCopy.restamp(DataFileStamp.of(dataFileSource), new File(target, dataFileName));
+                }
+                snapshot.pendingCopies.add(pendingCopy);
+            }
+        } catch (IOException | RuntimeException e) {
+            snapshot.closePendingCopies();
+            throw e;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Copies the files that couldn't be linked and writes the manifest, which marks the snapshot as complete.
+     *
+     * @param target the directory of the snapshot
+     * @return this snapshot
+     * @throws IOException if copying fails
+     */
+    public Snapshot complete(File target) throws IOException {
+        try {
+            // data files first, the sidecars copied after them are stamped with the copies
+            for (PendingCopy pendingCopy : this.pendingCopies) {
+                if (pendingCopy.targetDataFile == null) {
+                    pendingCopy.copy();
+                    this.copiedFiles++;
+                }
+            }
+            for (PendingCopy pendingCopy : this.pendingCopies) {
+                if (pendingCopy.targetDataFile != null) {
+                    pendingCopy.copy();
+                    this.copiedFiles++;
+                }
+            }
+        } finally {
+            this.closePendingCopies();
+        }
+        final File manifestFile = new File(target, MANIFEST_FILE_NAME);
+        final File tempFile = TempFiles.of(manifestFile);
+        final OutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            outputStream.write(Constants.GSON.toJson(this).getBytes(Constants.CHARSET));
+        } finally {
+            outputStream.close();
+        }
+        TempFiles.rename(tempFile, manifestFile);
+        return this;
+    }
+
+    /**
+     * Reads the manifest of a snapshot.
+     *
+     * @param snapshot the directory of the snapshot
+     * @return the snapshot
+     * @throws IOException if the snapshot has no manifest, e.g. because it was not completed
+     */
+    public static Snapshot read(File snapshot) throws IOException {
+        final File manifestFile = new File(snapshot, MANIFEST_FILE_NAME);
+        if (!manifestFile.isFile()) {
+            throw new IOException("'" + snapshot + "' is not a complete snapshot");
+        }
+        final Reader reader = new InputStreamReader(new FileInputStream(manifestFile), Constants.CHARSET);
+        try {
+            return Constants.GSON.fromJson(reader, Snapshot.class);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the names of the files in the snapshot
+     */
+    public List<String> getFileNames() {
+        final List<String> fileNames = new ArrayList<String>(this.files.size());
+        for (FileState file : this.files) {
+            fileNames.add(file.name);
+        }
+        return fileNames;
+    }
+
+    /**
+     * @return the number of files that have been linked to the files of the storage
+     */
+    public int getLinkedFiles() {
+        return this.linkedFiles;
+    }
+
+    /**
+     * @return the number of files that had to be copied
+     */
+    public int getCopiedFiles() {
+        return this.copiedFiles;
+    }
+
+    /**
+     * @return the number of files taken from the previous snapshot
+     */
+    public int getReusedFiles() {
+        return this.reusedFiles;
+    }
+
+    /**
+     * The files a commit publishes by renaming them, the change log is appended to and is left out.
+     */
+    private static boolean isCommittedFile(String name) {
+        return name.endsWith(Constants.DATA_FILE_EXTENSION) || name.endsWith(Constants.INDEX_FILE_EXTENSION)
+                || name.endsWith(Constants.EXPIRY_FILE_EXTENSION) || name.endsWith(Constants.SEQUENCE_FILE_EXTENSION)
+                || name.endsWith(Constants.TEXT_INDEX_FILE_EXTENSION) || name.endsWith(Constants.BLOOM_FILTER_FILE_EXTENSION)
+                || name.endsWith(Constants.VERSION_FLOOR_FILE_EXTENSION);
+    }
+
+    private static boolean link(File source, File target) {
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the name of the data file a stamped sidecar belongs to, null if the file is not a stamped sidecar
+     */
+    private static String getDataFileName(String name) {
+        for (String extension : STAMPED_FILE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return name.substring(0, name.length() - extension.length()) + Constants.DATA_FILE_EXTENSION;
+            }
+        }
+        return null;
+    }
+
+    private void closePendingCopies() throws IOException {
+        for (PendingCopy pendingCopy : this.pendingCopies) {
+            pendingCopy.source.close();
+        }
+    }
+
+    private Map<String, FileState> byName() {
+        final Map<String, FileState> byName = new HashMap<String, FileState>();
+        for (FileState file : this.files) {
+            byName.put(file.name, file);
+        }
+        return byName;
+    }
+
+    /**
+     * Identifies a published file: a commit never writes to it again, so as long as a file with that name
+     * has the same identity, size and modification time, it has the same content.
+     */
+    private static final class FileState {
+        private final String name;
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+
+        private FileState(String name, long size, long lastModified, String fileKey) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        static FileState of(File file) throws IOException {
+            final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return new FileState(file.getName(), attributes.size(), attributes.lastModifiedTime().toMillis(), String.valueOf(attributes.fileKey()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileState)) {
+                return false;
+            }
+            final FileState other = (FileState) o;
+            return this.name.equals(other.name) && this.size == other.size && this.lastModified == other.lastModified && this.fileKey.equals(other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.name.hashCode();
+        }
+    }
+
+    private static final class PendingCopy {
+        private final FileChannel source;
+        private final long lastModified;
+        private final File target;
+        private DataFileStamp dataFileStamp;
+        private File targetDataFile;
+
+        PendingCopy(FileChannel source, long lastModified, File target) {
+            this.source = source;
+            this.lastModified = lastModified;
+            this.target = target;
+        }
+
+        /**
+         * Copies a stamped sidecar with the stamp of the copied data file, if it has the stamp of the source one.
+         */
+        void restamp(DataFileStamp dataFileStamp, File targetDataFile) {
+            this.dataFileStamp = dataFileStamp;
+            this.targetDataFile = targetDataFile;
+        }
+
+        void copy() throws IOException {
+            final FileChannel targetChannel = new FileOutputStream(this.target).getChannel();
+            try {
+                final long size = this.source.size();
+                long position = this.targetDataFile == null ? 0 : this.writeStampedHeader(targetChannel);
+                while (position < size) {
+                    position += this.source.transferTo(position, size - position, targetChannel);
+                }
+            } finally {
+                targetChannel.close();
+            }
+            // like a link, a copy keeps the modification time of its source
+            if (!this.target.setLastModified(this.lastModified)) {
+                throw new IOException("could not set the modification time of '" + this.target + "'");
+            }
+        }
+
+        /**
+         * Every stamped sidecar starts with its magic number, its format version and the stamp.
+         *
+         * @return the position in the source after the header, 0 if the sidecar is copied unchanged
+         */
+        private long writeStampedHeader(FileChannel targetChannel) throws IOException {
+            // not closed, that would close the source
+            final DataInputStream header = new DataInputStream(Channels.newInputStream(this.source.position(0)));
+            final ByteArrayOutputStream restampedHeader = new ByteArrayOutputStream();
+            final DataOutputStream outputStream = new DataOutputStream(restampedHeader);
+            try {
+                outputStream.writeInt(header.readInt());
+                outputStream.writeInt(header.readInt());
+                if (!DataFileStamp.read(header).equals(this.dataFileStamp) || !this.targetDataFile.isFile()) {
+                    // already outdated in the source
+                    return 0;
+                }
+            } catch (EOFException e) {
+                return 0;
+            }
+            DataFileStamp.of(this.targetDataFile).write(outputStream);
+            targetChannel.write(ByteBuffer.wrap(restampedHeader.toByteArray()));
+            return this.source.position();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ch.papers.objectstorage.persistence;
+
+import ch.papers.objectstorage.Constants;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Files of the storage root are replaced by writing a temporary file next to them and renaming it, so readers
+ * see either the previous or the new file.
+ */
+public final class TempFiles {
+    private TempFiles() {
+    }
+
+    /**
+     * @param file the file to replace
+     * @return the temporary file to write its replacement to
+     */
+    public static File of(File file) {
+        return new File(file.getPath() + Constants.TEMP_FILE_EXTENSION);
+    }
+
+    /**
+     * Replaces a file by a completely written temporary file.
+     *
+     * @param tempFile the temporary file
+     * @param file     the file to replace
+     * @throws IOException if renaming fails
+     */
+    public static void rename(File tempFile, File file) throws IOException {
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Renaming file '" + tempFile + "' to '" + file + "' failed");
+        }
+    }
+}
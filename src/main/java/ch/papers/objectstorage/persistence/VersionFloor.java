@@ -0,0 +1,98 @@
+package ch.papers.objectstorage.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The highest version a removed entry of a class had. An entry added under a uuid that has no current entry
+ * continues above it, so the version of a uuid never goes backwards and a copy of a removed entry can't
+ * replace the entry added after it.
+ * <p>
+ * The floor only grows, so its sidecar file needs no stamp: a file written for a newer data file than the
+ * current one only holds a higher floor.
+ */
+public class VersionFloor {
+    private static final int MAGIC = 0x554f5356; // "UOSV"
+    private static final int VERSION = 1;
+
+    private final AtomicLong floor;
+
+    public VersionFloor(long floor) {
+        this.floor = new AtomicLong(floor);
+    }
+
+    /**
+     * @return the version of an entry added under a uuid without a current entry
+     */
+    public long next() {
+        return this.floor.get() + 1;
+    }
+
+    /**
+     * Raises the floor to the version of an entry before it is removed, so it is raised by the time the uuid
+     * can be added again.
+     *
+     * @param version the version of the entry to remove
+     */
+    public void raise(long version) {
+        long floor;
+        while ((floor = this.floor.get()) < version && !this.floor.compareAndSet(floor, version)) {
+            // raised by another remover in between
+        }
+    }
+
+    public long get() {
+        return this.floor.get();
+    }
+
+    /**
+     * Writes the floor to a sidecar file next to the class file.
+     *
+     * @param floorFile the file to write, replaced atomically
+     * @throws IOException if writing fails
+     */
+    public void write(File floorFile) throws IOException {
+        final File tempFile = TempFiles.of(floorFile);
+        final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeLong(this.floor.get());
+        } finally {
+            outputStream.close();
+        }
+        TempFiles.rename(tempFile, floorFile);
+    }
+
+    /**
+     * Reads the floor written by {@link #write(File)}.
+     *
+     * @param floorFile the sidecar file
+     * @return the floor, 0 if the file doesn't exist or is not valid
+     * @throws IOException if the file can't be read
+     */
+    public static VersionFloor read(File floorFile) throws IOException {
+        if (!floorFile.isFile()) {
+            return new VersionFloor(0);
+        }
+        final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(floorFile)));
+        try {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                return new VersionFloor(0);
+            }
+            return new VersionFloor(inputStream.readLong());
+        } catch (EOFException e) {
+            return new VersionFloor(0);
+        } finally {
+            inputStream.close();
+        }
+    }
+}
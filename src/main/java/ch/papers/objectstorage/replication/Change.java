@@ -0,0 +1,51 @@
+package ch.papers.objectstorage.replication;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+import java.util.UUID;
+
+/**
+ * An entry of the change feed of a class: the state of an entry after it has been written or deleted.
+ */
+public class Change<T extends AbstractUuidObject> {
+    private final long sequence;
+    private final long timeMillis;
+    private final UUID uuid;
+    private final T entry;
+
+    public Change(long sequence, long timeMillis, UUID uuid, T entry) {
+        this.sequence = sequence;
+        this.timeMillis = timeMillis;
+        this.uuid = uuid;
+        this.entry = entry;
+    }
+
+    /**
+     * @return the position of the change in the feed of its class, starting at 1 without gaps
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * @return when the change has been recorded, in milliseconds since the epoch
+     */
+    public long getTimeMillis() {
+        return this.timeMillis;
+    }
+
+    public UUID getUuid() {
+        return this.uuid;
+    }
+
+    /**
+     * @return the entry as it was stored when the change was recorded, null if it has been deleted
+     */
+    public T getEntry() {
+        return this.entry;
+    }
+
+    public boolean isDelete() {
+        return this.entry == null;
+    }
+}
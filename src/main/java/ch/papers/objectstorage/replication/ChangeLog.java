@@ -0,0 +1,264 @@
+package ch.papers.objectstorage.replication;
+
+import ch.papers.objectstorage.Constants;
+import ch.papers.objectstorage.caches.ClassCache;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.persistence.ClassFile;
+import ch.papers.objectstorage.persistence.TempFiles;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The change feed of a class, appended to a newline-delimited JSON file next to the class file so that
+ * followers in the same or another process can tail it.
+ * <p>
+ * Every change records the state of an entry at the time the change got its sequence number, not the value a
+ * writer passed in. Writers of the same entry may record their changes in a different order than they were
+ * applied, but the last change of an entry is always recorded after its last write and thus has its final
+ * state. On commit, the changes that are contained in the published class file are cut off the log and their
+ * last sequence number is written to a sequence file, which tells followers from where the log continues.
+ */
+public class ChangeLog implements Closeable {
+    private static final String SEQUENCE_PREFIX = "{\"sequence\":";
+
+    private final ClassFile classFile;
+    private OutputStream outputStream;
+    private long sequence;
+    private long length;
+
+    private ChangeLog(ClassFile classFile, long sequence) throws IOException {
+        this.classFile = classFile;
+        this.sequence = sequence;
+        this.length = classFile.getChangeLogFile().length();
+        this.outputStream = new FileOutputStream(classFile.getChangeLogFile(), true);
+    }
+
+    /**
+     * Opens the change log of a class for appending, continuing the sequence numbers where they stopped.
+     *
+     * @param classFile the files of the class
+     * @return the change log
+     * @throws IOException if the log can't be opened
+     */
+    public static ChangeLog open(ClassFile classFile) throws IOException {
+        return new ChangeLog(classFile, getLastSequence(classFile));
+    }
+
+    /**
+     * Records the current state of an entry as the next change.
+     *
+     * @param uuid       the identifier of the entry that has been written or deleted
+     * @param classCache the cache holding the entry
+     * @return the sequence number of the change
+     * @throws IOException if the change can't be written
+     */
+    public synchronized long append(UUID uuid, ClassCache<?> classCache) throws IOException {
+        final Object entry = classCache.get(uuid);
+        final long nextSequence = this.sequence + 1;
+        final String line = SEQUENCE_PREFIX + nextSequence + ",\"time\":" + System.currentTimeMillis() + ",\"uuid\":\"" + uuid
+                + "\",\"entry\":" + (entry == null ? "null" : Constants.GSON.toJson(entry)) + "}\n";
+        final byte[] bytes = line.getBytes(Constants.CHARSET);
+        // one write per change, readers skip a last line that doesn't have its line break yet
+        this.outputStream.write(bytes);
+        this.length += bytes.length;
+        this.sequence = nextSequence;
+        return nextSequence;
+    }
+
+    /**
+     * Marks the changes that the class file about to be persisted contains.
+     *
+     * @return the mark to pass to {@link #truncate(Checkpoint)} once the class file is published
+     */
+    public synchronized Checkpoint checkpoint() {
+        return new Checkpoint(this.sequence, this.length);
+    }
+
+    /**
+     * Writes the sequence file and cuts the changes up to the checkpoint off the log.
+     *
+     * @param checkpoint taken before the class file was persisted
+     * @throws IOException if the log can't be rewritten
+     */
+    public synchronized void truncate(Checkpoint checkpoint) throws IOException {
+        writeSequence(this.classFile.getSequenceFile(), checkpoint.sequence);
+        final File logFile = this.classFile.getChangeLogFile();
+        final File tempFile = TempFiles.of(logFile);
+        final RandomAccessFile remainder = new RandomAccessFile(logFile, "r");
+        try {
+            final OutputStream tempStream = new FileOutputStream(tempFile);
+            try {
+                remainder.seek(checkpoint.length);
+                final byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = remainder.read(buffer)) > 0) {
+                    tempStream.write(buffer, 0, read);
+                }
+            } finally {
+                tempStream.close();
+            }
+        } finally {
+            remainder.close();
+        }
+        this.outputStream.close();
+        TempFiles.rename(tempFile, logFile);
+        this.length = logFile.length();
+        this.outputStream = new FileOutputStream(logFile, true);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.outputStream.close();
+    }
+
+    /**
+     * Reads the changes after a sequence number from the change log of a class, which may be written by another
+     * process at the same time.
+     *
+     * @param classFile     the files of the class
+     * @param clazz         dynamic type of objects
+     * @param afterSequence the sequence number of the last change already known
+     * @param maxChanges    the maximum number of changes to return
+     * @param <T>           generic type of objects
+     * @return the changes in the order of their sequence numbers, they continue after afterSequence only if the
+     * log still contains that change
+     * @throws IOException if the log can't be read
+     */
+    public static <T extends AbstractUuidObject> List<Change<T>> read(ClassFile classFile, Class<T> clazz, long afterSequence, int maxChanges) throws IOException {
+        final List<Change<T>> changes = new ArrayList<Change<T>>();
+        final InputStream inputStream = openLog(classFile.getChangeLogFile());
+        if (inputStream == null) {
+            return changes;
+        }
+        try {
+            String line;
+            while (changes.size() < maxChanges && (line = readLine(inputStream)) != null) {
+                if (parseSequence(line) > afterSequence) {
+                    final JsonObject change = Constants.GSON.fromJson(line, JsonObject.class);
+                    final JsonElement entry = change.get("entry");
+                    changes.add(new Change<T>(change.get("sequence").getAsLong(), change.get("time").getAsLong(),
+                            UUID.fromString(change.get("uuid").getAsString()), entry.isJsonNull() ? null : Constants.GSON.fromJson(entry, clazz)));
+                }
+            }
+        } finally {
+            inputStream.close();
+        }
+        return changes;
+    }
+
+    /**
+     * @param classFile the files of the class
+     * @return the sequence number of the last change of a class, whether it is still in the log or not
+     * @throws IOException if the log can't be read
+     */
+    public static long getLastSequence(ClassFile classFile) throws IOException {
+        long sequence = readSequence(classFile.getSequenceFile());
+        final InputStream inputStream = openLog(classFile.getChangeLogFile());
+        if (inputStream != null) {
+            try {
+                String line;
+                while ((line = readLine(inputStream)) != null) {
+                    sequence = Math.max(sequence, parseSequence(line));
+                }
+            } finally {
+                inputStream.close();
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * @param sequenceFile the sequence file of a class
+     * @return the sequence number of the last change contained in the class file, 0 if there is none
+     * @throws IOException if the file can't be read
+     */
+    public static long readSequence(File sequenceFile) throws IOException {
+        if (!sequenceFile.isFile()) {
+            return 0;
+        }
+        final InputStream inputStream = new FileInputStream(sequenceFile);
+        try {
+            final String line = readLine(inputStream);
+            return line == null ? 0 : Long.parseLong(line.trim());
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    public static void writeSequence(File sequenceFile, long sequence) throws IOException {
+        final File tempFile = TempFiles.of(sequenceFile);
+        final OutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            outputStream.write((sequence + "\n").getBytes(Constants.CHARSET));
+        } finally {
+            outputStream.close();
+        }
+        TempFiles.rename(tempFile, sequenceFile);
+    }
+
+    private static InputStream openLog(File logFile) throws IOException {
+        try {
+            return new BufferedInputStream(new FileInputStream(logFile), 64 * 1024);
+        } catch (IOException e) {
+            if (!logFile.exists()) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static long parseSequence(String line) throws IOException {
+        final int end = line.indexOf(',', SEQUENCE_PREFIX.length());
+        if (!line.startsWith(SEQUENCE_PREFIX) || end < 0) {
+            throw new IOException("not a change: " + line);
+        }
+        return Long.parseLong(line.substring(SEQUENCE_PREFIX.length(), end));
+    }
+
+    /**
+     * @return the next line without its line break, null at the end of the stream or if the last line is still
+     * being written
+     */
+    private static String readLine(InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int read;
+        while ((read = inputStream.read()) >= 0) {
+            if (read == '\n') {
+                return new String(line.toByteArray(), Constants.CHARSET);
+            }
+            line.write(read);
+        }
+        return null;
+    }
+
+    /**
+     * The end of the log at the time a class file started to be persisted.
+     */
+    public static final class Checkpoint {
+        private final long sequence;
+        private final long length;
+
+        Checkpoint(long sequence, long length) {
+            this.sequence = sequence;
+            this.length = length;
+        }
+
+        public long getSequence() {
+            return this.sequence;
+        }
+    }
+}
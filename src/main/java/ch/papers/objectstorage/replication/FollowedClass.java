@@ -0,0 +1,47 @@
+package ch.papers.objectstorage.replication;
+
+/**
+ * How far a follower has applied the change feed of one class of its leader.
+ */
+public class FollowedClass {
+    private volatile long appliedSequence;
+    private volatile long lag;
+    private volatile long delayMillis;
+
+    /**
+     * @param appliedSequence the sequence number the follower's own class file is up to date with
+     */
+    public FollowedClass(long appliedSequence) {
+        this.appliedSequence = appliedSequence;
+    }
+
+    public long getAppliedSequence() {
+        return this.appliedSequence;
+    }
+
+    public void setAppliedSequence(long appliedSequence) {
+        this.appliedSequence = appliedSequence;
+    }
+
+    /**
+     * @return the number of changes the follower was behind the leader at its last poll
+     */
+    public long getLag() {
+        return this.lag;
+    }
+
+    public void setLag(long lag) {
+        this.lag = lag;
+    }
+
+    /**
+     * @return the time between the leader recording and the follower applying the last applied change
+     */
+    public long getDelayMillis() {
+        return this.delayMillis;
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+}
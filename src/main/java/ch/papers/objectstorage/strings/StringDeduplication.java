@@ -0,0 +1,101 @@
+package ch.papers.objectstorage.strings;
+
+import ch.papers.objectstorage.adapters.GeneratedAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Deduplicates the strings of a class through a {@link StringPool} while it is deserialized. Either every string
+ * of the class is deduplicated, including those in nested objects, collections and maps, or only the values of
+ * the given fields. A field may hold a string, a list of strings or an array of strings. Serialization is not
+ * affected.
+ */
+public class StringDeduplication implements TypeAdapterFactory {
+    private final StringPool pool;
+    private final Class<?> clazz;
+    private final StringFields fields;
+
+    /**
+     * @param pool       the pool to deduplicate with
+     * @param clazz      the class to deduplicate
+     * @param fieldNames the names of the fields to deduplicate as declared in Java, none for all strings
+     * @throws IllegalArgumentException if the class or its superclasses don't declare one of the fields
+     */
+    public StringDeduplication(StringPool pool, Class<?> clazz, String... fieldNames) {
+        this.pool = pool;
+        this.clazz = clazz;
+        this.fields = new StringFields(clazz, fieldNames);
+    }
+
+    /**
+     * @param pool       the pool to deduplicate with
+     * @param clazz      the class to deduplicate
+     * @param fieldNames the names of the fields to deduplicate, none for all strings
+     * @return a Gson that deserializes the class with deduplicated strings
+     */
+    public static Gson createGson(StringPool pool, Class<?> clazz, String... fieldNames) {
+        // factories registered later take precedence, deduplication wraps the generated adapters
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(GeneratedAdapterFactory.INSTANCE)
+                .registerTypeAdapterFactory(new StringDeduplication(pool, clazz, fieldNames))
+                .create();
+    }
+
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (this.fields.isEmpty()) {
+            return type.getRawType() == String.class ? (TypeAdapter<T>) new PooledStringAdapter(this.pool) : null;
+        }
+        if (type.getRawType() != this.clazz) {
+            return null;
+        }
+        final TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+        return new TypeAdapter<T>() {
+            @Override
+            public void write(JsonWriter out, T value) throws IOException {
+                delegate.write(out, value);
+            }
+
+            @Override
+            public T read(JsonReader in) throws IOException {
+                final T value = delegate.read(in);
+                if (value != null) {
+                    StringDeduplication.this.fields.apply(value, StringDeduplication.this.pool::deduplicate);
+                }
+                return value;
+            }
+        };
+    }
+
+    private static final class PooledStringAdapter extends TypeAdapter<String> {
+        private final StringPool pool;
+
+        PooledStringAdapter(StringPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public String read(JsonReader in) throws IOException {
+            final JsonToken token = in.peek();
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            // like Gson's own string adapter, booleans are read as strings too
+            return this.pool.deduplicate(token == JsonToken.BOOLEAN ? Boolean.toString(in.nextBoolean()) : in.nextString());
+        }
+    }
+}
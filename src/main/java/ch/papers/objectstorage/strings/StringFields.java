@@ -0,0 +1,97 @@
+package ch.papers.objectstorage.strings;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.function.UnaryOperator;
+
+/**
+ * The string fields of a class, found by name in the class or its superclasses. A field may hold a string, a
+ * collection of strings or an array of strings.
+ */
+public class StringFields {
+    private final List<Field> fields = new ArrayList<Field>();
+
+    /**
+     * @param clazz      the class declaring the fields
+     * @param fieldNames the names of the fields as declared in Java
+     * @throws IllegalArgumentException if the class or its superclasses don't declare one of the fields
+     */
+    public StringFields(Class<?> clazz, String... fieldNames) {
+        for (String fieldName : fieldNames) {
+            this.fields.add(findField(clazz, fieldName));
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.fields.isEmpty();
+    }
+
+    /**
+     * Passes every non null string held by the fields of an object to a function. A string the function
+     * replaces by another instance is replaced in the field, list or array holding it, strings in other
+     * collections are only passed.
+     *
+     * @param object   an instance of the class
+     * @param function called with each string, returning it or its replacement
+     */
+    public void apply(Object object, UnaryOperator<String> function) {
+        try {
+            for (Field field : this.fields) {
+                final Object value = field.get(object);
+                if (value instanceof String) {
+                    final String replacement = function.apply((String) value);
+                    if (replacement != value) {
+                        field.set(object, replacement);
+                    }
+                } else if (value instanceof List) {
+                    @SuppressWarnings("unchecked")
+                    final ListIterator<Object> iterator = ((List<Object>) value).listIterator();
+                    while (iterator.hasNext()) {
+                        final Object element = iterator.next();
+                        if (element instanceof String) {
+                            final String replacement = function.apply((String) element);
+                            if (replacement != element) {
+                                iterator.set(replacement);
+                            }
+                        }
+                    }
+                } else if (value instanceof Collection) {
+                    for (Object element : (Collection<?>) value) {
+                        if (element instanceof String) {
+                            function.apply((String) element);
+                        }
+                    }
+                } else if (value instanceof String[]) {
+                    final String[] array = (String[]) value;
+                    for (int i = 0; i < array.length; i++) {
+                        if (array[i] != null) {
+                            array[i] = function.apply(array[i]);
+                        }
+                    }
+                }
+            }
+        } catch (IllegalAccessException e) {
+            // the fields are accessible since they were found
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Field findField(Class<?> clazz, String fieldName) {
+        for (Class<?> declaringClass = clazz; declaringClass != null; declaringClass = declaringClass.getSuperclass()) {
+            try {
+                final Field field = declaringClass.getDeclaredField(fieldName);
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    return field;
+                }
+            } catch (NoSuchFieldException e) {
+                // declared further up, if at all
+            }
+        }
+        throw new IllegalArgumentException(clazz.getSimpleName() + " has no field " + fieldName);
+    }
+}
@@ -0,0 +1,62 @@
+package ch.papers.objectstorage.strings;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replaces equal strings by a single instance, so repeated values like status or country codes take up memory
+ * once. The pool is a fixed table of slots indexed by the hash of a string, a string that maps to an occupied
+ * slot of a different value replaces it. Its memory is bounded by the number of slots and the maximum length of
+ * pooled strings, values that occur often stay in the pool, rare ones are displaced again.
+ * <p>
+ * The pool is thread safe without locking. Threads racing for a slot may each keep their own instance, which
+ * only costs some deduplication.
+ */
+public class StringPool {
+    public static final int DEFAULT_SLOTS = 4096;
+    public static final int DEFAULT_MAX_LENGTH = 64;
+
+    private final String[] slots;
+    private final int maxLength;
+    private final LongAdder deduplicated = new LongAdder();
+
+    /**
+     * @param slots     the number of strings the pool can hold, rounded up to a power of two
+     * @param maxLength strings longer than this are never pooled
+     */
+    public StringPool(int slots, int maxLength) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("a string pool needs at least one slot");
+        }
+        this.slots = new String[slots == 1 ? 1 : Integer.highestOneBit(slots - 1) << 1];
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @param value a string, may be null
+     * @return the pooled instance equal to the value, or the value itself
+     */
+    public String deduplicate(String value) {
+        if (value == null || value.length() > this.maxLength) {
+            return value;
+        }
+        final int hash = value.hashCode();
+        // mixes the high bits into the slot index, like HashMap does
+        final int slot = (hash ^ (hash >>> 16)) & (this.slots.length - 1);
+        final String pooled = this.slots[slot];
+        if (value.equals(pooled)) {
+            if (pooled != value) {
+                this.deduplicated.increment();
+            }
+            return pooled;
+        }
+        this.slots[slot] = value;
+        return value;
+    }
+
+    /**
+     * @return the number of strings that have been replaced by a pooled instance
+     */
+    public long getDeduplicatedStrings() {
+        return this.deduplicated.sum();
+    }
+}
@@ -0,0 +1,331 @@
+package ch.papers.objectstorage.text;
+
+import ch.papers.objectstorage.caches.ClassCache;
+import ch.papers.objectstorage.caches.UuidHashMap;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.persistence.DataFileStamp;
+import ch.papers.objectstorage.persistence.TempFiles;
+import ch.papers.objectstorage.strings.StringFields;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * An inverted index over string fields of a class, mapping every token to the entries containing it. Tokens
+ * are the runs of letters and digits of a value, lower cased, and cut to {@link #MAX_TOKEN_LENGTH} characters.
+ * A field may hold a string, a collection of strings or an array of strings.
+ * <p>
+ * The tokens are kept sorted, so a prefix query is a range of them. The index is updated after every write
+ * and delete of the class with the entry that is current at that time, so concurrent writes of the same entry
+ * leave the tokens of the last one.
+ */
+public class TextIndex {
+    public static final int MAX_TOKEN_LENGTH = 64;
+
+    private static final int MAGIC = 0x554f5346; // "UOSF"
+    private static final int VERSION = 2;
+
+    private final String[] fieldNames;
+    private final StringFields fields;
+    private final TreeMap<String, Set<UUID>> postings = new TreeMap<String, Set<UUID>>();
+    // the tokens of every indexed entry, to remove it from their postings again
+    private final UuidHashMap<String[]> entryTokens = new UuidHashMap<String[]>();
+    private long generation;
+
+    /**
+     * @param clazz      the indexed class
+     * @param fieldNames the names of the indexed fields as declared in Java
+     * @throws IllegalArgumentException if no field is given or the class and its superclasses don't declare one
+     *                                  of the fields
+     */
+    public TextIndex(Class<? extends AbstractUuidObject> clazz, String... fieldNames) {
+        if (fieldNames.length == 0) {
+            throw new IllegalArgumentException("a text index of " + clazz.getSimpleName() + " needs at least one field");
+        }
+        this.fieldNames = fieldNames.clone();
+        this.fields = new StringFields(clazz, fieldNames);
+    }
+
+    /**
+     * Splits a text into its tokens.
+     *
+     * @param text the text, may be null
+     * @return the distinct tokens in the order they appear
+     */
+    public static Set<String> tokenize(String text) {
+        final Set<String> tokens = new LinkedHashSet<String>();
+        if (text != null) {
+            tokenize(text, tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Replaces the tokens of an entry by those of its current value.
+     *
+     * @param uuid       the identifier of the entry
+     * @param classCache the entries of the class, the entry is read from it while the index is locked
+     * @throws IOException if the entry can't be read
+     */
+    public synchronized void update(UUID uuid, ClassCache<?> classCache) throws IOException {
+        this.index(uuid, classCache.get(uuid));
+    }
+
+    /**
+     * Indexes all entries of a class from scratch.
+     *
+     * @param classCache the entries of the class
+     */
+    public synchronized void rebuild(ClassCache<?> classCache) {
+        this.postings.clear();
+        this.entryTokens.clear();
+        this.generation++;
+        for (AbstractUuidObject entry : classCache) {
+            this.index(entry.getUuid(), entry);
+        }
+    }
+
+    /**
+     * @param query the query to run
+     * @return the identifiers of the matching entries
+     */
+    public synchronized Set<UUID> search(TextQuery query) {
+        return new HashSet<UUID>(query.match(this));
+    }
+
+    /**
+     * @param entry an entry of the indexed class
+     * @return the tokens of its indexed fields
+     */
+    public Set<String> getTokens(AbstractUuidObject entry) {
+        final Set<String> tokens = new LinkedHashSet<String>();
+        this.fields.apply(entry, value -> {
+            tokenize(value, tokens);
+            return value;
+        });
+        return tokens;
+    }
+
+    /**
+     * @return a number that changes whenever an entry is indexed or removed
+     */
+    public synchronized long getGeneration() {
+        return this.generation;
+    }
+
+    public synchronized int getTokenCount() {
+        return this.postings.size();
+    }
+
+    /**
+     * @return the entries containing the token, must only be called while the index is locked
+     */
+    Set<UUID> getPostings(String token) {
+        final Set<UUID> uuids = this.postings.get(token);
+        return uuids == null ? new HashSet<UUID>() : uuids;
+    }
+
+    /**
+     * @return the entries containing a token starting with the prefix, must only be called while the index is
+     * locked
+     */
+    Set<UUID> getPrefixPostings(String prefix) {
+        final Set<UUID> uuids = new HashSet<UUID>();
+        for (Set<UUID> postings : this.postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            uuids.addAll(postings);
+        }
+        return uuids;
+    }
+
+    /**
+     * Writes the index to a sidecar file next to the class file, stamped with the data file it was written
+     * for. Writes of the class wait until it is written. If the index changed since the data file was
+     * snapshotted, the index would not match it, so the sidecar is deleted instead and rebuilt on the next load
+     * unless a later commit writes it.
+     *
+     * @param textIndexFile the file to write, replaced atomically
+     * @param dataFile      the data file of the class, the temporary one while it is published
+     * @param generation    the {@link #getGeneration() generation} before the data file was written
+     * @return false if the index changed in between and the sidecar was deleted
+     * @throws IOException if writing fails
+     */
+    public synchronized boolean write(File textIndexFile, File dataFile, long generation) throws IOException {
+        if (generation != this.generation) {
+            if (textIndexFile.exists() && !textIndexFile.delete()) {
+                throw new IOException("Deleting file '" + textIndexFile + "' failed");
+            }
+            return false;
+        }
+        final File tempFile = TempFiles.of(textIndexFile);
+        final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024));
+        try {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            DataFileStamp.of(dataFile).write(outputStream);
+            outputStream.writeInt(this.fieldNames.length);
+            for (String fieldName : this.fieldNames) {
+                outputStream.writeUTF(fieldName);
+            }
+            outputStream.writeInt(this.postings.size());
+            for (Map.Entry<String, Set<UUID>> posting : this.postings.entrySet()) {
+                outputStream.writeUTF(posting.getKey());
+                outputStream.writeInt(posting.getValue().size());
+                for (UUID uuid : posting.getValue()) {
+                    outputStream.writeLong(uuid.getMostSignificantBits());
+                    outputStream.writeLong(uuid.getLeastSignificantBits());
+                }
+            }
+        } finally {
+            outputStream.close();
+        }
+        TempFiles.rename(tempFile, textIndexFile);
+        return true;
+    }
+
+    /**
+     * Replaces the contents of the index by those written by {@link #write(File, File, long)}, if they were written
+     * for the current data file and the same fields.
+     *
+     * @param textIndexFile the sidecar file
+     * @param dataFile      the data file of the class
+     * @return false if the file doesn't exist or is outdated, the index is left unchanged in that case
+     * @throws IOException if the file can't be read
+     */
+    public synchronized boolean read(File textIndexFile, File dataFile) throws IOException {
+        if (!textIndexFile.isFile() || !dataFile.isFile()) {
+            return false;
+        }
+        final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(textIndexFile), 64 * 1024));
+        try {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                return false;
+            }
+            if (!DataFileStamp.read(inputStream).equals(DataFileStamp.of(dataFile))) {
+                return false;
+            }
+            final int fieldCount = inputStream.readInt();
+            if (fieldCount != this.fieldNames.length) {
+                return false;
+            }
+            for (String fieldName : this.fieldNames) {
+                if (!fieldName.equals(inputStream.readUTF())) {
+                    return false;
+                }
+            }
+
+            final TreeMap<String, Set<UUID>> postings = new TreeMap<String, Set<UUID>>();
+            final Map<UUID, List<String>> entryTokens = new HashMap<UUID, List<String>>();
+            final int tokenCount = inputStream.readInt();
+            for (int i = 0; i < tokenCount; i++) {
+                final String token = inputStream.readUTF();
+                final int size = inputStream.readInt();
+                final Set<UUID> uuids = new HashSet<UUID>(size * 4 / 3 + 1);
+                for (int j = 0; j < size; j++) {
+                    final UUID uuid = new UUID(inputStream.readLong(), inputStream.readLong());
+                    uuids.add(uuid);
+                    List<String> tokens = entryTokens.get(uuid);
+                    if (tokens == null) {
+                        tokens = new ArrayList<String>(4);
+                        entryTokens.put(uuid, tokens);
+                    }
+                    tokens.add(token);
+                }
+                postings.put(token, uuids);
+            }
+
+            this.postings.clear();
+            this.postings.putAll(postings);
+            this.entryTokens.clear();
+            for (Map.Entry<UUID, List<String>> entry : entryTokens.entrySet()) {
+                this.entryTokens.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+            }
+            this.generation++;
+            return true;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void index(UUID uuid, AbstractUuidObject entry) {
+        this.generation++;
+        final String[] previousTokens = this.entryTokens.get(uuid);
+        if (previousTokens != null) {
+            for (String token : previousTokens) {
+                final Set<UUID> uuids = this.postings.get(token);
+                if (uuids != null && uuids.remove(uuid) && uuids.isEmpty()) {
+                    this.postings.remove(token);
+                }
+            }
+        }
+        if (entry == null) {
+            this.entryTokens.remove(uuid);
+            return;
+        }
+        final Set<String> tokens = this.getTokens(entry);
+        final String[] indexedTokens = new String[tokens.size()];
+        int i = 0;
+        for (String token : tokens) {
+            final Map.Entry<String, Set<UUID>> posting = this.postings.ceilingEntry(token);
+            if (posting != null && posting.getKey().equals(token)) {
+                // the instance of the index is shared by all entries containing the token
+                indexedTokens[i++] = posting.getKey();
+                posting.getValue().add(uuid);
+            } else {
+                final Set<UUID> uuids = new HashSet<UUID>(4);
+                uuids.add(uuid);
+                this.postings.put(token, uuids);
+                indexedTokens[i++] = token;
+            }
+        }
+        if (indexedTokens.length == 0) {
+            this.entryTokens.remove(uuid);
+        } else {
+            this.entryTokens.put(uuid, indexedTokens);
+        }
+    }
+
+    private static void tokenize(String text, Collection<String> tokens) {
+        int start = -1;
+        int i = 0;
+        while (i < text.length()) {
+            final int codePoint = text.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                addToken(text.substring(start, i), tokens);
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (start >= 0) {
+            addToken(text.substring(start), tokens);
+        }
+    }
+
+    private static void addToken(String word, Collection<String> tokens) {
+        final String token = word.toLowerCase(Locale.ROOT);
+        tokens.add(token.length() > MAX_TOKEN_LENGTH ? token.substring(0, MAX_TOKEN_LENGTH) : token);
+    }
+}
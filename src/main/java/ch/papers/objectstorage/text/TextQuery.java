@@ -0,0 +1,211 @@
+package ch.papers.objectstorage.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A query of a {@link TextIndex}: entries containing a token or a token starting with a prefix, and
+ * combinations of queries that all or any have to match.
+ */
+public abstract class TextQuery {
+
+    TextQuery() {
+    }
+
+    /**
+     * @param text a word, or several words that all have to occur
+     * @return a query matching the entries that contain every token of the text
+     */
+    public static TextQuery token(String text) {
+        final Set<String> tokens = TextIndex.tokenize(text);
+        if (tokens.size() == 1) {
+            return new TokenQuery(tokens.iterator().next());
+        }
+        final List<TextQuery> queries = new ArrayList<TextQuery>();
+        for (String token : tokens) {
+            queries.add(new TokenQuery(token));
+        }
+        // a text without any word matches nothing
+        return queries.isEmpty() ? new AnyQuery(queries) : new AllQuery(queries);
+    }
+
+    /**
+     * @param prefix the start of a word
+     * @return a query matching the entries that contain a token starting with the prefix
+     */
+    public static TextQuery prefix(String prefix) {
+        final String token = prefix.toLowerCase(Locale.ROOT);
+        if (token.isEmpty()) {
+            throw new IllegalArgumentException("a prefix query needs a prefix");
+        }
+        return new PrefixQuery(token.length() > TextIndex.MAX_TOKEN_LENGTH ? token.substring(0, TextIndex.MAX_TOKEN_LENGTH) : token);
+    }
+
+    /**
+     * @param queries the queries that all have to match, at least one
+     * @return a query matching the entries that match all queries
+     */
+    public static TextQuery all(TextQuery... queries) {
+        return new AllQuery(requireQueries(queries));
+    }
+
+    /**
+     * @param queries the queries of which one has to match, at least one
+     * @return a query matching the entries that match any of the queries
+     */
+    public static TextQuery any(TextQuery... queries) {
+        return new AnyQuery(requireQueries(queries));
+    }
+
+    /**
+     * @param index the index to query, locked by the caller
+     * @return the matching entries, which must not be modified
+     */
+    abstract Set<UUID> match(TextIndex index);
+
+    /**
+     * @param tokens the tokens of an entry
+     * @return true if the entry matches
+     */
+    public abstract boolean matches(Set<String> tokens);
+
+    private static List<TextQuery> requireQueries(TextQuery[] queries) {
+        if (queries.length == 0) {
+            throw new IllegalArgumentException("at least one query is needed");
+        }
+        return Arrays.asList(queries.clone());
+    }
+
+    private static final class TokenQuery extends TextQuery {
+        private final String token;
+
+        TokenQuery(String token) {
+            this.token = token;
+        }
+
+        @Override
+        Set<UUID> match(TextIndex index) {
+            return index.getPostings(this.token);
+        }
+
+        @Override
+        public boolean matches(Set<String> tokens) {
+            return tokens.contains(this.token);
+        }
+
+        @Override
+        public String toString() {
+            return this.token;
+        }
+    }
+
+    private static final class PrefixQuery extends TextQuery {
+        private final String prefix;
+
+        PrefixQuery(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        Set<UUID> match(TextIndex index) {
+            return index.getPrefixPostings(this.prefix);
+        }
+
+        @Override
+        public boolean matches(Set<String> tokens) {
+            for (String token : tokens) {
+                if (token.startsWith(this.prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return this.prefix + "*";
+        }
+    }
+
+    private static final class AllQuery extends TextQuery {
+        private final List<TextQuery> queries;
+
+        AllQuery(List<TextQuery> queries) {
+            this.queries = queries;
+        }
+
+        @Override
+        Set<UUID> match(TextIndex index) {
+            final List<Set<UUID>> matches = new ArrayList<Set<UUID>>();
+            for (TextQuery query : this.queries) {
+                matches.add(query.match(index));
+            }
+            // intersected starting with the smallest set, so the copy is as small as possible
+            Collections.sort(matches, new Comparator<Set<UUID>>() {
+                @Override
+                public int compare(Set<UUID> first, Set<UUID> second) {
+                    return Integer.compare(first.size(), second.size());
+                }
+            });
+            final Set<UUID> result = new HashSet<UUID>(matches.get(0));
+            for (int i = 1; i < matches.size() && !result.isEmpty(); i++) {
+                result.retainAll(matches.get(i));
+            }
+            return result;
+        }
+
+        @Override
+        public boolean matches(Set<String> tokens) {
+            for (TextQuery query : this.queries) {
+                if (!query.matches(tokens)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "all" + this.queries;
+        }
+    }
+
+    private static final class AnyQuery extends TextQuery {
+        private final List<TextQuery> queries;
+
+        AnyQuery(List<TextQuery> queries) {
+            this.queries = queries;
+        }
+
+        @Override
+        Set<UUID> match(TextIndex index) {
+            final Set<UUID> result = new HashSet<UUID>();
+            for (TextQuery query : this.queries) {
+                result.addAll(query.match(index));
+            }
+            return result;
+        }
+
+        @Override
+        public boolean matches(Set<String> tokens) {
+            for (TextQuery query : this.queries) {
+                if (query.matches(tokens)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "any" + this.queries;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ch.papers.objectstorage.tracing;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+/**
+ * Traces nothing.
+ */
+public class DummyStorageTracer implements StorageTracer {
+    @Override
+    public Object begin(StorageEvent event) {
+        return null;
+    }
+
+    @Override
+    public void endLoad(Object handle, Class<? extends AbstractUuidObject> clazz, int entries, long bytes) {
+    }
+
+    @Override
+    public void endCommit(Object handle, Class<? extends AbstractUuidObject> clazz, int entries, long bytes) {
+    }
+
+    @Override
+    public void endScan(Object handle, Class<? extends AbstractUuidObject> clazz, int scanned, int matched) {
+    }
+
+    @Override
+    public void endLockWait(Object handle, Class<? extends AbstractUuidObject> clazz, String lock) {
+    }
+}
@@ -0,0 +1,11 @@
+package ch.papers.objectstorage.tracing;
+
+/**
+ * The kinds of storage activity reported to a {@link StorageTracer}.
+ */
+public enum StorageEvent {
+    LOAD,
+    COMMIT,
+    SCAN,
+    LOCK_WAIT
+}
@@ -0,0 +1,27 @@
+package ch.papers.objectstorage.tracing;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+/**
+ * Traces storage activity, e.g. as JDK Flight Recorder events. Every trace starts with {@link #begin} on the
+ * thread doing the work and ends with the matching end method on the same thread. Implementations should
+ * return null from {@link #begin} when they are not recording, which skips the end call.
+ */
+public interface StorageTracer {
+    /**
+     * @param event the kind of activity that starts
+     * @return a handle for the matching end method, null if the activity is not traced
+     */
+    Object begin(StorageEvent event);
+
+    void endLoad(Object handle, Class<? extends AbstractUuidObject> clazz, int entries, long bytes);
+
+    void endCommit(Object handle, Class<? extends AbstractUuidObject> clazz, int entries, long bytes);
+
+    void endScan(Object handle, Class<? extends AbstractUuidObject> clazz, int scanned, int matched);
+
+    /**
+     * @param lock name of the lock the thread has been waiting for
+     */
+    void endLockWait(Object handle, Class<? extends AbstractUuidObject> clazz, String lock);
+}
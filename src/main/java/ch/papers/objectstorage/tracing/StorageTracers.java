@@ -0,0 +1,27 @@
+package ch.papers.objectstorage.tracing;
+
+/**
+ * Picks the default {@link StorageTracer} for the running JVM.
+ */
+public final class StorageTracers {
+    private static final String JFR_TRACER_CLASS = "ch.papers.objectstorage.tracing.jfr.JfrStorageTracer";
+
+    private StorageTracers() {
+    }
+
+    /**
+     * Returns a tracer emitting Flight Recorder events if the JVM supports them (JDK 11, 8u262 or later) and the
+     * jfr classes are on the class path, a {@link DummyStorageTracer} otherwise.
+     *
+     * @return the default tracer
+     */
+    public static StorageTracer createDefault() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (StorageTracer) Class.forName(JFR_TRACER_CLASS).newInstance();
+        } catch (Throwable e) {
+            // no flight recorder on this vm
+            return new DummyStorageTracer();
+        }
+    }
+}
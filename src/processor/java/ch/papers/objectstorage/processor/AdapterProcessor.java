@@ -0,0 +1,481 @@
+package ch.papers.objectstorage.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a Gson type adapter for every class annotated with
+ * {@code ch.papers.objectstorage.adapters.GenerateAdapter}, named after the class with the suffix
+ * {@code _GsonAdapter}. The adapter binds the same fields as Gson's reflective adapter: the fields of the class
+ * and its superclasses, except static and transient ones, named by {@code SerializedName} if present. Fields it
+ * can't access directly, e.g. private or final ones, are accessed through method handles.
+ */
+public class AdapterProcessor extends AbstractProcessor {
+    private static final String ANNOTATION = "ch.papers.objectstorage.adapters.GenerateAdapter";
+    private static final String ADAPTER_SUFFIX = "_GsonAdapter";
+    private static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+    private static final String JSON_ADAPTER = "com.google.gson.annotations.JsonAdapter";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ANNOTATION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    this.error(element, "only classes can have a generated adapter");
+                    continue;
+                }
+                try {
+                    this.generate((TypeElement) element);
+                } catch (InvalidModelException e) {
+                    this.error(e.element, e.getMessage());
+                } catch (IOException e) {
+                    this.error(element, "could not write the adapter: " + e.getMessage());
+                }
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement model) throws IOException, InvalidModelException {
+        this.checkModel(model);
+        final String packageName = this.processingEnv.getElementUtils().getPackageOf(model).getQualifiedName().toString();
+        final String modelName = model.getQualifiedName().toString();
+        final String adapterName = (packageName.isEmpty() ? modelName : modelName.substring(packageName.length() + 1)).replace('.', '_') + ADAPTER_SUFFIX;
+        final List<Property> properties = this.collectProperties(model, packageName);
+
+        // one adapter field per distinct type
+        final Map<String, String> adapterFields = new LinkedHashMap<String, String>();
+        final Map<String, String> adapterInitializers = new LinkedHashMap<String, String>();
+        for (Property property : properties) {
+            if (property.isDirectlyBound()) {
+                continue;
+            }
+            if (!adapterFields.containsKey(property.adapterType)) {
+                final String adapterField = "adapter" + adapterFields.size();
+                adapterFields.put(property.adapterType, adapterField);
+                adapterInitializers.put(adapterField, property.adapterInitializer);
+            }
+            property.adapterField = adapterFields.get(property.adapterType);
+        }
+
+        final StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * Generated by ").append(AdapterProcessor.class.getName()).append(" for {@link ").append(modelName).append("}, do not edit.\n */\n");
+        source.append("public final class ").append(adapterName).append(" extends com.google.gson.TypeAdapter<").append(modelName).append("> {\n");
+        for (Property property : properties) {
+            if (!property.directGet) {
+                source.append("    private static final java.lang.invoke.MethodHandle ").append(property.handleName("GET_"))
+                        .append(" = ch.papers.objectstorage.adapters.ModelAccess.getter(").append(property.declaringClass).append(".class, \"").append(property.fieldName).append("\");\n");
+            }
+            if (!property.directSet) {
+                source.append("    private static final java.lang.invoke.MethodHandle ").append(property.handleName("SET_"))
+                        .append(" = ch.papers.objectstorage.adapters.ModelAccess.setter(").append(property.declaringClass).append(".class, \"").append(property.fieldName).append("\");\n");
+            }
+        }
+        source.append("\n    private final com.google.gson.internal.ObjectConstructor<").append(modelName).append("> constructor = ch.papers.objectstorage.adapters.ModelAccess.constructor(").append(modelName).append(".class);\n");
+        for (Map.Entry<String, String> adapterField : adapterFields.entrySet()) {
+            source.append("    private final com.google.gson.TypeAdapter<").append(adapterField.getKey()).append("> ").append(adapterField.getValue()).append(";\n");
+        }
+
+        source.append("\n    public ").append(adapterName).append("(com.google.gson.Gson gson) {\n");
+        for (Map.Entry<String, String> initializer : adapterInitializers.entrySet()) {
+            source.append("        this.").append(initializer.getKey()).append(" = ").append(initializer.getValue()).append(";\n");
+        }
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        for (Property property : properties) {
+            if (property.isGetterUnchecked()) {
+                source.append("    @SuppressWarnings(\"unchecked\")\n");
+                break;
+            }
+        }
+        source.append("    public void write(com.google.gson.stream.JsonWriter out, ").append(modelName).append(" value) throws java.io.IOException {\n");
+        source.append("        if (value == null) {\n            out.nullValue();\n            return;\n        }\n");
+        source.append("        try {\n            out.beginObject();\n");
+        for (Property property : properties) {
+            property.appendWrite(source, "            ");
+        }
+        source.append("            out.endObject();\n");
+        appendCatch(source);
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public ").append(modelName).append(" read(com.google.gson.stream.JsonReader in) throws java.io.IOException {\n");
+        source.append("        if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n            in.nextNull();\n            return null;\n        }\n");
+        source.append("        final ").append(modelName).append(" value = this.constructor.construct();\n");
+        source.append("        try {\n            in.beginObject();\n            while (in.hasNext()) {\n                switch (in.nextName()) {\n");
+        for (Property property : properties) {
+            property.appendRead(source, "                    ");
+        }
+        source.append("                    default:\n                        in.skipValue();\n                }\n            }\n            in.endObject();\n");
+        appendCatch(source);
+        source.append("        return value;\n    }\n}\n");
+
+        final Writer writer = this.processingEnv.getFiler().createSourceFile((packageName.isEmpty() ? "" : packageName + ".") + adapterName, model).openWriter();
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Translates exceptions the way the reflective adapter does, and those of method handles, which may throw
+     * anything.
+     */
+    private static void appendCatch(StringBuilder source) {
+        source.append("        } catch (java.lang.NumberFormatException | java.lang.IllegalStateException e) {\n");
+        source.append("            throw new com.google.gson.JsonSyntaxException(e);\n");
+        source.append("        } catch (java.io.IOException | java.lang.RuntimeException | java.lang.Error e) {\n");
+        source.append("            throw e;\n");
+        source.append("        } catch (java.lang.Throwable e) {\n");
+        source.append("            throw new com.google.gson.JsonIOException(e);\n");
+        source.append("        }\n");
+    }
+
+    private void checkModel(TypeElement model) throws InvalidModelException {
+        if (!model.getTypeParameters().isEmpty()) {
+            throw new InvalidModelException(model, "generic classes can't have a generated adapter");
+        }
+        if (model.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new InvalidModelException(model, "abstract classes can't have a generated adapter");
+        }
+        if (model.getNestingKind() == NestingKind.LOCAL || model.getNestingKind() == NestingKind.ANONYMOUS) {
+            throw new InvalidModelException(model, "local and anonymous classes can't have a generated adapter");
+        }
+        for (Element element = model; element.getKind().isClass() || element.getKind().isInterface(); element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new InvalidModelException(model, "private classes can't have a generated adapter");
+            }
+        }
+    }
+
+    /**
+     * Collects the fields in the order of the reflective adapter: those of the class first, then those of its
+     * superclasses.
+     */
+    private List<Property> collectProperties(TypeElement model, String packageName) throws InvalidModelException {
+        final List<Property> properties = new ArrayList<Property>();
+        final Set<String> jsonNames = new LinkedHashSet<String>();
+        final DeclaredType modelType = (DeclaredType) model.asType();
+        TypeElement declaringClass = model;
+        while (declaringClass != null && !declaringClass.getQualifiedName().contentEquals("java.lang.Object")) {
+            final boolean samePackage = this.processingEnv.getElementUtils().getPackageOf(declaringClass).getQualifiedName().contentEquals(packageName);
+            for (Element element : declaringClass.getEnclosedElements()) {
+                if (element.getKind() != ElementKind.FIELD || element.getModifiers().contains(Modifier.STATIC) || element.getModifiers().contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                final VariableElement field = (VariableElement) element;
+                if (this.getAnnotation(field, JSON_ADAPTER) != null) {
+                    throw new InvalidModelException(field, "@JsonAdapter is not supported by generated adapters");
+                }
+                if (!samePackage && !declaringClass.getModifiers().contains(Modifier.PUBLIC)) {
+                    throw new InvalidModelException(field, "the superclass " + declaringClass.getQualifiedName() + " is not accessible from the generated adapter");
+                }
+                final TypeMirror type = this.processingEnv.getTypeUtils().asMemberOf(modelType, field);
+                if (containsTypeVariable(type)) {
+                    throw new InvalidModelException(field, "fields of a type variable can't be bound by a generated adapter");
+                }
+                final Property property = new Property(field, declaringClass, declaringClass != model, type,
+                        this.processingEnv.getTypeUtils().erasure(field.asType()).toString());
+                final boolean accessible = !field.getModifiers().contains(Modifier.PRIVATE) && (samePackage || field.getModifiers().contains(Modifier.PUBLIC));
+                property.directGet = accessible;
+                property.directSet = accessible && !field.getModifiers().contains(Modifier.FINAL);
+                this.readNames(property);
+                for (String name : property.names) {
+                    if (!jsonNames.add(name)) {
+                        throw new InvalidModelException(field, model.getQualifiedName() + " declares multiple JSON fields named " + name);
+                    }
+                }
+                this.bindType(property);
+                properties.add(property);
+            }
+            final TypeMirror superclass = declaringClass.getSuperclass();
+            declaringClass = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return properties;
+    }
+
+    private void readNames(Property property) {
+        property.names.add(property.fieldName);
+        final AnnotationMirror serializedName = this.getAnnotation(property.field, SERIALIZED_NAME);
+        if (serializedName == null) {
+            return;
+        }
+        property.names.clear();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : serializedName.getElementValues().entrySet()) {
+            if (value.getKey().getSimpleName().contentEquals("value")) {
+                property.names.add(0, (String) value.getValue().getValue());
+            } else if (value.getKey().getSimpleName().contentEquals("alternate")) {
+                for (Object alternate : (List<?>) value.getValue().getValue()) {
+                    property.names.add((String) ((AnnotationValue) alternate).getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds int, long, double and boolean fields to the JSON reader and writer directly, and all other fields
+     * to the adapter Gson has for their type.
+     */
+    private void bindType(Property property) {
+        final TypeMirror type = property.type;
+        switch (type.getKind()) {
+            case INT:
+            case LONG:
+            case DOUBLE:
+            case BOOLEAN:
+                property.jsonKind = type.getKind();
+                return;
+            default:
+                break;
+        }
+        if (type.getKind().isPrimitive()) {
+            property.boxedType = this.processingEnv.getTypeUtils().boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName().toString();
+            property.adapterType = property.boxedType;
+            property.adapterInitializer = "gson.getAdapter(" + property.boxedType + ".class)";
+            return;
+        }
+        final String typeName = type.toString();
+        final String erasure = this.processingEnv.getTypeUtils().erasure(type).toString();
+        property.adapterType = typeName;
+        if (!typeName.equals(erasure)) {
+            property.adapterInitializer = "gson.getAdapter(new com.google.gson.reflect.TypeToken<" + typeName + ">() {})";
+        } else if (type.getKind() == TypeKind.DECLARED && isPolymorphic((TypeElement) ((DeclaredType) type).asElement())) {
+            // values of a class type may be subclasses, which the reflective adapter writes with their own adapter
+            property.adapterInitializer = "ch.papers.objectstorage.adapters.ModelAccess.runtimeTypeAdapter(gson, gson.getAdapter(" + typeName + ".class), " + typeName + ".class)";
+        } else {
+            property.adapterInitializer = "gson.getAdapter(" + typeName + ".class)";
+        }
+    }
+
+    private static boolean isPolymorphic(TypeElement type) {
+        return type.getKind() != ElementKind.ENUM && !type.getModifiers().contains(Modifier.FINAL);
+    }
+
+    private static boolean containsTypeVariable(TypeMirror type) {
+        switch (type.getKind()) {
+            case TYPEVAR:
+                return true;
+            case ARRAY:
+                return containsTypeVariable(((ArrayType) type).getComponentType());
+            case WILDCARD:
+                final WildcardType wildcard = (WildcardType) type;
+                return (wildcard.getExtendsBound() != null && containsTypeVariable(wildcard.getExtendsBound()))
+                        || (wildcard.getSuperBound() != null && containsTypeVariable(wildcard.getSuperBound()));
+            case DECLARED:
+                for (TypeMirror typeArgument : ((DeclaredType) type).getTypeArguments()) {
+                    if (containsTypeVariable(typeArgument)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private AnnotationMirror getAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private void error(Element element, String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static final class Property {
+        private final VariableElement field;
+        private final String fieldName;
+        private final String declaringClass;
+        private final boolean inherited;
+        private final TypeMirror type;
+        // the method handles of a field have its erased declared type, which invokeExact has to match
+        private final String handleType;
+        private final List<String> names = new ArrayList<String>();
+        private boolean directGet;
+        private boolean directSet;
+        private TypeKind jsonKind;
+        private String boxedType;
+        private String adapterType;
+        private String adapterInitializer;
+        private String adapterField;
+
+        Property(VariableElement field, TypeElement declaringClass, boolean inherited, TypeMirror type, String handleType) {
+            this.field = field;
+            this.fieldName = field.getSimpleName().toString();
+            this.declaringClass = declaringClass.getQualifiedName().toString();
+            this.inherited = inherited;
+            this.type = type;
+            this.handleType = handleType;
+        }
+
+        boolean isDirectlyBound() {
+            return this.jsonKind != null;
+        }
+
+        String handleName(String prefix) {
+            final String declaringName = this.declaringClass.substring(this.declaringClass.lastIndexOf('.') + 1);
+            return prefix + (this.inherited ? declaringName.toUpperCase() + "_" : "") + this.fieldName.toUpperCase();
+        }
+
+        private String target() {
+            return this.inherited ? "((" + this.declaringClass + ") value)" : "value";
+        }
+
+        private String receiver() {
+            return this.inherited ? "(" + this.declaringClass + ") value" : "value";
+        }
+
+        /**
+         * @return true if the getter casts the erased value of its handle to a parameterized type
+         */
+        boolean isGetterUnchecked() {
+            return !this.directGet && !this.type.getKind().isPrimitive() && !this.type.toString().equals(this.handleType);
+        }
+
+        private String getter() {
+            if (this.directGet) {
+                return this.target() + "." + this.fieldName;
+            }
+            final String handleCall = "(" + this.handleType + ") " + this.handleName("GET_") + ".invokeExact(" + this.receiver() + ")";
+            final String typeName = this.type.getKind().isPrimitive() ? this.handleType : this.type.toString();
+            return typeName.equals(this.handleType) ? handleCall : "(" + typeName + ") " + handleCall;
+        }
+
+        /**
+         * @param expression     the value to assign
+         * @param expressionType the static type of the value, it is cast only if the handle expects another one
+         */
+        private String setter(String expression, String expressionType) {
+            if (this.directSet) {
+                return this.target() + "." + this.fieldName + " = " + expression + ";";
+            }
+            final String argument = expressionType.equals(this.handleType) ? expression : "(" + this.handleType + ") " + expression;
+            return this.handleName("SET_") + ".invokeExact(" + this.receiver() + ", " + argument + ");";
+        }
+
+        void appendWrite(StringBuilder source, String indent) {
+            final String name = quote(this.names.get(0));
+            if (this.isDirectlyBound()) {
+                source.append(indent).append("out.name(").append(name).append(").value(").append(this.getter()).append(");\n");
+            } else if (this.boxedType != null) {
+                source.append(indent).append("out.name(").append(name).append(");\n");
+                source.append(indent).append("this.").append(this.adapterField).append(".write(out, ").append(this.getter()).append(");\n");
+            } else {
+                // like the reflective adapter, a field referring to its own object is left out
+                final String local = "field" + this.handleName("").replace("_", "");
+                source.append(indent).append("final ").append(this.type.toString()).append(" ").append(local).append(" = ").append(this.getter()).append(";\n");
+                source.append(indent).append("if (").append(local).append(" != (Object) value) {\n");
+                source.append(indent).append("    out.name(").append(name).append(");\n");
+                source.append(indent).append("    this.").append(this.adapterField).append(".write(out, ").append(local).append(");\n");
+                source.append(indent).append("}\n");
+            }
+        }
+
+        void appendRead(StringBuilder source, String indent) {
+            for (String name : this.names) {
+                source.append(indent).append("case ").append(quote(name)).append(":\n");
+            }
+            final String body = indent + "    ";
+            if (this.isDirectlyBound()) {
+                // a null leaves a primitive field at its default, like in the reflective adapter
+                source.append(body).append("if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n");
+                source.append(body).append("    in.nextNull();\n");
+                source.append(body).append("} else {\n");
+                source.append(body).append("    ").append(this.setter(this.readPrimitive(), this.handleType)).append("\n");
+                source.append(body).append("}\n");
+            } else if (this.boxedType != null) {
+                final String local = "field" + this.handleName("").replace("_", "");
+                source.append(body).append("final ").append(this.boxedType).append(" ").append(local).append(" = this.").append(this.adapterField).append(".read(in);\n");
+                source.append(body).append("if (").append(local).append(" != null) {\n");
+                source.append(body).append("    ").append(this.setter(local, this.boxedType)).append("\n");
+                source.append(body).append("}\n");
+            } else {
+                source.append(body).append(this.setter("this." + this.adapterField + ".read(in)", this.adapterType)).append("\n");
+            }
+            source.append(body).append("break;\n");
+        }
+
+        private String readPrimitive() {
+            switch (this.jsonKind) {
+                case INT:
+                    return "in.nextInt()";
+                case LONG:
+                    return "in.nextLong()";
+                case DOUBLE:
+                    return "in.nextDouble()";
+                default:
+                    // like Gson's boolean adapter, "true" and "false" are accepted as strings
+                    return "(in.peek() == com.google.gson.stream.JsonToken.STRING ? java.lang.Boolean.parseBoolean(in.nextString()) : in.nextBoolean())";
+            }
+        }
+
+        private static String quote(String name) {
+            final StringBuilder quoted = new StringBuilder("\"");
+            for (char c : name.toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    quoted.append('\\').append(c);
+                } else if (c < 0x20 || c > 0x7e) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+            return quoted.append('"').toString();
+        }
+    }
+
+    private static final class InvalidModelException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final Element element;
+
+        InvalidModelException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package ch.papers.objectstorage;
+
+import ch.papers.objectstorage.filters.Filter;
+import ch.papers.objectstorage.listeners.OnStorageChangeListener;
+import ch.papers.objectstorage.metrics.LatencyHistogram;
+import ch.papers.objectstorage.persistence.ClassFile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a storage in a real root path with a mix of concurrent reads, scans, writes and deletes, periodic
+ * commits and change listeners. Reports throughput, latency percentiles, heap and file sizes while running,
+ * then reopens the storage and verifies that it contains exactly what the workers wrote.
+ * <p>
+ * Every worker owns the models it creates, so it knows their expected state without coordination.
+ */
+public class SoakHarness {
+    private static final int OPERATIONS = SoakOptions.Operation.values().length;
+
+    private final SoakOptions options;
+    private final UuidObjectStorageConfig config;
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final Stats totalStats = new Stats();
+    private volatile Stats intervalStats = new Stats();
+    private volatile boolean running = true;
+    private UuidObjectStorage storage;
+
+    public static void main(String[] args) throws Exception {
+        final SoakOptions options;
+        try {
+            options = SoakOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(SoakOptions.usage());
+            System.exit(2);
+            return;
+        }
+        System.exit(new SoakHarness(options).run() ? 0 : 1);
+    }
+
+    public SoakHarness(SoakOptions options) {
+        this.options = options;
+        this.config = new UuidObjectStorageConfig().setLazyLoading(options.lazyLoading);
+    }
+
+    /**
+     * @return true if the storage passed the integrity check after the restart
+     * @throws Exception if the storage can't be set up or verified
+     */
+    public boolean run() throws Exception {
+        if (!this.options.rootPath.isDirectory() && !this.options.rootPath.mkdirs()) {
+            throw new IllegalStateException("could not create " + this.options.rootPath);
+        }
+        this.storage = new UuidObjectStorage();
+        this.storage.init(this.options.rootPath, this.config);
+        // a previous run's models would not be known to any worker
+        this.storage.deleteEntries(new Filter<SoakModel>() {
+            @Override
+            public boolean matches(SoakModel object) {
+                return true;
+            }
+        }, SoakModel.class);
+
+        for (int i = 0; i < this.options.listeners; i++) {
+            this.storage.registerOnChangeListener(new OnStorageChangeListener() {
+                @Override
+                public void onChange() {
+                    SoakHarness.this.notifications.incrementAndGet();
+                }
+            }, SoakModel.class);
+        }
+
+        final List<Worker> workers = new ArrayList<Worker>();
+        for (int i = 0; i < this.options.threads; i++) {
+            final Worker worker = new Worker(i);
+            worker.seed(this.options.initialEntries / this.options.threads);
+            workers.add(worker);
+        }
+        this.storage.commit(SoakModel.class);
+        System.out.println("seeded " + this.options.initialEntries + " entries in " + this.options.rootPath.getAbsolutePath());
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (Worker worker : workers) {
+            threads.add(new Thread(worker, "soak-worker-" + worker.id));
+        }
+        threads.add(new Thread(new Committer(), "soak-committer"));
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        final long startNanos = System.nanoTime();
+        final long endNanos = startNanos + TimeUnit.SECONDS.toNanos(this.options.durationSeconds);
+        long lastReportNanos = startNanos;
+        while (System.nanoTime() < endNanos) {
+            Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(this.options.reportIntervalSeconds), Math.max(1, TimeUnit.NANOSECONDS.toMillis(endNanos - System.nanoTime()))));
+            final long now = System.nanoTime();
+            final Stats stats = this.intervalStats;
+            this.intervalStats = new Stats();
+            this.report(TimeUnit.NANOSECONDS.toSeconds(now - startNanos) + "s", stats, now - lastReportNanos);
+            lastReportNanos = now;
+        }
+
+        this.running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        this.storage.commit(SoakModel.class);
+        this.report("total", this.totalStats, System.nanoTime() - startNanos);
+
+        return this.verify(workers);
+    }
+
+    private boolean verify(List<Worker> workers) throws UuidObjectStorageException {
+        final Map<UUID, SoakModel> expected = new HashMap<UUID, SoakModel>();
+        for (Worker worker : workers) {
+            expected.putAll(worker.models);
+        }
+
+        final UuidObjectStorage restartedStorage = new UuidObjectStorage();
+        restartedStorage.init(this.options.rootPath, this.config);
+        final Map<UUID, SoakModel> persisted = restartedStorage.getEntries(SoakModel.class);
+
+        int mismatches = 0;
+        for (SoakModel model : expected.values()) {
+            final SoakModel persistedModel = persisted.get(model.getUuid());
+            if (persistedModel == null || persistedModel.getVersion() != model.getVersion() || !persistedModel.getPayload().equals(model.getPayload())) {
+                mismatches++;
+            }
+        }
+        mismatches += Math.max(0, persisted.size() - expected.size());
+        System.out.println("integrity after restart: " + persisted.size() + " entries, " + expected.size() + " expected, "
+                + mismatches + " mismatches, " + this.errors.get() + " errors");
+        return mismatches == 0 && this.errors.get() == 0;
+    }
+
+    private void report(String label, Stats stats, long elapsedNanos) {
+        final StringBuilder line = new StringBuilder(String.format("[%6s]", label));
+        long operations = 0;
+        for (LatencyHistogram histogram : stats.operations) {
+            operations += histogram.getCount();
+        }
+        line.append(String.format(" %8d ops/s", operations * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos)));
+        for (SoakOptions.Operation operation : SoakOptions.Operation.values()) {
+            appendLatencies(line, operation.name().toLowerCase(), stats.operations[operation.ordinal()]);
+        }
+        appendLatencies(line, "commit", stats.commits);
+
+        final Runtime runtime = Runtime.getRuntime();
+        final ClassFile classFile = new ClassFile(this.options.rootPath, SoakModel.class);
+        line.append(String.format(" | heap %dMB | files %dkB | notifications %d | errors %d",
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20,
+                (classFile.getDataFile().length() + classFile.getIndexFile().length()) >> 10,
+                this.notifications.get(), this.errors.get()));
+        System.out.println(line);
+    }
+
+    private static void appendLatencies(StringBuilder line, String name, LatencyHistogram histogram) {
+        if (histogram.getCount() > 0) {
+            line.append(String.format(" | %s p50 %dus p99 %dus max %dus", name,
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(50)),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99)),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getMaxNanos())));
+        }
+    }
+
+    private void recordError(String operation, Exception e) {
+        if (this.errors.incrementAndGet() <= 10) {
+            System.err.println(operation + " failed: " + e);
+        }
+    }
+
+    private static class Stats {
+        final LatencyHistogram[] operations = new LatencyHistogram[OPERATIONS];
+        final LatencyHistogram commits = new LatencyHistogram();
+
+        Stats() {
+            for (int i = 0; i < OPERATIONS; i++) {
+                this.operations[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    private class Committer implements Runnable {
+        @Override
+        public void run() {
+            while (SoakHarness.this.running) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(SoakHarness.this.options.commitIntervalMillis));
+                final long startNanos = System.nanoTime();
+                try {
+                    SoakHarness.this.storage.commit(SoakModel.class);
+                    final long durationNanos = System.nanoTime() - startNanos;
+                    SoakHarness.this.intervalStats.commits.record(durationNanos);
+                    SoakHarness.this.totalStats.commits.record(durationNanos);
+                } catch (UuidObjectStorageException e) {
+                    SoakHarness.this.recordError("commit", e);
+                }
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        final int id;
+        final Map<UUID, SoakModel> models = new HashMap<UUID, SoakModel>();
+        private final List<UUID> uuids = new ArrayList<UUID>();
+        private final Random random;
+        private final char[] payload;
+
+        Worker(int id) {
+            this.id = id;
+            this.random = new Random(id);
+            this.payload = new char[SoakHarness.this.options.payloadBytes];
+        }
+
+        void seed(int entries) throws UuidObjectStorageException {
+            final Map<UUID, SoakModel> seedModels = new HashMap<UUID, SoakModel>();
+            for (int i = 0; i < entries; i++) {
+                final SoakModel model = new SoakModel(this.id, 0, this.nextPayload());
+                seedModels.put(model.getUuid(), model);
+                this.remember(model);
+            }
+            SoakHarness.this.storage.addEntries(seedModels, SoakModel.class);
+        }
+
+        @Override
+        public void run() {
+            final int mixTotal = SoakHarness.this.options.mixTotal();
+            final long intervalNanos = SoakHarness.this.options.opsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(SoakHarness.this.options.threads) / SoakHarness.this.options.opsPerSecond : 0;
+            long nextNanos = System.nanoTime();
+            while (SoakHarness.this.running) {
+                if (intervalNanos > 0) {
+                    nextNanos += intervalNanos;
+                    final long waitNanos = nextNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                }
+
+                SoakOptions.Operation operation = SoakHarness.this.options.pick(this.random.nextInt(mixTotal));
+                if (this.uuids.isEmpty() && (operation == SoakOptions.Operation.GET || operation == SoakOptions.Operation.DELETE)) {
+                    operation = SoakOptions.Operation.ADD;
+                }
+                final long startNanos = System.nanoTime();
+                try {
+                    this.execute(operation);
+                    final long durationNanos = System.nanoTime() - startNanos;
+                    SoakHarness.this.intervalStats.operations[operation.ordinal()].record(durationNanos);
+                    SoakHarness.this.totalStats.operations[operation.ordinal()].record(durationNanos);
+                } catch (Exception e) {
+                    SoakHarness.this.recordError(operation.name().toLowerCase(), e);
+                }
+            }
+        }
+
+        private void execute(SoakOptions.Operation operation) throws UuidObjectStorageException {
+            final UuidObjectStorage storage = SoakHarness.this.storage;
+            switch (operation) {
+                case GET: {
+                    final SoakModel expected = this.models.get(this.uuids.get(this.random.nextInt(this.uuids.size())));
+                    final SoakModel actual = storage.getEntry(expected.getUuid(), SoakModel.class);
+                    if (actual.getVersion() != expected.getVersion()) {
+                        throw new IllegalStateException("read version " + actual.getVersion() + " of " + expected.getUuid() + ", expected " + expected.getVersion());
+                    }
+                    break;
+                }
+                case SCAN: {
+                    final int sample = this.random.nextInt(100);
+                    storage.getEntries(new Filter<SoakModel>() {
+                        @Override
+                        public boolean matches(SoakModel object) {
+                            return object.getWorker() == Worker.this.id && object.getVersion() % 100 == sample;
+                        }
+                    }, SoakModel.class);
+                    break;
+                }
+                case ADD: {
+                    final SoakModel model;
+                    if (!this.uuids.isEmpty() && this.random.nextBoolean()) {
+                        model = this.models.get(this.uuids.get(this.random.nextInt(this.uuids.size()))).next(this.nextPayload());
+                    } else {
+                        model = new SoakModel(this.id, 0, this.nextPayload());
+                    }
+                    storage.addEntry(model, SoakModel.class);
+                    this.remember(model);
+                    break;
+                }
+                case DELETE: {
+                    final int index = this.random.nextInt(this.uuids.size());
+                    final UUID uuid = this.uuids.get(index);
+                    storage.deleteEntry(this.models.get(uuid), SoakModel.class);
+                    this.models.remove(uuid);
+                    this.uuids.set(index, this.uuids.get(this.uuids.size() - 1));
+                    this.uuids.remove(this.uuids.size() - 1);
+                    break;
+                }
+            }
+        }
+
+        private void remember(SoakModel model) {
+            if (this.models.put(model.getUuid(), model) == null) {
+                this.uuids.add(model.getUuid());
+            }
+        }
+
+        private String nextPayload() {
+            for (int i = 0; i < this.payload.length; i++) {
+                this.payload[i] = (char) ('a' + this.random.nextInt(26));
+            }
+            return new String(this.payload);
+        }
+    }
+}
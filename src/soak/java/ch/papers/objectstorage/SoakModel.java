@@ -0,0 +1,36 @@
+package ch.papers.objectstorage;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+
+/**
+ * A model owned by one soak worker. Every update stores a new instance with a higher version.
+ */
+public class SoakModel extends AbstractUuidObject {
+    private int worker;
+    private long version;
+    private String payload;
+
+    public SoakModel(int worker, long version, String payload) {
+        this.worker = worker;
+        this.version = version;
+        this.payload = payload;
+    }
+
+    public SoakModel next(String payload) {
+        final SoakModel next = new SoakModel(this.worker, this.version + 1, payload);
+        next.uuid = this.uuid;
+        return next;
+    }
+
+    public int getWorker() {
+        return worker;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
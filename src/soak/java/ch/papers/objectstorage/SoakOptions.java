@@ -0,0 +1,106 @@
+package ch.papers.objectstorage;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Command line options of the {@link SoakHarness}, given as --name=value.
+ */
+public class SoakOptions {
+    public enum Operation {
+        GET,
+        SCAN,
+        ADD,
+        DELETE
+    }
+
+    File rootPath;
+    int durationSeconds = 60;
+    int threads = 4;
+    int opsPerSecond = 0;
+    int initialEntries = 10000;
+    int payloadBytes = 200;
+    int commitIntervalMillis = 1000;
+    int reportIntervalSeconds = 5;
+    int listeners = 1;
+    boolean lazyLoading;
+    final Map<Operation, Integer> mix = new EnumMap<Operation, Integer>(Operation.class);
+
+    SoakOptions() {
+        this.mix.put(Operation.GET, 70);
+        this.mix.put(Operation.SCAN, 2);
+        this.mix.put(Operation.ADD, 23);
+        this.mix.put(Operation.DELETE, 5);
+    }
+
+    static String usage() {
+        return "usage: SoakHarness --root=<dir> [--duration=<s>] [--threads=<n>] [--rate=<ops/s, 0 unlimited>]\n"
+                + "       [--entries=<initial entries>] [--payload=<bytes>] [--commit-interval=<ms>]\n"
+                + "       [--report-interval=<s>] [--listeners=<n>] [--lazy] [--mix=get:70,scan:2,add:23,delete:5]";
+    }
+
+    static SoakOptions parse(String[] args) {
+        final SoakOptions options = new SoakOptions();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            final String name = separator < 0 ? arg : arg.substring(0, separator);
+            final String value = separator < 0 ? "" : arg.substring(separator + 1);
+            if (name.equals("--root")) {
+                options.rootPath = new File(value);
+            } else if (name.equals("--duration")) {
+                options.durationSeconds = Integer.parseInt(value);
+            } else if (name.equals("--threads")) {
+                options.threads = Integer.parseInt(value);
+            } else if (name.equals("--rate")) {
+                options.opsPerSecond = Integer.parseInt(value);
+            } else if (name.equals("--entries")) {
+                options.initialEntries = Integer.parseInt(value);
+            } else if (name.equals("--payload")) {
+                options.payloadBytes = Integer.parseInt(value);
+            } else if (name.equals("--commit-interval")) {
+                options.commitIntervalMillis = Integer.parseInt(value);
+            } else if (name.equals("--report-interval")) {
+                options.reportIntervalSeconds = Integer.parseInt(value);
+            } else if (name.equals("--listeners")) {
+                options.listeners = Integer.parseInt(value);
+            } else if (name.equals("--lazy")) {
+                options.lazyLoading = true;
+            } else if (name.equals("--mix")) {
+                options.mix.clear();
+                for (String share : value.split(",")) {
+                    final String[] parts = share.split(":");
+                    options.mix.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+                }
+            } else {
+                throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        if (options.rootPath == null) {
+            throw new IllegalArgumentException("--root is required");
+        }
+        return options;
+    }
+
+    /**
+     * @param roll a number between 0 (inclusive) and the sum of the mix shares (exclusive)
+     * @return the operation the roll falls on
+     */
+    Operation pick(int roll) {
+        for (Map.Entry<Operation, Integer> share : this.mix.entrySet()) {
+            roll -= share.getValue();
+            if (roll < 0) {
+                return share.getKey();
+            }
+        }
+        return Operation.GET;
+    }
+
+    int mixTotal() {
+        int total = 0;
+        for (int share : this.mix.values()) {
+            total += share;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,22 @@
+package ch.papers.objectstorage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FailureLogTest {
+
+    @Test
+    public void testRepeatedFailuresAreCountedWithinInterval() {
+        final FailureLog failureLog = new FailureLog("test task", FailureLog.DEFAULT_INTERVAL_MILLIS);
+        Assert.assertTrue(failureLog.log(new IllegalStateException("first")));
+        Assert.assertFalse(failureLog.log(new IllegalStateException("second")));
+        Assert.assertFalse(failureLog.log(new IllegalStateException("third")));
+    }
+
+    @Test
+    public void testFailuresArePrintedAgainAfterInterval() {
+        final FailureLog failureLog = new FailureLog("test task", 0);
+        Assert.assertTrue(failureLog.log(new IllegalStateException("first")));
+        Assert.assertTrue(failureLog.log(new IllegalStateException("second")));
+    }
+}
@@ -1,16 +1,48 @@
 package ch.papers.objectstorage;
 
+import ch.papers.objectstorage.adapters.GenerateAdapter;
+import ch.papers.objectstorage.adapters.GeneratedAdapterFactory;
 import ch.papers.objectstorage.filters.Filter;
+import ch.papers.objectstorage.filters.UuidFilter;
+import ch.papers.objectstorage.listeners.BlockingOnResultListener;
 import ch.papers.objectstorage.listeners.DummyOnResultListener;
 import ch.papers.objectstorage.listeners.OnResultListener;
 import ch.papers.objectstorage.listeners.OnStorageChangeListener;
+import ch.papers.objectstorage.metrics.ClassMetrics;
+import ch.papers.objectstorage.metrics.DefaultMetricsRegistry;
+import ch.papers.objectstorage.metrics.StorageMetrics;
+import ch.papers.objectstorage.metrics.StorageOperation;
 import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.mutators.Mutator;
+import ch.papers.objectstorage.persistence.RecordStorage;
+import ch.papers.objectstorage.persistence.Snapshot;
+import ch.papers.objectstorage.replication.Change;
+import ch.papers.objectstorage.text.TextQuery;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
 
 /**
  * To work on unit tests, switch the Test Artifact in the Build Variants view.
@@ -18,6 +50,9 @@ import java.util.concurrent.CountDownLatch;
 public class ObjectStorageUnitTest {
     public final static File STORAGE_ROOT = new File(".");
 
+    private final List<File> storageRoots = new ArrayList<File>();
+
+    @GenerateAdapter
     public class TestModel extends AbstractUuidObject {
         private final String name;
         private final String description;
@@ -36,6 +71,13 @@ public class ObjectStorageUnitTest {
             return description;
         }
 
+        public TestModel withDescription(String description) {
+            final TestModel copy = new TestModel(this.name, description);
+            copy.uuid = this.uuid;
+            copy.nestedChild = this.nestedChild;
+            return copy;
+        }
+
         public TestModel getNestedChild() {
             return nestedChild;
         }
@@ -163,6 +205,8 @@ public class ObjectStorageUnitTest {
                 }
             }, TestModel.class).size(),1);
 
+            UuidObjectStorage.getInstance().deleteEntry(syncroEntry, TestModel.class);
+            // deleting a missing entry is not an error
             UuidObjectStorage.getInstance().deleteEntry(syncroEntry, TestModel.class);
             UuidObjectStorage.getInstance().deleteEntries(new Filter<TestModel>() {
                 @Override
@@ -194,6 +238,759 @@ public class ObjectStorageUnitTest {
 
     }
 
+    @Test
+    public void testFutureOperations() throws Exception {
+        UuidObjectStorage.getInstance().init(STORAGE_ROOT);
+        final TestModel model = new TestModel("future", "composed");
+
+        final TestModel fetched = UuidObjectStorage.getInstance().addEntryAsync(model, TestModel.class)
+                .thenCompose(added -> UuidObjectStorage.getInstance().getEntryAsync(added.getUuid(), TestModel.class))
+                .get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(model, fetched);
+
+        // the class is loaded now, so point operations complete on the calling thread
+        Assert.assertTrue(UuidObjectStorage.getInstance().getEntryAsync(model.getUuid(), TestModel.class).isDone());
+        Assert.assertNull(UuidObjectStorage.getInstance().getEntryAsync(UUID.randomUUID(), TestModel.class).get());
+
+        final Map<UUID, TestModel> matched = UuidObjectStorage.getInstance().getEntriesAsync(new Filter<TestModel>() {
+            @Override
+            public boolean matches(TestModel object) {
+                return "composed".equals(object.getDescription());
+            }
+        }, TestModel.class).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(model, matched.get(model.getUuid()));
+
+        // failures surface as the original exception instead of a message
+        try {
+            UuidObjectStorage.getInstance().getEntriesAsync(new Filter<TestModel>() {
+                @Override
+                public boolean matches(TestModel object) {
+                    throw new IllegalStateException("broken filter");
+                }
+            }, TestModel.class).get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        UuidObjectStorage.getInstance().commitAsync(TestModel.class).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(model, UuidObjectStorage.getInstance().deleteEntryAsync(model, TestModel.class).get());
+        Assert.assertNull(UuidObjectStorage.getInstance().getEntryAsync(model.getUuid(), TestModel.class).get());
+        UuidObjectStorage.getInstance().commitAsync().get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSynchronousReadsDoNotAllocate() throws Exception {
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(createStorageRoot());
+        final UUID[] uuids = new UUID[100];
+        for (int i = 0; i < uuids.length; i++) {
+            final TestModel model = new TestModel("read" + i, "desc");
+            storage.addEntry(model, TestModel.class);
+            uuids[i] = model.getUuid();
+        }
+
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final int reads = 200000;
+        for (int i = 0; i < reads; i++) {
+            storage.getEntry(uuids[i % uuids.length], TestModel.class);
+        }
+        final long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < reads; i++) {
+            storage.getEntry(uuids[i % uuids.length], TestModel.class);
+        }
+        final long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.println("allocated " + (double) allocated / reads + " bytes per synchronous getEntry");
+        Assert.assertTrue(allocated < reads);
+    }
+
+    @Test
+    public void testOverflowPolicies() throws Exception {
+        final UuidObjectStorage rejectingStorage = new UuidObjectStorage();
+        rejectingStorage.init(createStorageRoot(), new UuidObjectStorageConfig().setAsyncThreads(1).setAsyncQueueCapacity(1).setOverflowPolicy(OverflowPolicy.REJECT));
+        final CountDownLatch release = new CountDownLatch(1);
+        final BlockingOnResultListener<Map<UUID, TestModel>> blocked = occupyOperationThread(rejectingStorage, release);
+        final BlockingOnResultListener<Map<UUID, TestModel>> queued = new BlockingOnResultListener<Map<UUID, TestModel>>();
+        rejectingStorage.getEntries(queued, TestModel.class);
+        Assert.assertEquals(1, rejectingStorage.getQueuedOperations());
+
+        final BlockingOnResultListener<Map<UUID, TestModel>> rejected = new BlockingOnResultListener<Map<UUID, TestModel>>();
+        rejectingStorage.getEntries(rejected, TestModel.class);
+        Assert.assertEquals(0, rejected.getCountDownLatch().getCount());
+        Assert.assertFalse(rejected.isSuccess());
+        try {
+            rejectingStorage.getEntriesAsync(TestModel.class).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(2, rejectingStorage.getOverflowedOperations());
+
+        release.countDown();
+        blocked.getCountDownLatch().await();
+        queued.getCountDownLatch().await();
+        Assert.assertTrue(queued.isSuccess());
+
+        final UuidObjectStorage callerRunsStorage = new UuidObjectStorage();
+        callerRunsStorage.init(createStorageRoot(), new UuidObjectStorageConfig().setAsyncThreads(1).setAsyncQueueCapacity(1).setOverflowPolicy(OverflowPolicy.CALLER_RUNS));
+        final CountDownLatch callerRunsRelease = new CountDownLatch(1);
+        occupyOperationThread(callerRunsStorage, callerRunsRelease);
+        callerRunsStorage.getEntries(new BlockingOnResultListener<Map<UUID, TestModel>>(), TestModel.class);
+        final Thread caller = Thread.currentThread();
+        final BlockingOnResultListener<Thread> overflowed = new BlockingOnResultListener<Thread>();
+        callerRunsStorage.getEntries(new OnResultListener<Map<UUID, TestModel>>() {
+            @Override
+            public void onSuccess(Map<UUID, TestModel> result) {
+                overflowed.onSuccess(Thread.currentThread());
+            }
+
+            @Override
+            public void onError(String message) {
+                overflowed.onError(message);
+            }
+        }, TestModel.class);
+        Assert.assertSame(caller, overflowed.getResultObject());
+        callerRunsRelease.countDown();
+    }
+
+    private static BlockingOnResultListener<Map<UUID, TestModel>> occupyOperationThread(UuidObjectStorage storage, final CountDownLatch release) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final BlockingOnResultListener<Map<UUID, TestModel>> done = new BlockingOnResultListener<Map<UUID, TestModel>>();
+        storage.getEntries(new OnResultListener<Map<UUID, TestModel>>() {
+            @Override
+            public void onSuccess(Map<UUID, TestModel> result) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.onSuccess(result);
+            }
+
+            @Override
+            public void onError(String message) {
+                started.countDown();
+                done.onError(message);
+            }
+        }, TestModel.class);
+        started.await();
+        return done;
+    }
+
+    @Test
+    public void testOptimisticUpdates() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(storageRoot);
+        final TestModel model = new TestModel("counter", "initial");
+        storage.addEntry(model, TestModel.class);
+        Assert.assertEquals(1, model.getVersion());
+
+        final TestModel first = model.withDescription("first");
+        Assert.assertTrue(storage.replaceEntry(first, 1, TestModel.class));
+        Assert.assertEquals(2, first.getVersion());
+        // a writer that read version 1 as well has to retry, its copy keeps its version
+        final TestModel lost = model.withDescription("lost");
+        Assert.assertFalse(storage.replaceEntry(lost, 1, TestModel.class));
+        Assert.assertEquals(0, lost.getVersion());
+        Assert.assertEquals("first", storage.getEntry(model.getUuid(), TestModel.class).getDescription());
+
+        // an entry added again after a delete continues above the deleted version, a stale copy can't replace it
+        final TestModel original = new TestModel("original", "first life");
+        storage.addEntry(original, TestModel.class);
+        storage.deleteEntry(original, TestModel.class);
+        final TestModel recreated = original.withDescription("second life");
+        storage.addEntry(recreated, TestModel.class);
+        Assert.assertEquals(2, recreated.getVersion());
+        Assert.assertFalse(storage.replaceEntry(original.withDescription("stale"), 1, TestModel.class));
+        Assert.assertEquals("second life", storage.getEntry(original.getUuid(), TestModel.class).getDescription());
+
+        storage.compute(model.getUuid(), current -> current.withDescription("0"), TestModel.class);
+        final int writers = 4;
+        final int increments = 500;
+        final CountDownLatch done = new CountDownLatch(writers);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < writers; i++) {
+            new Thread(() -> {
+                try {
+                    for (int j = 0; j < increments; j++) {
+                        storage.compute(model.getUuid(), current -> current.withDescription(String.valueOf(Integer.parseInt(current.getDescription()) + 1)), TestModel.class);
+                    }
+                } catch (UuidObjectStorageException e) {
+                    failures.incrementAndGet();
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        Assert.assertEquals(0, failures.get());
+        final TestModel counted = storage.getEntry(model.getUuid(), TestModel.class);
+        Assert.assertEquals(String.valueOf(writers * increments), counted.getDescription());
+        Assert.assertEquals(3 + writers * increments, counted.getVersion());
+
+        // versions are persisted, and still checked when entries are decoded on demand
+        storage.commit(TestModel.class);
+        final UuidObjectStorage reopened = new UuidObjectStorage();
+        reopened.init(storageRoot, new UuidObjectStorageConfig().setLazyLoading(true));
+        Assert.assertEquals(counted.getVersion(), reopened.getEntry(model.getUuid(), TestModel.class).getVersion());
+        Assert.assertFalse(reopened.replaceEntry(model.withDescription("stale"), 2, TestModel.class));
+        Assert.assertTrue(reopened.replaceEntry(model.withDescription("reopened"), counted.getVersion(), TestModel.class));
+        Assert.assertNull(reopened.compute(model.getUuid(), current -> null, TestModel.class));
+        Assert.assertFalse(reopened.getEntries(TestModel.class).containsKey(model.getUuid()));
+
+        // the versions of deleted entries are persisted with the class
+        reopened.commit(TestModel.class);
+        final UuidObjectStorage recreating = new UuidObjectStorage();
+        recreating.init(storageRoot);
+        final TestModel readded = model.withDescription("readded");
+        recreating.addEntry(readded, TestModel.class);
+        Assert.assertEquals(counted.getVersion() + 2, readded.getVersion());
+    }
+
+    @Test
+    public void testUpdateEntries() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(storageRoot);
+        // enough entries to be updated in parallel
+        final Map<UUID, TestModel> models = new HashMap<UUID, TestModel>();
+        for (int i = 0; i < 20000; i++) {
+            final TestModel model = new TestModel("update" + i, i % 2 == 0 ? "even" : "odd");
+            models.put(model.getUuid(), model);
+        }
+        storage.addEntries(models, TestModel.class);
+        storage.commit(TestModel.class);
+
+        final AtomicInteger notifications = new AtomicInteger();
+        storage.registerOnChangeListener(new OnStorageChangeListener() {
+            @Override
+            public void onChange() {
+                notifications.incrementAndGet();
+            }
+        }, TestModel.class);
+        final Filter<TestModel> evenFilter = new Filter<TestModel>() {
+            @Override
+            public boolean matches(TestModel object) {
+                return "even".equals(object.getDescription());
+            }
+        };
+        final int updated = storage.updateEntries(evenFilter, new Mutator<TestModel>() {
+            @Override
+            public TestModel mutate(TestModel object) {
+                return object.withDescription("updated");
+            }
+        }, TestModel.class);
+        Assert.assertEquals(models.size() / 2, updated);
+        Assert.assertEquals(1, notifications.get());
+        Assert.assertTrue(storage.getEntries(evenFilter, TestModel.class).isEmpty());
+        for (TestModel model : storage.getEntries(TestModel.class).values()) {
+            final boolean even = Integer.parseInt(model.getName().substring("update".length())) % 2 == 0;
+            Assert.assertEquals(even ? "updated" : "odd", model.getDescription());
+            Assert.assertEquals(even ? 2 : 1, model.getVersion());
+        }
+
+        // in lazily opened classes only the updated entries are re-encoded on commit
+        storage.commit(TestModel.class);
+        final UuidObjectStorage lazyStorage = new UuidObjectStorage();
+        lazyStorage.init(storageRoot, new UuidObjectStorageConfig().setLazyLoading(true));
+        final TestModel first = models.values().iterator().next();
+        Assert.assertEquals(1, (int) lazyStorage.updateEntriesAsync(new UuidFilter(first.getUuid()), new Mutator<TestModel>() {
+            @Override
+            public TestModel mutate(TestModel object) {
+                return object.withDescription("lazy");
+            }
+        }, TestModel.class).get(10, TimeUnit.SECONDS));
+        lazyStorage.commit(TestModel.class);
+        final UuidObjectStorage reopened = new UuidObjectStorage();
+        reopened.init(storageRoot);
+        Assert.assertEquals("lazy", reopened.getEntry(first.getUuid(), TestModel.class).getDescription());
+        Assert.assertEquals(models.size(), reopened.getEntries(TestModel.class).size());
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(storageRoot, new UuidObjectStorageConfig()
+                .setTimeToLive(TestModel.class, 200, TimeUnit.MILLISECONDS)
+                .setExpiryResolution(10, TimeUnit.MILLISECONDS));
+        final Map<UUID, TestModel> sessions = new HashMap<UUID, TestModel>();
+        for (int i = 0; i < 1000; i++) {
+            final TestModel session = new TestModel("session" + i, "expires");
+            sessions.put(session.getUuid(), session);
+        }
+        storage.addEntries(sessions, TestModel.class);
+        final TestModel kept = new TestModel("kept", "forever");
+        storage.addEntry(kept, TestModel.class);
+        Assert.assertTrue(storage.getExpirationTime(kept.getUuid(), TestModel.class) > System.currentTimeMillis());
+        Assert.assertTrue(storage.setTimeToLive(kept.getUuid(), 0, TimeUnit.MILLISECONDS, TestModel.class));
+        Assert.assertEquals(0, storage.getExpirationTime(kept.getUuid(), TestModel.class));
+        Assert.assertFalse(storage.setTimeToLive(UUID.randomUUID(), 1, TimeUnit.SECONDS, TestModel.class));
+
+        final AtomicInteger notifications = new AtomicInteger();
+        storage.registerOnChangeListener(new OnStorageChangeListener() {
+            @Override
+            public void onChange() {
+                notifications.incrementAndGet();
+            }
+        }, TestModel.class);
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (storage.getEntries(TestModel.class).size() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(Collections.singletonMap(kept.getUuid(), kept), storage.getEntries(TestModel.class));
+        // expired entries are removed in batches, one notification per tick rather than per entry
+        Assert.assertTrue(notifications.get() > 0 && notifications.get() < 10);
+
+        // expiration times are persisted on commit and survive a restart
+        final TestModel session = new TestModel("session", "per entry");
+        storage.addEntry(session, TestModel.class);
+        Assert.assertTrue(storage.setTimeToLive(session.getUuid(), 1, TimeUnit.HOURS, TestModel.class));
+        final long expirationTime = storage.getExpirationTime(session.getUuid(), TestModel.class);
+        storage.commit(TestModel.class);
+        final File expiryFile = new File(storageRoot, TestModel.class.getSimpleName() + Constants.EXPIRY_FILE_EXTENSION);
+        Assert.assertTrue(expiryFile.isFile());
+
+        final UuidObjectStorage reopened = new UuidObjectStorage();
+        reopened.init(storageRoot, new UuidObjectStorageConfig().setExpiryResolution(10, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(expirationTime, reopened.getExpirationTime(session.getUuid(), TestModel.class));
+        Assert.assertEquals(0, reopened.getExpirationTime(kept.getUuid(), TestModel.class));
+        Assert.assertTrue(reopened.setTimeToLive(session.getUuid(), 50, TimeUnit.MILLISECONDS, TestModel.class));
+        while (reopened.getEntries(TestModel.class).size() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, reopened.getEntries(TestModel.class).size());
+        Assert.assertEquals(1, ((DefaultMetricsRegistry) reopened.getMetricsRegistry()).getClassMetrics(TestModel.class).getCount(StorageOperation.EXPIRE));
+        reopened.commit(TestModel.class);
+        Assert.assertFalse(expiryFile.exists());
+    }
+
+    @Test
+    public void testExportImport() throws Exception {
+        final File sourceRoot = createStorageRoot();
+        final UuidObjectStorage source = new UuidObjectStorage();
+        source.init(sourceRoot);
+        // more entries than fit into one import chunk
+        final Map<UUID, TestModel> models = new HashMap<UUID, TestModel>();
+        for (int i = 0; i < 25000; i++) {
+            final TestModel model = new TestModel("export" + i, "line\n" + i);
+            models.put(model.getUuid(), model);
+        }
+        source.addEntries(models, TestModel.class);
+        source.commit(TestModel.class);
+        final ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        Assert.assertEquals(models.size(), source.exportClass(TestModel.class, exported));
+        final String[] lines = exported.toString("UTF-8").split("\n");
+        Assert.assertEquals(models.size(), lines.length);
+
+        // lazily loaded entries are copied without being decoded, and end up as the same lines
+        final UuidObjectStorage lazySource = new UuidObjectStorage();
+        lazySource.init(sourceRoot, new UuidObjectStorageConfig().setLazyLoading(true));
+        final ByteArrayOutputStream lazyExported = new ByteArrayOutputStream();
+        Assert.assertEquals(models.size(), lazySource.exportClass(TestModel.class, lazyExported));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(lines)), new HashSet<String>(Arrays.asList(lazyExported.toString("UTF-8").split("\n"))));
+
+        final File targetRoot = createStorageRoot();
+        final UuidObjectStorage target = new UuidObjectStorage();
+        target.init(targetRoot);
+        final AtomicInteger notifications = new AtomicInteger();
+        target.registerOnChangeListener(new OnStorageChangeListener() {
+            @Override
+            public void onChange() {
+                notifications.incrementAndGet();
+            }
+        }, TestModel.class);
+        Assert.assertEquals(models.size(), target.importClass(TestModel.class, new ByteArrayInputStream(exported.toByteArray())));
+        Assert.assertEquals(1, notifications.get());
+
+        // the import has been committed
+        final UuidObjectStorage reopened = new UuidObjectStorage();
+        reopened.init(targetRoot);
+        final Map<UUID, TestModel> imported = reopened.getEntries(TestModel.class);
+        Assert.assertEquals(models.keySet(), imported.keySet());
+        for (TestModel model : models.values()) {
+            Assert.assertEquals(model.getDescription(), imported.get(model.getUuid()).getDescription());
+        }
+
+        try {
+            target.importClass(TestModel.class, new ByteArrayInputStream("{\"name\":\"no uuid\"}\n".getBytes("UTF-8")));
+            Assert.fail("an entry without uuid must not be imported");
+        } catch (UuidObjectStorageException e) {
+            Assert.assertEquals(models.size(), target.getEntries(TestModel.class).size());
+        }
+    }
+
+    @Test
+    public void testReplication() throws Exception {
+        final File leaderRoot = createStorageRoot();
+        final UuidObjectStorage leader = new UuidObjectStorage();
+        leader.init(leaderRoot, new UuidObjectStorageConfig().setChangeFeedEnabled(true));
+        final TestModel first = new TestModel("first", "1");
+        final TestModel second = new TestModel("second", "2");
+        leader.addEntry(first, TestModel.class);
+        leader.addEntry(second, TestModel.class);
+        leader.replaceEntry(first.withDescription("1b"), 1, TestModel.class);
+        leader.deleteEntry(second, TestModel.class);
+
+        final List<Change<TestModel>> changes = leader.getChanges(TestModel.class, 0, 100);
+        Assert.assertEquals(4, changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            Assert.assertEquals(i + 1, changes.get(i).getSequence());
+        }
+        Assert.assertEquals("1b", changes.get(2).getEntry().getDescription());
+        Assert.assertTrue(changes.get(3).isDelete());
+        Assert.assertEquals(1, leader.getChanges(TestModel.class, 2, 1).size());
+
+        final File followerRoot = createStorageRoot();
+        final UuidObjectStorage follower = new UuidObjectStorage();
+        follower.init(followerRoot, new UuidObjectStorageConfig()
+                .setLeader(leaderRoot, TestModel.class)
+                .setFollowInterval(10, TimeUnit.MILLISECONDS));
+        awaitReplica(leader, follower);
+
+        // committed changes are cut off the feed, followers that are behind start over from the class file
+        leader.commit(TestModel.class);
+        Assert.assertTrue(leader.getChanges(TestModel.class, 0, 100).isEmpty());
+        final Map<UUID, TestModel> more = new HashMap<UUID, TestModel>();
+        for (int i = 0; i < 100; i++) {
+            final TestModel model = new TestModel("more" + i, String.valueOf(i));
+            more.put(model.getUuid(), model);
+        }
+        leader.addEntries(more, TestModel.class);
+        Assert.assertEquals(5, leader.getChanges(TestModel.class, 0, 100).get(0).getSequence());
+        awaitReplica(leader, follower);
+        final ClassMetrics followerMetrics = ((DefaultMetricsRegistry) follower.getMetricsRegistry()).getClassMetrics(TestModel.class);
+        Assert.assertTrue(followerMetrics.getCount(StorageOperation.FOLLOW) > 0);
+        Assert.assertEquals(0, followerMetrics.getErrors(StorageOperation.FOLLOW));
+
+        final File lateFollowerRoot = createStorageRoot();
+        final UuidObjectStorage lateFollower = new UuidObjectStorage();
+        lateFollower.init(lateFollowerRoot, new UuidObjectStorageConfig()
+                .setLeader(leaderRoot, TestModel.class)
+                .setFollowInterval(10, TimeUnit.MILLISECONDS));
+        awaitReplica(leader, lateFollower);
+        // the lag is measured at the start of a poll, the next one finds nothing left to apply
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (lateFollower.getReplicationLag().get(TestModel.class) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(Long.valueOf(0), lateFollower.getReplicationLag().get(TestModel.class));
+
+        // followers commit what they applied, a promoted follower has a fresh copy on disk
+        follower.stopFollowing();
+        lateFollower.stopFollowing();
+        final UuidObjectStorage promoted = new UuidObjectStorage();
+        promoted.init(followerRoot);
+        Assert.assertEquals(describe(leader.getEntries(TestModel.class)), describe(promoted.getEntries(TestModel.class)));
+    }
+
+    @Test
+    public void testSnapshots() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(storageRoot, new UuidObjectStorageConfig().setChangeFeedEnabled(true));
+        final TestModel model = new TestModel("snapshot", "first");
+        storage.addEntry(model, TestModel.class);
+        storage.addEntry(new UnpersistedModel(), UnpersistedModel.class);
+        storage.commit();
+
+        final File snapshotsRoot = createStorageRoot();
+        final File first = new File(snapshotsRoot, "first");
+        final Snapshot fullSnapshot = storage.snapshot(first);
+        Assert.assertTrue(fullSnapshot.getFileNames().contains("TestModel" + Constants.DATA_FILE_EXTENSION));
+        Assert.assertFalse(fullSnapshot.getFileNames().contains("TestModel" + Constants.CHANGE_LOG_FILE_EXTENSION));
+        Assert.assertEquals(fullSnapshot.getFileNames().size(), fullSnapshot.getLinkedFiles() + fullSnapshot.getCopiedFiles());
+
+        // commits after the snapshot replace the files of the storage, not the ones of the snapshot
+        storage.addEntry(new TestModel("later", "second"), TestModel.class);
+        storage.commit(TestModel.class);
+        final UuidObjectStorage restored = new UuidObjectStorage();
+        restored.init(first, new UuidObjectStorageConfig().setLazyLoading(true));
+        Assert.assertEquals(Collections.singleton(model.getUuid()), restored.getEntries(TestModel.class).keySet());
+        Assert.assertEquals(1, restored.getEntries(UnpersistedModel.class).size());
+
+        // only the files of the class that has been committed since are taken from the storage again
+        final File second = new File(snapshotsRoot, "second");
+        final Snapshot incrementalSnapshot = storage.snapshot(second, first);
+        int unchangedFiles = 0;
+        for (String fileName : incrementalSnapshot.getFileNames()) {
+            if (fileName.startsWith("UnpersistedModel.")) {
+                unchangedFiles++;
+            }
+        }
+        Assert.assertTrue(unchangedFiles > 0);
+        Assert.assertEquals(unchangedFiles, incrementalSnapshot.getReusedFiles());
+        final UuidObjectStorage restoredIncrement = new UuidObjectStorage();
+        restoredIncrement.init(second);
+        Assert.assertEquals(2, restoredIncrement.getEntries(TestModel.class).size());
+
+        try {
+            storage.snapshot(first);
+            Assert.fail("a snapshot must not overwrite another one");
+        } catch (UuidObjectStorageException e) {
+            Assert.assertEquals(fullSnapshot.getFileNames(), Snapshot.read(first).getFileNames());
+        }
+    }
+
+    @Test
+    public void testQueryCache() throws Exception {
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(createStorageRoot(), new UuidObjectStorageConfig().setMaxCachedQueries(2));
+        final TestModel first = new TestModel("first", "cached");
+        storage.addEntry(first, TestModel.class);
+        storage.addEntry(new TestModel("second", "other"), TestModel.class);
+        final Filter<TestModel> cachedFilter = new Filter<TestModel>() {
+            @Override
+            public boolean matches(TestModel object) {
+                return object.getDescription().equals("cached");
+            }
+        };
+
+        Assert.assertEquals(1, storage.getEntries(cachedFilter, TestModel.class).size());
+        final Map<UUID, TestModel> cachedResult = storage.getEntries(cachedFilter, TestModel.class);
+        Assert.assertEquals(Collections.singleton(first.getUuid()), cachedResult.keySet());
+        Assert.assertEquals(1, storage.getQueryCacheHits());
+        Assert.assertEquals(1, storage.getQueryCacheMisses());
+        // callers get their own copy of a cached result
+        cachedResult.clear();
+        Assert.assertEquals(1, storage.getEntries(cachedFilter, TestModel.class).size());
+
+        // filters with equals share their results
+        storage.getEntries(TestModel.class);
+        Assert.assertEquals(2, storage.getEntries(TestModel.class).size());
+        Assert.assertEquals(3, storage.getQueryCacheHits());
+
+        // a change of the class outdates its results, a change of another class doesn't
+        storage.addEntry(new UnpersistedModel(), UnpersistedModel.class);
+        Assert.assertEquals(2, storage.getEntries(TestModel.class).size());
+        Assert.assertEquals(4, storage.getQueryCacheHits());
+        storage.addEntry(new TestModel("third", "cached"), TestModel.class);
+        Assert.assertEquals(2, storage.getEntries(cachedFilter, TestModel.class).size());
+        storage.deleteEntry(first, TestModel.class);
+        Assert.assertEquals(1, storage.getEntries(cachedFilter, TestModel.class).size());
+        Assert.assertEquals(4, storage.getQueryCacheHits());
+
+        // the least recently used result is evicted
+        storage.getEntries(new UuidFilter(first.getUuid()), TestModel.class);
+        Assert.assertEquals(2, storage.getCachedQueries());
+        storage.getEntries(cachedFilter, TestModel.class);
+        Assert.assertEquals(5, storage.getQueryCacheHits());
+        storage.getEntries(TestModel.class);
+        Assert.assertEquals(2, storage.getCachedQueries());
+        storage.getEntries(cachedFilter, TestModel.class);
+        Assert.assertEquals(6, storage.getQueryCacheHits());
+        storage.getEntries(new UuidFilter(first.getUuid()), TestModel.class);
+        Assert.assertEquals(6, storage.getQueryCacheHits());
+    }
+
+    @Test
+    public void testStringDeduplication() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorage writer = new UuidObjectStorage();
+        writer.init(storageRoot);
+        final Map<UUID, TestModel> models = new HashMap<UUID, TestModel>();
+        for (int i = 0; i < 300; i++) {
+            final TestModel model = new TestModel("name" + (i % 3), "status" + (i % 3));
+            models.put(model.getUuid(), model);
+        }
+        writer.addEntries(models, TestModel.class);
+        writer.commit(TestModel.class);
+
+        // only the configured field shares its instances
+        final UuidObjectStorage fieldStorage = new UuidObjectStorage();
+        fieldStorage.init(storageRoot, new UuidObjectStorageConfig().setStringDeduplication(TestModel.class, "description"));
+        final Map<String, TestModel> firstByDescription = new HashMap<String, TestModel>();
+        for (TestModel model : fieldStorage.getEntries(TestModel.class).values()) {
+            final TestModel first = firstByDescription.get(model.getDescription());
+            if (first == null) {
+                firstByDescription.put(model.getDescription(), model);
+            } else {
+                Assert.assertSame(first.getDescription(), model.getDescription());
+                Assert.assertNotSame(first.getName(), model.getName());
+            }
+        }
+        Assert.assertEquals(3, firstByDescription.size());
+        Assert.assertEquals(models.size() - 3, fieldStorage.getDeduplicatedStrings());
+
+        // lazily loaded entries are deduplicated when they are decoded
+        final UuidObjectStorage lazyStorage = new UuidObjectStorage();
+        lazyStorage.init(storageRoot, new UuidObjectStorageConfig().setLazyLoading(true).setStringDeduplication(TestModel.class));
+        final Map<String, String> names = new HashMap<String, String>();
+        for (TestModel model : lazyStorage.getEntries(TestModel.class).values()) {
+            if (names.containsKey(model.getName())) {
+                Assert.assertSame(names.get(model.getName()), model.getName());
+            }
+            names.put(model.getName(), model.getName());
+            Assert.assertEquals(models.get(model.getUuid()).getDescription(), model.getDescription());
+        }
+        Assert.assertEquals(2 * (models.size() - 3), lazyStorage.getDeduplicatedStrings());
+
+        final UuidObjectStorage misconfigured = new UuidObjectStorage();
+        try {
+            misconfigured.init(storageRoot, new UuidObjectStorageConfig().setStringDeduplication(TestModel.class, "status"));
+            Assert.fail("an unknown field must be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertFalse(misconfigured.isInitialised());
+        }
+    }
+
+    @Test
+    public void testTextIndex() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorageConfig config = new UuidObjectStorageConfig().setTextIndex(TestModel.class, "name", "description");
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(storageRoot, config);
+        final TestModel apple = new TestModel("Apple pie", "Baked with apples and Cinnamon");
+        final TestModel pear = new TestModel("Pear tart", "baked, with pears");
+        final TestModel plum = new TestModel("Plum jam", "boiled plums");
+        storage.addEntry(apple, TestModel.class);
+        storage.addEntry(pear, TestModel.class);
+        storage.addEntry(plum, TestModel.class);
+
+        Assert.assertEquals(new HashSet<UUID>(Arrays.asList(apple.getUuid(), pear.getUuid())), storage.search(TextQuery.token("BAKED"), TestModel.class));
+        Assert.assertEquals(Collections.singleton(apple.getUuid()), storage.getEntries(TextQuery.token("baked cinnamon"), TestModel.class).keySet());
+        Assert.assertEquals(new HashSet<UUID>(Arrays.asList(apple.getUuid(), pear.getUuid(), plum.getUuid())), storage.search(TextQuery.prefix("P"), TestModel.class));
+        Assert.assertEquals(Collections.singleton(plum.getUuid()), storage.search(TextQuery.prefix("Pl"), TestModel.class));
+        Assert.assertEquals(Collections.singleton(pear.getUuid()), storage.search(TextQuery.all(TextQuery.prefix("pea"), TextQuery.token("with")), TestModel.class));
+        Assert.assertEquals(new HashSet<UUID>(Arrays.asList(apple.getUuid(), plum.getUuid())), storage.search(TextQuery.any(TextQuery.token("jam"), TextQuery.token("pie")), TestModel.class));
+        Assert.assertTrue(storage.search(TextQuery.token("!?"), TestModel.class).isEmpty());
+
+        // updates replace the tokens of an entry, deletes drop them
+        storage.addEntry(plum.withDescription("baked plums"), TestModel.class);
+        storage.deleteEntry(apple, TestModel.class);
+        Assert.assertEquals(new HashSet<UUID>(Arrays.asList(pear.getUuid(), plum.getUuid())), storage.getEntries(TextQuery.token("baked"), TestModel.class).keySet());
+        Assert.assertTrue(storage.search(TextQuery.prefix("boil"), TestModel.class).isEmpty());
+        storage.commit(TestModel.class);
+        final File textIndexFile = new File(storageRoot, TestModel.class.getSimpleName() + Constants.TEXT_INDEX_FILE_EXTENSION);
+        Assert.assertTrue(textIndexFile.isFile());
+
+        // the committed index is read on load, and rebuilt from the class if it is missing
+        final UuidObjectStorage reopened = new UuidObjectStorage();
+        reopened.init(storageRoot, config);
+        Assert.assertEquals(Collections.singleton(plum.getUuid()), reopened.search(TextQuery.token("plums"), TestModel.class));
+        Assert.assertTrue(textIndexFile.delete());
+        final UuidObjectStorage rebuilt = new UuidObjectStorage();
+        rebuilt.init(storageRoot, config);
+        Assert.assertEquals(Collections.singleton(plum.getUuid()), rebuilt.search(TextQuery.token("plums"), TestModel.class));
+
+        try {
+            rebuilt.search(TextQuery.token("plums"), UnpersistedModel.class);
+            Assert.fail("a class without a text index can't be searched");
+        } catch (UuidObjectStorageException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        final UuidObjectStorage misconfigured = new UuidObjectStorage();
+        try {
+            misconfigured.init(storageRoot, new UuidObjectStorageConfig().setTextIndex(TestModel.class, "title"));
+            Assert.fail("an unknown field must be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertFalse(misconfigured.isInitialised());
+        }
+    }
+
+    @Test
+    public void testBloomFilters() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorageConfig config = new UuidObjectStorageConfig().setBloomFilterFalsePositiveRate(0.001);
+        final UuidObjectStorage writer = new UuidObjectStorage();
+        writer.init(storageRoot, config);
+        final Map<UUID, TestModel> models = new HashMap<UUID, TestModel>();
+        for (int i = 0; i < 100; i++) {
+            final TestModel model = new TestModel("name" + i, "bloom");
+            models.put(model.getUuid(), model);
+        }
+        writer.addEntries(models, TestModel.class);
+        writer.commit(TestModel.class);
+        Assert.assertTrue(new File(storageRoot, TestModel.class.getSimpleName() + Constants.BLOOM_FILTER_FILE_EXTENSION).isFile());
+
+        // missing entries are ruled out without loading their class, or creating a file for it
+        final UuidObjectStorage reader = new UuidObjectStorage();
+        reader.init(storageRoot, config);
+        try {
+            reader.getEntry(UUID.randomUUID(), TestModel.class);
+            Assert.fail("there is no such entry");
+        } catch (UuidObjectStorageException e) {
+            Assert.assertNull(e.getCause());
+        }
+        Assert.assertNull(reader.getEntryAsync(UUID.randomUUID(), TestModel.class).get());
+        Assert.assertNull(reader.getEntryAsync(UUID.randomUUID(), UnpersistedModel.class).get());
+        Assert.assertEquals(3, reader.getBloomFilterNegatives());
+        Assert.assertTrue(reader.getCachedEntryCounts().isEmpty());
+        Assert.assertFalse(new File(storageRoot, UnpersistedModel.class.getSimpleName() + Constants.DATA_FILE_EXTENSION).exists());
+
+        final TestModel model = models.values().iterator().next();
+        Assert.assertEquals(model.getName(), reader.getEntry(model.getUuid(), TestModel.class).getName());
+        Assert.assertEquals(Integer.valueOf(models.size()), reader.getCachedEntryCounts().get(TestModel.class));
+        // a loaded class answers from memory, including entries added since the last commit
+        final TestModel added = new TestModel("added", "bloom");
+        reader.addEntry(added, TestModel.class);
+        Assert.assertNotNull(reader.getEntry(added.getUuid(), TestModel.class));
+        Assert.assertEquals(3, reader.getBloomFilterNegatives());
+
+        // an outdated filter is ignored
+        final UuidObjectStorage outdated = new UuidObjectStorage();
+        outdated.init(storageRoot, config);
+        final File dataFile = new File(storageRoot, TestModel.class.getSimpleName() + Constants.DATA_FILE_EXTENSION);
+        Assert.assertTrue(dataFile.setLastModified(dataFile.lastModified() - 10000));
+        Assert.assertNull(outdated.getEntryAsync(UUID.randomUUID(), TestModel.class).get());
+        Assert.assertEquals(0, outdated.getBloomFilterNegatives());
+        Assert.assertFalse(outdated.getCachedEntryCounts().isEmpty());
+    }
+
+    @Test
+    public void testGeneratedAdapter() throws Exception {
+        final TypeAdapter<TestModel> adapter = Constants.GSON.getAdapter(TestModel.class);
+        Assert.assertEquals(GeneratedAdapterFactory.getAdapterClassName(TestModel.class), adapter.getClass().getName());
+
+        final TestModel child = new TestModel("child", null);
+        final TestModel model = new TestModel("parent", "desc");
+        model.setNestedChild(child);
+        model.setVersion(7);
+        // the generated adapter writes the same json as the reflective one and reads it back
+        final String json = Constants.GSON.toJson(model);
+        Assert.assertEquals(new Gson().toJson(model), json);
+        final TestModel read = adapter.fromJson(json);
+        Assert.assertEquals(model.getUuid(), read.getUuid());
+        Assert.assertEquals(7, read.getVersion());
+        Assert.assertEquals("parent", read.getName());
+        Assert.assertEquals("desc", read.getDescription());
+        Assert.assertEquals(child.getUuid(), read.getNestedChild().getUuid());
+        Assert.assertNull(read.getNestedChild().getDescription());
+
+        // unknown fields are skipped and a null leaves a primitive at its default
+        final TestModel lenient = adapter.fromJson("{\"name\":\"n\",\"unknown\":[1,{\"a\":2}],\"_version\":null}");
+        Assert.assertEquals("n", lenient.getName());
+        Assert.assertEquals(0, lenient.getVersion());
+
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(storageRoot);
+        storage.addEntry(model, TestModel.class);
+        storage.commit(TestModel.class);
+        final UuidObjectStorage reopened = new UuidObjectStorage();
+        reopened.init(storageRoot);
+        Assert.assertEquals("child", reopened.getEntry(model.getUuid(), TestModel.class).getNestedChild().getName());
+    }
+
+    private static void awaitReplica(UuidObjectStorage leader, UuidObjectStorage follower) throws Exception {
+        final Map<UUID, String> expected = describe(leader.getEntries(TestModel.class));
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (!expected.equals(describe(follower.getEntries(TestModel.class))) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, describe(follower.getEntries(TestModel.class)));
+    }
+
+    private static Map<UUID, String> describe(Map<UUID, TestModel> entries) {
+        final Map<UUID, String> descriptions = new HashMap<UUID, String>();
+        for (TestModel entry : entries.values()) {
+            descriptions.put(entry.getUuid(), entry.getDescription() + "@" + entry.getVersion());
+        }
+        return descriptions;
+    }
+
     @Test
     public void testSingleAddPerformance() throws InterruptedException {
         final int entryNumber = 1000;
@@ -434,4 +1231,192 @@ public class ObjectStorageUnitTest {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPreload() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorage writer = new UuidObjectStorage();
+        writer.init(storageRoot);
+        final TestModel model = new TestModel("preloaded", "desc");
+        writer.addEntry(model, TestModel.class);
+        writer.commit(TestModel.class);
+
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(storageRoot, new UuidObjectStorageConfig().setPreloadClasses(TestModel.class, UnpersistedModel.class).setPreloadThreads(2));
+        Assert.assertEquals(1, storage.getPreloadFutures().size()); // classes without a file are not preloaded
+        storage.awaitPreload();
+        Assert.assertTrue(storage.getPreloadFutures().get(TestModel.class).isDone());
+        Assert.assertEquals("preloaded", storage.getEntry(model.getUuid(), TestModel.class).getName());
+    }
+
+    @Test
+    public void testFailedLoadKeepsClassFile() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final File dataFile = new File(storageRoot, TestModel.class.getSimpleName() + Constants.DATA_FILE_EXTENSION);
+        final FileOutputStream outputStream = new FileOutputStream(dataFile);
+        outputStream.write("{\"not\": [a map".getBytes(Constants.CHARSET));
+        outputStream.close();
+        final long length = dataFile.length();
+
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(storageRoot, new UuidObjectStorageConfig().setPreloadClasses(TestModel.class));
+        try {
+            storage.awaitPreload();
+            Assert.fail("a corrupt class file must fail its preload");
+        } catch (UuidObjectStorageException e) {
+            Assert.assertEquals(length, dataFile.length());
+        }
+        try {
+            storage.getEntries(TestModel.class);
+            Assert.fail("a corrupt class file must not be replaced by an empty class");
+        } catch (UuidObjectStorageException e) {
+            Assert.assertEquals(length, dataFile.length());
+        }
+        Assert.assertTrue(storage.getCachedEntryCounts().isEmpty());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorage storage = new UuidObjectStorage();
+        storage.init(storageRoot, new UuidObjectStorageConfig().setJmxEnabled(true));
+        final TestModel model = new TestModel("metrics", "measured");
+        storage.addEntry(model, TestModel.class);
+        storage.getEntry(model.getUuid(), TestModel.class);
+        storage.deleteEntry(model, TestModel.class);
+        storage.commit(TestModel.class);
+        Assert.assertEquals(Integer.valueOf(0), storage.getCachedEntryCounts().get(TestModel.class));
+
+        final ClassMetrics classMetrics = ((DefaultMetricsRegistry) storage.getMetricsRegistry()).getClassMetrics(TestModel.class);
+        Assert.assertEquals(1, classMetrics.getCount(StorageOperation.ADD));
+        Assert.assertEquals(1, classMetrics.getCount(StorageOperation.DELETE));
+        Assert.assertEquals(1, classMetrics.getCount(StorageOperation.GET));
+        Assert.assertEquals(1, classMetrics.getCount(StorageOperation.LOAD));
+        Assert.assertEquals(0, classMetrics.getErrors(StorageOperation.COMMIT));
+        // the class file is written when the class is created and on commit
+        Assert.assertTrue(classMetrics.getBytesWritten() > new File(storageRoot, "TestModel.json").length() + new File(storageRoot, "TestModel.json.idx").length());
+
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = StorageMetrics.objectNameFor(storageRoot);
+        Assert.assertEquals(0, mBeanServer.getAttribute(objectName, "PendingOperations"));
+        final TabularData operations = (TabularData) mBeanServer.getAttribute(objectName, "Operations");
+        final CompositeData commitStatistics = (CompositeData) operations.get(new Object[]{"TestModel.COMMIT"}).get("value");
+        Assert.assertEquals(1L, commitStatistics.get("count"));
+        mBeanServer.unregisterMBean(objectName);
+    }
+
+    @Test
+    public void testLazyLoading() throws Exception {
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorage writer = new UuidObjectStorage();
+        writer.init(storageRoot);
+        final List<TestModel> models = new ArrayList<TestModel>();
+        for (int i = 0; i < 100; i++) {
+            models.add(new TestModel("lazy" + i, "desc \u00e9\n" + i));
+        }
+        writer.addEntriesAsList(models, TestModel.class);
+        writer.commit(TestModel.class);
+        Assert.assertTrue(new File(storageRoot, "TestModel.json.idx").isFile());
+
+        final UuidObjectStorage lazyStorage = new UuidObjectStorage();
+        lazyStorage.init(storageRoot, new UuidObjectStorageConfig().setLazyLoading(true));
+        final TestModel lazyModel = lazyStorage.getEntry(models.get(42).getUuid(), TestModel.class);
+        Assert.assertEquals("lazy42", lazyModel.getName());
+        Assert.assertEquals("desc \u00e9\n42", lazyModel.getDescription());
+        Assert.assertSame(lazyModel, lazyStorage.getEntry(models.get(42).getUuid(), TestModel.class));
+
+        // untouched entries are copied from the old file, touched ones are serialized again
+        lazyModel.setNestedChild(new TestModel("child", "nested"));
+        lazyStorage.deleteEntry(models.get(0), TestModel.class);
+        lazyStorage.addEntry(new TestModel("added", "after open"), TestModel.class);
+        lazyStorage.commit(TestModel.class);
+        Assert.assertEquals("lazy7", lazyStorage.getEntry(models.get(7).getUuid(), TestModel.class).getName());
+
+        final UuidObjectStorage reopenedStorage = new UuidObjectStorage();
+        reopenedStorage.init(storageRoot);
+        final Map<UUID, TestModel> entries = reopenedStorage.getEntries(TestModel.class);
+        Assert.assertEquals(100, entries.size());
+        Assert.assertFalse(entries.containsKey(models.get(0).getUuid()));
+        Assert.assertEquals("child", entries.get(models.get(42).getUuid()).getNestedChild().getName());
+        Assert.assertEquals("desc \u00e9\n99", entries.get(models.get(99).getUuid()).getDescription());
+    }
+
+    @Test
+    public void testMemoryMappedLoadPerformance() throws Exception {
+        final int entryNumber = 20000;
+        final File storageRoot = createStorageRoot();
+        final UuidObjectStorage writer = new UuidObjectStorage();
+        writer.init(storageRoot);
+        final List<TestModel> models = new ArrayList<TestModel>();
+        for (int i = 0; i < entryNumber; i++) {
+            models.add(new TestModel("bla" + i, "desc \u00e4\u00f6\u00fc"));
+        }
+        writer.addEntriesAsList(models, TestModel.class);
+        writer.commit(TestModel.class);
+
+        for (boolean memoryMapped : new boolean[]{false, true, false, true}) {
+            final UuidObjectStorage storage = new UuidObjectStorage();
+            storage.init(storageRoot, new UuidObjectStorageConfig().setMemoryMappedLoading(memoryMapped));
+            final long rssBefore = readResidentSetSize();
+            final long startTime = System.currentTimeMillis();
+            Assert.assertEquals(entryNumber, storage.getEntries(TestModel.class).size());
+            System.out.println("took me " + (System.currentTimeMillis() - startTime) + "ms to load " + entryNumber + " entries " + (memoryMapped ? "memory mapped" : "streamed")
+                    + ", rss grew by " + (readResidentSetSize() - rssBefore) / 1024 + "kB");
+        }
+
+        final UuidObjectStorage mappedStorage = new UuidObjectStorage();
+        mappedStorage.init(storageRoot, new UuidObjectStorageConfig().setRecordStorage(RecordStorage.MEMORY_MAPPED));
+        Assert.assertEquals("desc \u00e4\u00f6\u00fc", mappedStorage.getEntry(models.get(123).getUuid(), TestModel.class).getDescription());
+        Assert.assertEquals(entryNumber, mappedStorage.getEntriesAsList(TestModel.class).size());
+    }
+
+    private static long readResidentSetSize() throws IOException {
+        final File status = new File("/proc/self/status");
+        if (!status.isFile()) {
+            return 0; // only available on linux
+        }
+        final BufferedReader reader = new BufferedReader(new FileReader(status));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+            return 0;
+        } finally {
+            reader.close();
+        }
+    }
+
+    public class UnpersistedModel extends AbstractUuidObject {
+    }
+
+    @After
+    public void deleteStorageRoots() {
+        for (File storageRoot : this.storageRoots) {
+            deleteRecursively(storageRoot);
+        }
+        this.storageRoots.clear();
+    }
+
+    private File createStorageRoot() throws IOException {
+        final File storageRoot = File.createTempFile("objectstorage", "");
+        if (!storageRoot.delete() || !storageRoot.mkdir()) {
+            throw new IOException("could not create " + storageRoot);
+        }
+        this.storageRoots.add(storageRoot);
+        return storageRoot;
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        // best effort, a storage that is still following or expiring may have just written a file
+        file.delete();
+    }
+}
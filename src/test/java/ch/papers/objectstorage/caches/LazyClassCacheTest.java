@@ -0,0 +1,109 @@
+package ch.papers.objectstorage.caches;
+
+import ch.papers.objectstorage.Constants;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import ch.papers.objectstorage.persistence.ClassFile;
+import ch.papers.objectstorage.persistence.ClassIndex;
+import ch.papers.objectstorage.persistence.RecordStorage;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class LazyClassCacheTest {
+
+    public static class CacheModel extends AbstractUuidObject {
+        private String name;
+
+        public CacheModel(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private ClassFile classFile;
+    private Map<UUID, CacheModel> models;
+
+    @Before
+    public void setUp() throws IOException {
+        final File storageRoot = File.createTempFile("objectstorage", "");
+        Assert.assertTrue(storageRoot.delete() && storageRoot.mkdir());
+        this.classFile = new ClassFile(storageRoot, CacheModel.class);
+        this.models = new HashMap<UUID, CacheModel>();
+        for (int i = 0; i < 100; i++) {
+            final CacheModel model = new CacheModel("model" + i);
+            this.models.put(model.getUuid(), model);
+        }
+    }
+
+    @Test
+    public void testEntryBudget() throws IOException {
+        final CacheBudget budget = new CacheBudget(10, Long.MAX_VALUE);
+        final LazyClassCache<CacheModel> cache = new LazyClassCache<CacheModel>(CacheModel.class, Constants.GSON, RecordStorage.FILE, budget, null, this.models);
+        Assert.assertEquals(0, budget.getResidentEntries()); // not persisted yet, so nothing is evictable
+
+        cache.persist(this.classFile, null, null);
+        Assert.assertEquals(10, budget.getResidentEntries());
+
+        for (CacheModel model : this.models.values()) {
+            Assert.assertEquals(model.getName(), cache.get(model.getUuid()).getName());
+            Assert.assertTrue(budget.getResidentEntries() <= 10);
+        }
+
+        // scans don't evict
+        final CacheModel hotModel = cache.get(this.models.keySet().iterator().next());
+        int scanned = 0;
+        for (CacheModel ignored : cache) {
+            scanned++;
+        }
+        Assert.assertEquals(100, scanned);
+        Assert.assertSame(hotModel, cache.get(hotModel.getUuid()));
+    }
+
+    @Test
+    public void testByteBudget() throws IOException {
+        final CacheBudget budget = new CacheBudget(Integer.MAX_VALUE, 1000);
+        new LazyClassCache<CacheModel>(CacheModel.class, Constants.GSON, RecordStorage.FILE, null, null, this.models).persist(this.classFile, null, null);
+
+        final LazyClassCache<CacheModel> cache = LazyClassCache.open(CacheModel.class, Constants.GSON, this.classFile, ClassIndex.read(this.classFile), RecordStorage.FILE, budget, null);
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(0, budget.getResidentEntries());
+        for (CacheModel model : this.models.values()) {
+            Assert.assertEquals(model.getName(), cache.get(model.getUuid()).getName());
+            Assert.assertTrue(budget.getResidentBytes() <= 1000);
+        }
+        Assert.assertTrue(budget.getResidentEntries() > 0);
+    }
+
+    @Test
+    public void testOffHeapStorage() throws IOException {
+        final CacheBudget budget = new CacheBudget(5, Long.MAX_VALUE);
+        final LazyClassCache<CacheModel> cache = new LazyClassCache<CacheModel>(CacheModel.class, Constants.GSON, RecordStorage.OFF_HEAP, budget, null, this.models);
+        cache.persist(this.classFile, null, null);
+        this.assertContainsModels(cache);
+
+        final CacheModel removed = this.models.values().iterator().next();
+        cache.remove(removed.getUuid());
+        this.models.remove(removed.getUuid());
+        cache.persist(this.classFile, null, null);
+        this.assertContainsModels(cache);
+        Assert.assertNull(cache.get(removed.getUuid()));
+
+        this.assertContainsModels(LazyClassCache.open(CacheModel.class, Constants.GSON, this.classFile, ClassIndex.read(this.classFile), RecordStorage.OFF_HEAP, budget, null));
+    }
+
+    private void assertContainsModels(ClassCache<CacheModel> cache) throws IOException {
+        Assert.assertEquals(this.models.size(), cache.size());
+        for (CacheModel model : this.models.values()) {
+            Assert.assertEquals(model.getName(), cache.get(model.getUuid()).getName());
+        }
+    }
+}
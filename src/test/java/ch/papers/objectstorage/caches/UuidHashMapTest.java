@@ -0,0 +1,172 @@
+package ch.papers.objectstorage.caches;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UuidHashMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        final UuidHashMap<String> map = new UuidHashMap<String>();
+        final Map<UUID, String> expected = new HashMap<UUID, String>();
+        for (int i = 0; i < 10000; i++) {
+            final UUID uuid = UUID.randomUUID();
+            Assert.assertNull(map.put(uuid, "value" + i));
+            expected.put(uuid, "value" + i);
+        }
+        // sequential uuids hash well too
+        for (long i = 0; i < 10000; i++) {
+            final UUID uuid = new UUID(0, i);
+            Assert.assertNull(map.put(uuid, "sequential" + i));
+            expected.put(uuid, "sequential" + i);
+        }
+        Assert.assertEquals(expected.size(), map.size());
+
+        int removed = 0;
+        for (Map.Entry<UUID, String> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+            if (removed++ % 2 == 0) {
+                Assert.assertEquals(entry.getValue(), map.remove(entry.getKey()));
+                Assert.assertNull(map.get(entry.getKey()));
+                // the key can be added again after leaving a tombstone
+                Assert.assertNull(map.putIfAbsent(entry.getKey(), "again"));
+                Assert.assertEquals("again", map.putIfAbsent(entry.getKey(), "ignored"));
+                entry.setValue("again");
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+
+        final Set<UUID> iterated = new HashSet<UUID>();
+        for (Map.Entry<UUID, String> entry : map.entries()) {
+            Assert.assertEquals(expected.get(entry.getKey()), entry.getValue());
+            Assert.assertTrue(iterated.add(entry.getKey()));
+        }
+        Assert.assertEquals(expected.keySet(), iterated);
+
+        final Iterator<String> values = map.values().iterator();
+        while (values.hasNext()) {
+            values.next();
+            values.remove();
+        }
+        Assert.assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testConditionalUpdates() {
+        final UuidHashMap<String> map = new UuidHashMap<String>();
+        final UUID uuid = UUID.randomUUID();
+        final String first = new String("first");
+        map.put(uuid, first);
+        Assert.assertFalse(map.replace(uuid, new String("first"), "second"));
+        Assert.assertTrue(map.replace(uuid, first, "second"));
+        Assert.assertFalse(map.remove(uuid, first));
+        Assert.assertTrue(map.remove(uuid, map.get(uuid)));
+        Assert.assertFalse(map.containsKey(uuid));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        final UuidHashMap<Integer> map = new UuidHashMap<Integer>();
+        final UUID[] stableKeys = new UUID[1000];
+        for (int i = 0; i < stableKeys.length; i++) {
+            stableKeys[i] = UUID.randomUUID();
+            map.put(stableKeys[i], i);
+        }
+
+        final int writers = 4;
+        final CountDownLatch done = new CountDownLatch(writers);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int w = 0; w < writers; w++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        final UUID uuid = UUID.randomUUID();
+                        map.put(uuid, i);
+                        if (!Integer.valueOf(i).equals(map.get(uuid)) || map.remove(uuid) == null) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        // the stable keys must stay visible while the writers force rehashes and leave tombstones
+        while (done.getCount() > 0) {
+            for (int i = 0; i < stableKeys.length; i++) {
+                if (!Integer.valueOf(i).equals(map.get(stableKeys[i]))) {
+                    failures.incrementAndGet();
+                }
+            }
+        }
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(stableKeys.length, map.size());
+    }
+
+    @Test
+    public void testConcurrentReplace() throws InterruptedException {
+        final UuidHashMap<Integer> map = new UuidHashMap<Integer>();
+        final UUID counter = UUID.randomUUID();
+        map.put(counter, 0);
+
+        final int writers = 4;
+        final int increments = 20000;
+        final CountDownLatch done = new CountDownLatch(writers + 1);
+        for (int w = 0; w < writers; w++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < increments; i++) {
+                        Integer current;
+                        do {
+                            current = map.get(counter);
+                        } while (!map.replace(counter, current, current + 1));
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        // rehashes must not swallow increments made on a table that is being replaced
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100000; i++) {
+                    map.put(UUID.randomUUID(), i);
+                }
+                done.countDown();
+            }
+        }).start();
+        done.await();
+        Assert.assertEquals(Integer.valueOf(writers * increments), map.get(counter));
+    }
+
+    @Test
+    public void testCopiedKeys() {
+        final Object value = new Object();
+        final Map<UUID, Object> concurrentHashMap = new ConcurrentHashMap<UUID, Object>();
+        final UuidHashMap<Object> uuidHashMap = new UuidHashMap<Object>();
+        final UUID[] uuids = new UUID[10000];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = UUID.randomUUID();
+            // the maps own their keys, like a map filled by the json parser
+            concurrentHashMap.put(new UUID(uuids[i].getMostSignificantBits(), uuids[i].getLeastSignificantBits()), value);
+            uuidHashMap.put(new UUID(uuids[i].getMostSignificantBits(), uuids[i].getLeastSignificantBits()), value);
+        }
+        Assert.assertEquals(concurrentHashMap.size(), uuidHashMap.size());
+        for (UUID uuid : uuids) {
+            Assert.assertSame(value, uuidHashMap.get(uuid));
+            Assert.assertTrue(uuidHashMap.containsKey(uuid));
+        }
+    }
+}
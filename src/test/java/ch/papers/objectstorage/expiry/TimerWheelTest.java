@@ -0,0 +1,51 @@
+package ch.papers.objectstorage.expiry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TimerWheelTest {
+
+    @Test
+    public void testTimersExpireOnTheirTick() {
+        final Random random = new Random(42);
+        final long start = 1000;
+        final TimerWheel<Long> wheel = new TimerWheel<Long>(start);
+        final int timers = 10000;
+        for (int i = 0; i < timers; i++) {
+            // deadlines on every level of the wheel, some of them beyond its reach or already due
+            final long delay = (long) Math.pow(2, random.nextInt(26)) + random.nextInt(64) - 32;
+            wheel.schedule(start + delay, start + delay);
+        }
+        Assert.assertEquals(timers, wheel.size());
+
+        final List<Long> expired = new ArrayList<Long>();
+        long tick = start;
+        while (wheel.size() > 0) {
+            final long previousTick = tick;
+            tick += 1 + random.nextInt(10000);
+            final long currentTick = tick;
+            wheel.advance(currentTick, deadline -> {
+                // every timer fires on the first advance that passes its deadline, overdue ones right away
+                Assert.assertTrue(deadline <= currentTick);
+                Assert.assertTrue(Math.max(deadline, start + 1) > previousTick);
+                expired.add(deadline);
+            });
+            Assert.assertEquals(currentTick, wheel.getCurrentTick());
+        }
+        Assert.assertEquals(timers, expired.size());
+    }
+
+    @Test
+    public void testEmptyWheelJumpsAhead() {
+        final TimerWheel<String> wheel = new TimerWheel<String>(0);
+        wheel.advance(Long.MAX_VALUE / 2, value -> Assert.fail());
+        wheel.schedule("next", Long.MAX_VALUE / 2 + 1);
+        final List<String> expired = new ArrayList<String>();
+        wheel.advance(Long.MAX_VALUE / 2 + 1, expired::add);
+        Assert.assertEquals(1, expired.size());
+    }
+}
@@ -0,0 +1,38 @@
+package ch.papers.objectstorage.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+        for (long nanos = 1; nanos <= 100000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        Assert.assertEquals(100000, histogram.getCount());
+        Assert.assertEquals(100000000, histogram.getMaxNanos());
+        Assert.assertEquals(50000500, histogram.getMeanNanos());
+        assertWithinPrecision(50000000, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(99000000, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(100000000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testExtremeValues() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(3, histogram.getCount());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(10));
+        Assert.assertEquals(3, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(Long.MAX_VALUE, histogram.getMaxNanos());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        Assert.assertTrue(actual + " is not close to " + expected, actual >= expected && actual <= expected + expected / 16);
+    }
+}
@@ -0,0 +1,41 @@
+package ch.papers.objectstorage.persistence;
+
+import ch.papers.objectstorage.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+public class ByteBufferReaderTest {
+    private static final String TEXT = "{\"name\":\"caf\u00e9 \u20ac \ud83d\ude00 end\"}";
+
+    @Test
+    public void testSingleCharReads() throws IOException {
+        final Reader reader = new ByteBufferReader(ByteBuffer.wrap(TEXT.getBytes(Constants.CHARSET)));
+        final StringBuilder builder = new StringBuilder();
+        final char[] chars = new char[1];
+        int read;
+        while ((read = reader.read(chars, 0, 1)) != -1) {
+            Assert.assertEquals(1, read);
+            builder.append(chars[0]);
+        }
+        Assert.assertEquals(TEXT, builder.toString());
+    }
+
+    @Test
+    public void testSeveralBuffers() throws IOException {
+        final byte[] bytes = TEXT.getBytes(Constants.CHARSET);
+        final int split = TEXT.indexOf('\u20ac') + 1; // after the euro sign, which is 3 bytes long
+        final int splitBytes = TEXT.substring(0, split).getBytes(Constants.CHARSET).length;
+        final Reader reader = new ByteBufferReader(ByteBuffer.wrap(bytes, 0, splitBytes), ByteBuffer.wrap(bytes, splitBytes, bytes.length - splitBytes));
+        final StringBuilder builder = new StringBuilder();
+        final char[] chars = new char[7];
+        int read;
+        while ((read = reader.read(chars, 0, chars.length)) != -1) {
+            builder.append(chars, 0, read);
+        }
+        Assert.assertEquals(TEXT, builder.toString());
+    }
+}
@@ -0,0 +1,75 @@
+package ch.papers.objectstorage.persistence;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+public class ClassBloomFilterTest {
+
+    public static class FilteredModel extends AbstractUuidObject {
+    }
+
+    private ClassFile classFile;
+    private ClassIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        final File storageRoot = File.createTempFile("objectstorage", "");
+        Assert.assertTrue(storageRoot.delete() && storageRoot.mkdir());
+        this.classFile = new ClassFile(storageRoot, FilteredModel.class);
+        final FileOutputStream outputStream = new FileOutputStream(this.classFile.getDataFile());
+        outputStream.write("{}".getBytes("UTF-8"));
+        outputStream.close();
+        this.index = new ClassIndex(10000);
+        for (int i = 0; i < 10000; i++) {
+            this.index.add(UUID.randomUUID(), 0, 0);
+        }
+    }
+
+    @Test
+    public void testNoFalseNegatives() throws IOException {
+        final ClassBloomFilter filter = ClassBloomFilter.create(this.index, 0.01);
+        filter.write(this.classFile.getBloomFilterFile(), this.classFile.getDataFile());
+        final ClassBloomFilter read = ClassBloomFilter.read(this.classFile);
+        for (int i = 0; i < this.index.size(); i++) {
+            Assert.assertTrue(filter.mightContain(this.index.getUuid(i)));
+            Assert.assertTrue(read.mightContain(this.index.getUuid(i)));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        final ClassBloomFilter filter = ClassBloomFilter.create(this.index, 0.01);
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(UUID.randomUUID())) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+
+        // sequential UUIDs are spread just as well
+        int sequentialFalsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(new UUID(0, i))) {
+                sequentialFalsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + sequentialFalsePositives, sequentialFalsePositives < 2000);
+    }
+
+    @Test
+    public void testOutdatedFilterIsIgnored() throws IOException {
+        ClassBloomFilter.create(this.index, 0.01).write(this.classFile.getBloomFilterFile(), this.classFile.getDataFile());
+        final FileOutputStream outputStream = new FileOutputStream(this.classFile.getDataFile(), true);
+        outputStream.write(' ');
+        outputStream.close();
+        Assert.assertNull(ClassBloomFilter.read(this.classFile));
+    }
+}
@@ -0,0 +1,162 @@
+package ch.papers.objectstorage.persistence;
+
+import ch.papers.objectstorage.Constants;
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import com.google.gson.reflect.TypeToken;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ClassFileWriterTest {
+
+    public static class WriterModel extends AbstractUuidObject {
+        private final String name;
+        private final int number;
+
+        public WriterModel(String name, int number) {
+            this.name = name;
+            this.number = number;
+        }
+    }
+
+    private File storageRoot;
+    private ClassFile classFile;
+    private Map<UUID, WriterModel> models;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        this.storageRoot = File.createTempFile("objectstorage", "");
+        Assert.assertTrue(this.storageRoot.delete() && this.storageRoot.mkdir());
+        this.classFile = new ClassFile(this.storageRoot, WriterModel.class);
+        this.models = new LinkedHashMap<UUID, WriterModel>();
+        for (int i = 0; i < 1000; i++) {
+            final WriterModel model = new WriterModel("model \u00e9" + i, i);
+            this.models.put(model.getUuid(), model);
+        }
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdown();
+    }
+
+    @Test
+    public void testParallelChunksMatchGson() throws IOException {
+        final ClassIndex index = this.write(this.executor, 7);
+
+        final byte[] data = Files.readAllBytes(this.classFile.getDataFile().toPath());
+        Assert.assertEquals(Constants.GSON.toJson(this.models), new String(data, Constants.CHARSET));
+        this.assertIndex(index);
+        this.assertIndex(ClassIndex.read(this.classFile));
+        Assert.assertFalse(this.classFile.getTempDataFile().exists());
+    }
+
+    @Test
+    public void testSequentialAndParallelFilesAreEqual() throws IOException {
+        this.write(null, ClassFileWriter.CHUNK_ENTRIES);
+        final byte[] sequential = Files.readAllBytes(this.classFile.getDataFile().toPath());
+        this.write(this.executor, 3);
+        Assert.assertArrayEquals(sequential, Files.readAllBytes(this.classFile.getDataFile().toPath()));
+
+        final Map<UUID, WriterModel> read = this.classFile.readAll(Constants.GSON, new TypeToken<Map<UUID, WriterModel>>() {
+        }.getType(), false);
+        Assert.assertEquals(this.models.keySet(), read.keySet());
+    }
+
+    @Test
+    public void testFailedSerializationKeepsPreviousFile() throws IOException {
+        this.write(this.executor, 10);
+        final long length = this.classFile.getDataFile().length();
+
+        final ClassFileWriter writer = new ClassFileWriter(this.classFile, 3, this.executor, 1);
+        try {
+            writer.writeEntry(UUID.randomUUID(), this.models.values().iterator().next());
+            writer.writeEntry(UUID.randomUUID(), Double.NaN);
+            writer.writeEntry(UUID.randomUUID(), this.models.values().iterator().next());
+            writer.publish();
+            Assert.fail("NaN can't be serialized");
+        } catch (IllegalArgumentException e) {
+            // thrown on the executor and rethrown by publish
+        } finally {
+            writer.close();
+        }
+        Assert.assertEquals(length, this.classFile.getDataFile().length());
+        Assert.assertFalse(this.classFile.getTempDataFile().exists());
+    }
+
+    @Test
+    public void testSidecarsOfUnpublishedFileAreIgnored() throws IOException {
+        this.write(this.executor, 10);
+        final long[] tempFileState = new long[2];
+        final ClassFileWriter writer = new ClassFileWriter(this.classFile, this.models.size(), this.executor, 10);
+        try {
+            for (Map.Entry<UUID, WriterModel> entry : this.models.entrySet()) {
+                writer.writeEntry(entry.getKey(), entry.getValue());
+            }
+            writer.publish(new SidecarWriter() {
+                @Override
+                public void write(ClassIndex index, File dataFile) throws IOException {
+                    ClassBloomFilter.create(index, 0.01).write(ClassFileWriterTest.this.classFile.getBloomFilterFile(), dataFile);
+                    tempFileState[0] = dataFile.length();
+                    tempFileState[1] = dataFile.lastModified();
+                    throw new IOException("failed before the data file was published");
+                }
+            });
+            Assert.fail("the sidecar writer failed");
+        } catch (IOException e) {
+            // the previous data file is kept
+        } finally {
+            writer.close();
+        }
+
+        // the same length and modification time, as for two commits within a second, but not the same file
+        final File dataFile = this.classFile.getDataFile();
+        Assert.assertEquals(tempFileState[0], dataFile.length());
+        Assert.assertTrue(dataFile.setLastModified(tempFileState[1]));
+        Assert.assertNull(ClassIndex.read(this.classFile));
+        Assert.assertNull(ClassBloomFilter.read(this.classFile));
+    }
+
+    private ClassIndex write(ExecutorService executor, int chunkEntries) throws IOException {
+        final ClassFileWriter writer = new ClassFileWriter(this.classFile, this.models.size(), executor, chunkEntries);
+        try {
+            for (Map.Entry<UUID, WriterModel> entry : this.models.entrySet()) {
+                writer.writeEntry(entry.getKey(), entry.getValue());
+            }
+            return writer.publish();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void assertIndex(ClassIndex index) throws IOException {
+        Assert.assertEquals(this.models.size(), index.size());
+        final RandomAccessFile dataFile = new RandomAccessFile(this.classFile.getDataFile(), "r");
+        try {
+            int position = 0;
+            for (Map.Entry<UUID, WriterModel> entry : this.models.entrySet()) {
+                Assert.assertEquals(entry.getKey(), index.getUuid(position));
+                final byte[] json = new byte[index.getLength(position)];
+                dataFile.seek(index.getOffset(position));
+                dataFile.readFully(json);
+                Assert.assertEquals(Constants.GSON.toJson(entry.getValue()), new String(json, Constants.CHARSET));
+                position++;
+            }
+        } finally {
+            dataFile.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ch.papers.objectstorage.persistence;
+
+import ch.papers.objectstorage.models.AbstractUuidObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class SnapshotTest {
+
+    public static class SnapshotModel extends AbstractUuidObject {
+        private final String name;
+
+        public SnapshotModel(String name) {
+            this.name = name;
+        }
+    }
+
+    private File storageRoot;
+    private File snapshotRoot;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        this.storageRoot = File.createTempFile("objectstorage", "");
+        Assert.assertTrue(this.storageRoot.delete() && this.storageRoot.mkdir());
+        this.snapshotRoot = File.createTempFile("objectstorage", ".snapshot");
+        Assert.assertTrue(this.snapshotRoot.delete());
+        this.executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdown();
+        deleteRecursively(this.storageRoot);
+        deleteRecursively(this.snapshotRoot);
+    }
+
+    @Test
+    public void testCopiedSidecarsMatchCopiedDataFile() throws IOException {
+        final ClassFile classFile = new ClassFile(this.storageRoot, SnapshotModel.class);
+        final ClassFileWriter writer = new ClassFileWriter(classFile, 100, this.executor, 10);
+        try {
+            for (int i = 0; i < 100; i++) {
+                final SnapshotModel model = new SnapshotModel("model " + i);
+                writer.writeEntry(model.getUuid(), model);
+            }
+            writer.publish(new SidecarWriter() {
+                @Override
+                public void write(ClassIndex index, File dataFile) throws IOException {
+                    ClassBloomFilter.create(index, 0.01).write(classFile.getBloomFilterFile(), dataFile);
+                }
+            });
+        } finally {
+            writer.close();
+        }
+
+        // without hard links every file is copied and gets a file key of its own
+        final Snapshot snapshot = Snapshot.take(this.storageRoot, this.snapshotRoot, null, false).complete(this.snapshotRoot);
+        Assert.assertEquals(0, snapshot.getLinkedFiles());
+        Assert.assertEquals(3, snapshot.getCopiedFiles());
+
+        final ClassFile copiedClassFile = new ClassFile(this.snapshotRoot, SnapshotModel.class);
+        final ClassIndex copiedIndex = ClassIndex.read(copiedClassFile);
+        Assert.assertNotNull(copiedIndex);
+        Assert.assertEquals(100, copiedIndex.size());
+        Assert.assertNotNull(ClassBloomFilter.read(copiedClassFile));
+
+        // the sidecars of the storage still belong to its own data file
+        Assert.assertNotNull(ClassIndex.read(classFile));
+        Assert.assertNotNull(ClassBloomFilter.read(classFile));
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}